@@ -0,0 +1,55 @@
+package com.corajr.loom;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
+
+/**
+ * Measures queries on an {@link EventCollection} as the number of events
+ * grows.
+ *
+ * @author corajr
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventCollectionBenchmark {
+	private static final int QUERIES = 1000;
+
+	@Param({ "16", "256", "4096", "65536" })
+	public int eventCount;
+
+	private EventCollection events;
+	private Interval[] queries;
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		Integer[] values = new Integer[eventCount];
+		for (int i = 0; i < eventCount; i++)
+			values[i] = i % 4;
+		events = EventCollection.fromInts(values);
+
+		// one-millisecond windows spread across the collection at a 1s period
+		queries = new Interval[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			Rational start = Rational.valueOf(i, QUERIES);
+			queries[i] = new Interval(start, start.add(Rational.valueOf(1,
+					1000)));
+		}
+	}
+
+	@Benchmark
+	public Collection<LEvent> getForInterval() {
+		Interval query = queries[next];
+		next = (next + 1) % QUERIES;
+		return events.getForInterval(query);
+	}
+}
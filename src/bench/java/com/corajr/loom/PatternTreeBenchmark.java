@@ -0,0 +1,83 @@
+package com.corajr.loom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.time.Rational;
+
+/**
+ * Measures collecting the callbacks of a pattern tree, and finding the current
+ * interval at its leaves, for deep and wide trees.
+ *
+ * @author corajr
+ * @see PatternTrees
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PatternTreeBenchmark {
+	private static final int TICKS = 1000;
+
+	@Param({ "1", "4", "16" })
+	public int depth;
+
+	@Param({ "1", "16", "256" })
+	public int width;
+
+	@Param({ "16", "1024" })
+	public int eventCount;
+
+	private NonRealTimeScheduler scheduler;
+	private Pattern root;
+	private Pattern leaf;
+	private Interval[] ticks;
+	private final List<Callable<?>> callbacks = new ArrayList<Callable<?>>();
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		scheduler = new NonRealTimeScheduler();
+		Loom loom = new Loom(null, scheduler);
+		scheduler.play();
+
+		root = PatternTrees.build(loom, depth, width, eventCount);
+		leaf = root;
+		while (leaf.children != null && !leaf.children.isEmpty()
+				&& !leaf.children.get(0).isConcretePattern())
+			leaf = leaf.children.get(0);
+
+		scheduler.setElapsedMillis(1);
+
+		Rational half = scheduler.getRationalHalfMinimum();
+		ticks = new Interval[TICKS];
+		for (int i = 0; i < TICKS; i++) {
+			Rational now = Rational.valueOf(i, scheduler.getPeriod());
+			ticks[i] = new Interval(now.subtract(half), now.add(half));
+		}
+	}
+
+	@Benchmark
+	public int addActiveMappingsFor() {
+		Interval tick = ticks[next];
+		next = (next + 1) % TICKS;
+
+		root.addActiveMappingsFor(tick, callbacks);
+		int size = callbacks.size();
+		callbacks.clear();
+		return size;
+	}
+
+	@Benchmark
+	public Interval getCurrentInterval() {
+		return leaf.getCurrentInterval();
+	}
+}
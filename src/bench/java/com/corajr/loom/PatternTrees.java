@@ -0,0 +1,62 @@
+package com.corajr.loom;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Builds pattern trees of a given shape for the benchmarks.
+ *
+ * @author corajr
+ */
+public class PatternTrees {
+	/**
+	 * A callback that does nothing, so that only the cost of finding it is
+	 * measured.
+	 */
+	public static final Callable<Void> NOOP = new Callable<Void>() {
+		@Override
+		public Void call() {
+			return null;
+		}
+	};
+
+	/**
+	 * Creates a chain of <code>depth</code> nested patterns, each with its own
+	 * speed and offset, ending in <code>width</code> looping leaves with a
+	 * callback on every event.
+	 *
+	 * @param loom
+	 *            the loom to add the tree to
+	 * @param depth
+	 *            the number of nested patterns above the leaves
+	 * @param width
+	 *            the number of leaves
+	 * @param events
+	 *            the number of events in each leaf
+	 * @return the root of the tree
+	 */
+	public static Pattern build(Loom loom, int depth, int width, int events) {
+		Pattern root = new Pattern(loom);
+		Pattern node = root;
+		for (int i = 1; i < depth; i++) {
+			Pattern child = new Pattern(null);
+			child.speed(i % 2 == 0 ? 0.5 : 2.0);
+			child.shift(1.0 / (i + 2));
+			node.addChild(child);
+			node = child;
+		}
+
+		Integer[] values = new Integer[events];
+		for (int i = 0; i < events; i++)
+			values[i] = i % 4;
+
+		for (int i = 0; i < width; i++) {
+			Pattern leaf = new Pattern(null,
+					EventCollection.fromInts(values), null, false);
+			leaf.loop();
+			leaf.asCallable(NOOP, NOOP, NOOP, NOOP);
+			node.addChild(leaf);
+		}
+
+		return root;
+	}
+}
@@ -0,0 +1,63 @@
+package com.corajr.loom.mappings;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.ShortMessage;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.corajr.loom.EventCollection;
+import com.corajr.loom.LEvent;
+import com.corajr.loom.Pattern;
+
+/**
+ * Measures turning note events into MIDI message callbacks.
+ *
+ * @author corajr
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MidiMessageMappingBenchmark {
+	@Param({ "16", "1024" })
+	public int eventCount;
+
+	private MidiMessageMapping mapping;
+	private LEvent[] events;
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		Integer[] values = new Integer[eventCount];
+		for (int i = 0; i < eventCount; i++)
+			values[i] = 1 + i % 3;
+
+		EventCollection noteEvents = EventCollection.fromInts(values);
+		Pattern notes = new Pattern(null, noteEvents, null, false);
+		notes.asMidiNote(60, 62, 64, 65);
+
+		Pattern commands = new Pattern(null, 1.0);
+		commands.asMidiCommand(ShortMessage.NOTE_ON);
+		Pattern channels = new Pattern(null, 1.0);
+		channels.asMidiChannel(0);
+		Pattern velocities = new Pattern(null, 1.0);
+		velocities.asMidiData2(0, 100);
+
+		// the callbacks are only created, not run, so no MIDI output is needed
+		mapping = new MidiMessageMapping(null, commands, channels, notes,
+				velocities);
+
+		events = noteEvents.values().toArray(new LEvent[] {});
+	}
+
+	@Benchmark
+	public Callable<Void> call() {
+		LEvent event = events[next];
+		next = (next + 1) % events.length;
+		return mapping.call(event);
+	}
+}
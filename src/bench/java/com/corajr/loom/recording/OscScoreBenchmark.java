@@ -0,0 +1,83 @@
+package com.corajr.loom.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import oscP5.OscBundle;
+import oscP5.OscMessage;
+
+/**
+ * Measures writing an OSC score to disk and reading it back, whole or one
+ * bundle at a time.
+ *
+ * @author corajr
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OscScoreBenchmark {
+	@Param({ "100", "10000" })
+	public int bundleCount;
+
+	private OscScore score;
+	private File written;
+	private File scratch;
+
+	@Setup
+	public void setUp() throws IOException {
+		score = new OscScore();
+		for (int i = 0; i < bundleCount; i++) {
+			OscBundle bundle = new TaggedOscBundle(new OscBundle());
+			OscMessage message = new OscMessage("/hit");
+			message.add(i % 4);
+			message.add(0.5f);
+			bundle.add(message);
+
+			double timestamp = i / 8.0;
+			long seconds = (long) timestamp;
+			long fraction = (long) ((timestamp - seconds) * (1L << 32));
+			bundle.setTimetag(seconds << 32 | fraction);
+
+			score.put(timestamp, bundle);
+		}
+
+		written = File.createTempFile("bench", ".osc");
+		score.write(written);
+		scratch = File.createTempFile("bench", ".osc");
+	}
+
+	@TearDown
+	public void tearDown() {
+		written.delete();
+		scratch.delete();
+	}
+
+	@Benchmark
+	public void write() throws IOException {
+		score.write(scratch);
+	}
+
+	@Benchmark
+	public OscScore fromFile() {
+		return OscScore.fromFile(written);
+	}
+
+	@Benchmark
+	public double stream() throws IOException {
+		double last = 0;
+		OscScoreReader reader = new OscScoreReader(written);
+		try {
+			for (OscBundle bundle : reader)
+				last = OscScore.timestampOf(bundle);
+		} finally {
+			reader.close();
+		}
+		return last;
+	}
+}
@@ -0,0 +1,47 @@
+package com.corajr.loom.time;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures fitting an interval into a loop, as the interval gets further from
+ * the loop. The cost should not grow with the distance.
+ *
+ * @author corajr
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IntervalBenchmark {
+	/**
+	 * How many cycles away from the loop the interval starts.
+	 */
+	@Param({ "0", "1000", "1000000", "1000000000" })
+	public long cycles;
+
+	private Interval loop;
+	private Interval interval;
+	private Rational reverse;
+
+	@Setup
+	public void setUp() {
+		loop = new Interval(Rational.ZERO, Rational.valueOf(1, 64));
+		Rational start = Rational.valueOf(cycles).add(Rational.valueOf(1, 1000));
+		interval = new Interval(start, start.add(Rational.valueOf(1, 1000)));
+		reverse = Rational.valueOf(-1);
+	}
+
+	@Benchmark
+	public Interval modulo() {
+		return interval.modulo(loop);
+	}
+
+	@Benchmark
+	public Interval multiplyMod() {
+		return interval.multiplyMod(reverse, loop);
+	}
+}
@@ -0,0 +1,93 @@
+package com.corajr.loom.time;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares {@link Rational} with the {@link BigFraction} it replaced on the
+ * scheduling path, running the same additions, comparisons and floors on
+ * millisecond times like those of each tick.
+ *
+ * @author corajr
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RationalBenchmark {
+	private static final int TIMES = 1000;
+
+	/**
+	 * The scheduler's period in milliseconds, the denominator of each time.
+	 */
+	@Param({ "1000", "2997" })
+	public long period;
+
+	private Rational[] rationals;
+	private BigFraction[] fractions;
+	private Rational rationalHalf;
+	private BigFraction fractionHalf;
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		rationals = new Rational[TIMES];
+		fractions = new BigFraction[TIMES];
+		for (int i = 0; i < TIMES; i++) {
+			// a little over an hour in, as a long-running sketch would be
+			long millis = 3600000L + i * 37;
+			rationals[i] = Rational.valueOf(millis, period);
+			fractions[i] = new BigFraction(millis, period);
+		}
+		rationalHalf = Rational.valueOf(1, period * 2);
+		fractionHalf = new BigFraction(1, period * 2);
+	}
+
+	private int advance() {
+		int i = next;
+		next = (next + 1) % TIMES;
+		return i;
+	}
+
+	@Benchmark
+	public Rational rationalAdd() {
+		return rationals[advance()].add(rationalHalf);
+	}
+
+	@Benchmark
+	public BigFraction fractionAdd() {
+		return fractions[advance()].add(fractionHalf);
+	}
+
+	@Benchmark
+	public int rationalCompare() {
+		int i = advance();
+		return rationals[i].compareTo(rationals[(i + 1) % TIMES]);
+	}
+
+	@Benchmark
+	public int fractionCompare() {
+		int i = advance();
+		return fractions[i].compareTo(fractions[(i + 1) % TIMES]);
+	}
+
+	@Benchmark
+	public Rational rationalFloor() {
+		return rationals[advance()].floor();
+	}
+
+	/**
+	 * BigFraction has no floor; the times are positive, so the integer
+	 * quotient is the floor.
+	 */
+	@Benchmark
+	public BigInteger fractionFloor() {
+		BigFraction f = fractions[advance()];
+		return f.getNumerator().divide(f.getDenominator());
+	}
+}
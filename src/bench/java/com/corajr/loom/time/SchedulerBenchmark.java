@@ -0,0 +1,61 @@
+package com.corajr.loom.time;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.corajr.loom.Loom;
+import com.corajr.loom.PatternTrees;
+
+/**
+ * Measures a single scheduler tick, running every callback due in it, over
+ * several independent pattern trees.
+ *
+ * @author corajr
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SchedulerBenchmark {
+	private static final int TICKS = 1000;
+
+	@Param({ "1", "16", "128" })
+	public int patternCount;
+
+	@Param({ "1", "8" })
+	public int depth;
+
+	@Param({ "16", "1024" })
+	public int eventCount;
+
+	private NonRealTimeScheduler scheduler;
+	private Interval[] ticks;
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		scheduler = new NonRealTimeScheduler();
+		Loom loom = new Loom(null, scheduler);
+		scheduler.play();
+
+		for (int i = 0; i < patternCount; i++)
+			PatternTrees.build(loom, depth, 1, eventCount);
+
+		Rational half = scheduler.getRationalHalfMinimum();
+		ticks = new Interval[TICKS];
+		for (int i = 0; i < TICKS; i++) {
+			Rational now = Rational.valueOf(i, scheduler.getPeriod());
+			ticks[i] = new Interval(now.subtract(half), now.add(half));
+		}
+	}
+
+	@Benchmark
+	public void updateFor() {
+		Interval tick = ticks[next];
+		next = (next + 1) % TICKS;
+		scheduler.updateFor(tick);
+	}
+}
@@ -0,0 +1,18 @@
+package com.corajr.loom;
+
+import com.corajr.loom.time.Interval;
+
+/**
+ * A {@link SeekableEventQueryable} that knows the span of its events, so that
+ * it may be looped, repeated or followed by other events.
+ * 
+ * @author corajr
+ */
+public interface BoundedEventQueryable extends SeekableEventQueryable {
+	/**
+	 * Finds the span of time taken up by all of the events.
+	 * 
+	 * @return the span, or null if there are no events or they never end
+	 */
+	public Interval getTotalInterval();
+}
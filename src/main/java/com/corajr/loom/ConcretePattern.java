@@ -1,6 +1,5 @@
 package com.corajr.loom;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.concurrent.Callable;
@@ -12,6 +11,8 @@ import com.corajr.loom.continuous.ContinuousFunction;
 import com.corajr.loom.mappings.*;
 import com.corajr.loom.time.Interval;
 import com.corajr.loom.time.IntervalMath;
+import com.corajr.loom.time.Rational;
+import com.corajr.loom.util.StatefulCallable;
 
 /**
  * The implementation of a Pattern, which stores its output mappings and
@@ -51,47 +52,121 @@ public class ConcretePattern extends Pattern {
 	}
 
 	@Override
-	public Collection<Callable<?>> getActiveMappingsFor(Interval interval) {
-		if (this.events != null)
-			return getAllCallablesInInterval(interval);
+	public void addActiveMappingsFor(Interval interval,
+			Collection<Callable<?>> callbacks) {
+		if (PatternProfile.ENABLED) {
+			long start = System.nanoTime();
+			int before = callbacks.size();
+			collectMappingsFor(interval, callbacks);
+			profile.mappingsCollected(System.nanoTime() - start,
+					callbacks.size() - before);
+		} else {
+			collectMappingsFor(interval, callbacks);
+		}
+	}
+
+	private void collectMappingsFor(Interval interval,
+			Collection<Callable<?>> callbacks) {
+		if (this.events != null) {
+			addAllCallablesInInterval(interval, callbacks);
+			return;
+		}
 
-		Collection<Callable<?>> callbacks = new ArrayList<Callable<?>>();
 		for (MappingType mapping : activeMappings) {
 			if (outputMappings.containsKey(mapping))
-				callbacks.add((Callable<?>) getAs(mapping,
+				addCallback(callbacks, (Callable<?>) getAs(mapping,
 						getValueFor(interval)));
 		}
-		return callbacks;
 	}
 
-	private Collection<Callable<?>> getAllCallablesInInterval(Interval interval) {
-		Collection<Callable<?>> callables = new ArrayList<Callable<?>>();
-		Collection<LEvent> activeEvents = this.events.getForInterval(interval);
-		Collection<MappingType> myMappings = new ArrayList<MappingType>();
+	private void addCallback(Collection<Callable<?>> callbacks,
+			Callable<?> callback) {
+		callbacks.add(callback);
+	}
 
-		for (MappingType mapping : activeMappings) {
-			if (outputMappings.containsKey(mapping))
-				myMappings.add(mapping);
-		}
+	@SuppressWarnings("unchecked")
+	private void addAllCallablesInInterval(Interval interval,
+			Collection<Callable<?>> callables) {
+		if (!hasActiveMappings())
+			return;
+
+		Collection<LEvent> activeEvents = this.events.getForInterval(interval);
+		if (PatternProfile.ENABLED)
+			profile.eventsScanned(activeEvents.size());
 
 		for (LEvent e : activeEvents) {
 			double eventValue = transformValue(e.getValue());
 
-			for (MappingType mapping : myMappings) {
+			for (MappingType mapping : activeMappings) {
+				if (!outputMappings.containsKey(mapping))
+					continue;
+
 				if (mapping == MappingType.CALLABLE_WITH_ARG) {
 					EventMapping<Callable<?>> callMap = (EventMapping<Callable<?>>) outputMappings
 							.get(MappingType.CALLABLE_WITH_ARG);
 					Callable<?> sc = callMap.call(e);
 					if (sc != null)
-						callables.add(sc);
+						addCallback(callables, sc);
 				} else {
-					callables.add((Callable<?>) getAs(mapping, eventValue));
+					addCallback(callables,
+							(Callable<?>) getAs(mapping, eventValue));
 				}
 			}
 
 		}
+	}
 
-		return callables;
+	@Override
+	public Rational getTimeUntilActive(Interval interval) {
+		if (!hasActiveMappings())
+			return null;
+
+		// continuous patterns produce callbacks at every update
+		if (this.events == null
+				|| !(this.events instanceof SeekableEventQueryable))
+			return Rational.ZERO;
+
+		// events that would only repeat a stateful callable's current value
+		// do nothing, so they need not be updated again
+		for (LEvent e : this.events.getForInterval(interval))
+			if (!isIdle(e))
+				return Rational.ZERO;
+
+		Rational end = interval.getRationalEnd();
+		Rational next = ((SeekableEventQueryable) this.events)
+				.getNextStartAfter(end);
+		if (next == null)
+			return null;
+
+		Rational untilActive = next.subtract(end);
+		return untilActive.signum() > 0 ? untilActive : Rational.ZERO;
+	}
+
+	/**
+	 * Checks whether the callbacks for an event would all do nothing if called
+	 * now.
+	 */
+	private boolean isIdle(LEvent e) {
+		for (MappingType mapping : activeMappings) {
+			Mapping<?> m = outputMappings.get(mapping);
+			if (m == null)
+				continue;
+
+			Object callback;
+			if (mapping == MappingType.STATEFUL_CALLABLE)
+				callback = getAs(mapping, transformValue(e.getValue()));
+			else if (mapping == MappingType.CALLABLE_WITH_ARG
+					&& m instanceof StatefulCallableMapping)
+				callback = ((StatefulCallableMapping) m).call(e);
+			else
+				return false;
+
+			if (callback != null
+					&& !(callback instanceof StatefulCallable && ((StatefulCallable) callback)
+							.isIdle()))
+				return false;
+		}
+		return true;
 	}
 
 	@Override
@@ -122,6 +197,16 @@ public class ConcretePattern extends Pattern {
 
 	@Override
 	public double getValueFor(Interval now) {
+		if (PatternProfile.ENABLED) {
+			long start = System.nanoTime();
+			double value = computeValueFor(now);
+			profile.valueComputed(System.nanoTime() - start);
+			return value;
+		}
+		return computeValueFor(now);
+	}
+
+	private double computeValueFor(Interval now) {
 		double value = defaultValue;
 		if (this.function != null) {
 			try {
@@ -132,6 +217,8 @@ public class ConcretePattern extends Pattern {
 			}
 		} else if (this.events != null) {
 			Collection<LEvent> activeEvents = this.events.getForInterval(now);
+			if (PatternProfile.ENABLED)
+				profile.eventsScanned(activeEvents.size());
 			for (LEvent e : activeEvents) {
 				value = e.getValue();
 			}
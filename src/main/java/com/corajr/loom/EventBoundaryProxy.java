@@ -6,6 +6,7 @@ import java.util.Collection;
 import org.apache.commons.math3.fraction.BigFraction;
 
 import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
 import com.corajr.loom.time.Scheduler;
 
 /**
@@ -15,7 +16,8 @@ import com.corajr.loom.time.Scheduler;
  * @author corajr
  * 
  */
-public class EventBoundaryProxy extends EventTransformer {
+public class EventBoundaryProxy extends EventTransformer implements
+		SeekableEventQueryable {
 	final private Pattern timeScaler;
 
 	public static final double ONSET = 1.0;
@@ -37,6 +39,42 @@ public class EventBoundaryProxy extends EventTransformer {
 	public Collection<LEvent> apply(Interval interval, LEvent e) {
 		Collection<LEvent> newEvents = new ArrayList<LEvent>();
 
+		for (LEvent t : getTriggers(e)) {
+			if (t.containedBy(interval))
+				newEvents.add(t);
+		}
+
+		return newEvents;
+	}
+
+	/**
+	 * The next onset is the start of the next parent event; the next release
+	 * may belong to a parent event that is already under way.
+	 */
+	@Override
+	public Rational getNextStartAfter(Rational time) {
+		EventQueryable parentEvents = getParentEvents();
+		if (!(parentEvents instanceof SeekableEventQueryable))
+			return time;
+
+		Rational next = ((SeekableEventQueryable) parentEvents)
+				.getNextStartAfter(time);
+
+		Interval current = new Interval(time,
+				time.add(Rational.valueOf(getMinimumResolution())));
+		for (LEvent e : parentEvents.getForInterval(current)) {
+			for (LEvent t : getTriggers(e)) {
+				Rational start = t.getInterval().getRationalStart();
+				if (start.compareTo(time) > 0
+						&& (next == null || start.compareTo(next) < 0))
+					next = start;
+			}
+		}
+
+		return next;
+	}
+
+	private LEvent[] getTriggers(LEvent e) {
 		Interval eInterval = e.getInterval();
 		BigFraction instant = eInterval.getSize().divide(2);
 		if (instant.compareTo(getMinimumResolution()) > 0) {
@@ -48,15 +86,8 @@ public class EventBoundaryProxy extends EventTransformer {
 		BigFraction end = eInterval.getEnd();
 		BigFraction endMinus = end.subtract(instant);
 
-		LEvent[] triggers = new LEvent[] {
+		return new LEvent[] {
 				new LEvent(new Interval(start, startPlus), ONSET, e),
 				new LEvent(new Interval(endMinus, end), RELEASE, e) };
-
-		for (LEvent t : triggers) {
-			if (t.containedBy(interval))
-				newEvents.add(t);
-		}
-
-		return newEvents;
 	}
 }
@@ -6,6 +6,7 @@ import java.util.concurrent.*;
 import org.apache.commons.math3.fraction.BigFraction;
 
 import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
 
 /**
  * Stores events as a sorted map indexed by start position.
@@ -18,9 +19,20 @@ import com.corajr.loom.time.Interval;
  */
 
 public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
-		implements EventQueryable {
+		implements BoundedEventQueryable {
 	private static final long serialVersionUID = -4270420021705392093L;
 
+	/**
+	 * The longest duration of any event ever put into this collection. Used to
+	 * bound the range of start positions that must be examined when querying.
+	 */
+	private volatile BigFraction maxDuration = BigFraction.ZERO;
+
+	/**
+	 * Incremented whenever events are put into this collection.
+	 */
+	private volatile long version = 0;
+
 	/**
 	 * Creates a series of events from a string.
 	 * 
@@ -116,9 +128,8 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 	 */
 	public static EventCollection fromDoubles(List<Double> doubleValues)
 			throws IllegalArgumentException {
-		EventCollection events = new EventCollection();
-
 		int n = doubleValues.size();
+		List<LEvent> sorted = new ArrayList<LEvent>(n);
 		for (int i = 0; i < n; i++) {
 			double value = doubleValues.get(i);
 
@@ -128,8 +139,11 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 			BigFraction start = new BigFraction(i, n);
 			BigFraction end = start.add(new BigFraction(1, n));
 			Interval interval = new Interval(start, end);
-			events.put(start, new LEvent(interval, value));
+			sorted.add(new LEvent(interval, value));
 		}
+
+		EventCollection events = new EventCollection();
+		events.putSorted(sorted);
 		return events;
 	}
 
@@ -169,14 +183,119 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 	public void add(LEvent e) throws IllegalStateException {
 		Collection<LEvent> existingEvents = getForInterval(e.getInterval());
 		if (!existingEvents.isEmpty())
-			throw new IllegalStateException(
-					"Cannot add overlapping events! Create a new pattern instead.");
+			throw overlapping(existingEvents.iterator().next(), e);
 		put(e.getInterval().getStart(), e);
 	}
 
+	/**
+	 * Adds many events at once, unless any of them overlap. The new events are
+	 * sorted by their start and checked against each other in a single pass,
+	 * and against the existing events with one query each, so that adding n
+	 * events takes O(n log n) time. Either all of the events are added or
+	 * none are.
+	 * 
+	 * @param events
+	 *            the events to add, in any order
+	 * @throws IllegalStateException
+	 *             describing the first overlap found
+	 */
 	public void addAll(Collection<LEvent> events) throws IllegalStateException {
-		for (LEvent e : events) {
-			add(e);
+		List<LEvent> sorted = new ArrayList<LEvent>(events);
+		Collections.sort(sorted, BY_START);
+
+		Rational latestEnd = null;
+		LEvent latest = null;
+		for (LEvent e : sorted) {
+			Interval interval = e.getInterval();
+			if (latestEnd != null
+					&& latestEnd.compareTo(interval.getRationalStart()) > 0)
+				throw overlapping(latest, e);
+			if (latestEnd == null
+					|| interval.getRationalEnd().compareTo(latestEnd) > 0) {
+				latestEnd = interval.getRationalEnd();
+				latest = e;
+			}
+
+			if (!isEmpty()) {
+				Collection<LEvent> existingEvents = getForInterval(interval);
+				if (!existingEvents.isEmpty())
+					throw overlapping(existingEvents.iterator().next(), e);
+			}
+		}
+
+		putSorted(sorted);
+	}
+
+	/**
+	 * Stores events that are known not to overlap, in order of their start.
+	 */
+	private void putSorted(List<LEvent> sorted) {
+		if (sorted.isEmpty())
+			return;
+
+		BigFraction longest = BigFraction.ZERO;
+		for (LEvent e : sorted) {
+			BigFraction size = e.getInterval().getSize();
+			if (size.compareTo(longest) > 0)
+				longest = size;
+		}
+		updateMaxDuration(longest);
+
+		for (LEvent e : sorted)
+			super.put(e.getInterval().getStart(), e);
+		eventsChanged();
+	}
+
+	private static IllegalStateException overlapping(LEvent existing,
+			LEvent added) {
+		return new IllegalStateException(
+				"Cannot add overlapping events! Create a new pattern instead. ("
+						+ added + " overlaps " + existing + ")");
+	}
+
+	private static final Comparator<LEvent> BY_START = new Comparator<LEvent>() {
+		@Override
+		public int compare(LEvent a, LEvent b) {
+			return a.getInterval().getRationalStart()
+					.compareTo(b.getInterval().getRationalStart());
+		}
+	};
+
+	/**
+	 * Collects events and builds them into an {@link EventCollection} in one
+	 * step. Example:
+	 * 
+	 * <pre>
+	 * EventCollection.Builder builder = new EventCollection.Builder();
+	 * for (MidiEvent note : notes)
+	 * 	builder.add(toEvent(note));
+	 * EventCollection events = builder.build();
+	 * </pre>
+	 * 
+	 * @see EventCollection#addAll(Collection)
+	 */
+	public static class Builder {
+		private final List<LEvent> events = new ArrayList<LEvent>();
+
+		public Builder add(LEvent e) {
+			events.add(e);
+			return this;
+		}
+
+		public Builder addAll(Collection<LEvent> events) {
+			this.events.addAll(events);
+			return this;
+		}
+
+		/**
+		 * @return a new collection holding the events
+		 * @throws IllegalStateException
+		 *             describing the first overlap found
+		 */
+		public EventCollection build() {
+			EventCollection collection = new EventCollection();
+			collection.addAll(events);
+			return collection;
 		}
 	}
 
@@ -202,10 +321,13 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 	 *            the events to add
 	 */
 	public void addWithOffset(BigFraction offset, Collection<LEvent> events) {
+		Rational amount = Rational.valueOf(offset);
+		List<LEvent> shifted = new ArrayList<LEvent>(events.size());
 		for (LEvent e : events) {
-			Interval newInterval = e.getInterval().add(offset);
-			add(new LEvent(newInterval, e.getValue()));
+			Interval newInterval = e.getInterval().add(amount);
+			shifted.add(new LEvent(newInterval, e.getValue()));
 		}
+		addAll(shifted);
 	}
 
 	/**
@@ -227,6 +349,7 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 	 * 
 	 * @return the total duration of this collection (null if it has no events)
 	 */
+	@Override
 	public Interval getTotalInterval() {
 		if (this.size() > 0) {
 			BigFraction start = this.firstKey();
@@ -237,16 +360,87 @@ public class EventCollection extends ConcurrentSkipListMap<BigFraction, LEvent>
 		}
 	}
 
+	/**
+	 * Stores an event under its start position, keeping track of the longest
+	 * duration seen so far.
+	 * 
+	 * @param start
+	 *            the start of the event
+	 * @param e
+	 *            the event to store
+	 * @return the event previously stored at that position, if any
+	 */
+	@Override
+	public LEvent put(BigFraction start, LEvent e) {
+		updateMaxDuration(e.getInterval().getSize());
+		LEvent previous = super.put(start, e);
+		eventsChanged();
+		return previous;
+	}
+
+	/**
+	 * @return a number that changes whenever events are put into this
+	 *         collection
+	 * @see LazyEventQueryable#getSourceVersion()
+	 */
+	long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Signals that events have been stored, after they are visible to
+	 * queries.
+	 */
+	private void eventsChanged() {
+		synchronized (this) {
+			version++;
+		}
+		PatternCollection.structureChanged();
+	}
+
+	private synchronized void updateMaxDuration(BigFraction size) {
+		if (size.compareTo(maxDuration) > 0)
+			maxDuration = size;
+	}
+
+	/**
+	 * Finds the events for which {@link LEvent#containedBy(Interval)} is true.
+	 * Only events starting within the longest event duration before the query
+	 * start (up to and including the query end) are examined, so a query costs
+	 * O(log n + k) rather than a scan of the whole collection.
+	 * 
+	 * @param interval
+	 *            the query interval
+	 * @return the matching events, in order of their start
+	 */
 	@Override
 	public Collection<LEvent> getForInterval(Interval interval) {
 		List<LEvent> events = new ArrayList<LEvent>();
-		for (LEvent e : this.values()) {
+		BigFraction lowest = interval.getStart().subtract(maxDuration);
+		for (LEvent e : subMap(lowest, true, interval.getEnd(), true).values()) {
 			if (e.containedBy(interval))
 				events.add(e);
 		}
 		return events;
 	}
 
+	@Override
+	public Rational getNextStartAfter(Rational time) {
+		BigFraction next = higherKey(time.toBigFraction());
+		return next != null ? Rational.valueOf(next) : null;
+	}
+
+	/**
+	 * Copies the events into a compact, immutable form that takes far less
+	 * memory. Later changes to this collection are not seen by the copy.
+	 * 
+	 * @return the frozen events
+	 * @see FrozenEvents
+	 */
+	public FrozenEvents freeze() {
+		return new FrozenEvents(values());
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
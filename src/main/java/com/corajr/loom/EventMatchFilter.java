@@ -4,13 +4,15 @@ import java.util.Collection;
 import java.util.Collections;
 
 import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
 
 /**
  * Match events from the parent EventQueryable according to a specified value.
  * 
  * @author corajr
  */
-public class EventMatchFilter extends EventTransformer {
+public class EventMatchFilter extends EventTransformer implements
+		SeekableEventQueryable {
 	double matchValue;
 	static final double EPSILON = 1e-4;
 
@@ -28,4 +30,14 @@ public class EventMatchFilter extends EventTransformer {
 			return Collections.singletonList(new LEvent(e.getInterval(), 0.0, e
 					.getParentEvent()));
 	}
+
+	@Override
+	public Rational getNextStartAfter(Rational time) {
+		EventQueryable parentEvents = getParentEvents();
+		if (parentEvents instanceof SeekableEventQueryable)
+			return ((SeekableEventQueryable) parentEvents)
+					.getNextStartAfter(time);
+		else
+			return time;
+	}
 }
@@ -0,0 +1,114 @@
+package com.corajr.loom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
+
+/**
+ * Plays the events of another EventQueryable a number of times (or forever),
+ * one copy after another, without copying them. As with
+ * {@link Pattern#repeat(int)}, each copy begins where the last one ends.
+ * 
+ * @author corajr
+ */
+public class EventRepeater extends LazyEventQueryable {
+	/**
+	 * Pass as the number of times to repeat without end.
+	 */
+	public static final int FOREVER = -1;
+
+	private final EventQueryable source;
+	private final Interval span;
+	private final Rational period;
+	private final int times;
+
+	/**
+	 * @param source
+	 *            the events to repeat, which must have a known span
+	 * @param times
+	 *            the number of copies, or {@link #FOREVER}
+	 */
+	public EventRepeater(EventQueryable source, int times) {
+		Interval span = getTotalInterval(source);
+		if (span == null)
+			throw new IllegalArgumentException(
+					"Can only repeat events with a known span!");
+		if (times < 1 && times != FOREVER)
+			throw new IllegalArgumentException(
+					"Must repeat at least once (or FOREVER)!");
+		if (span.getRationalEnd().signum() <= 0)
+			throw new IllegalArgumentException(
+					"Repeated events must end after time zero!");
+
+		this.source = source;
+		this.span = span;
+		this.period = span.getRationalEnd();
+		this.times = times;
+	}
+
+	@Override
+	protected long getSourceVersion() {
+		return getVersion(source);
+	}
+
+	@Override
+	protected Collection<LEvent> compute(Interval interval) {
+		List<LEvent> events = new ArrayList<LEvent>();
+
+		// only copies that begin before the query ends and end after it
+		// starts can hold matching events
+		long first = Math.max(0, interval.getRationalStart()
+				.subtract(span.getRationalEnd()).divide(period).floor()
+				.longValue());
+		long last = interval.getRationalEnd()
+				.subtract(span.getRationalStart()).divide(period).floor()
+				.longValue();
+		if (times != FOREVER)
+			last = Math.min(last, times - 1);
+
+		for (long i = first; i <= last; i++) {
+			Rational offset = period.multiply(i);
+			events.addAll(shift(
+					source.getForInterval(interval.subtract(offset)), offset));
+		}
+		return events;
+	}
+
+	@Override
+	public Rational getNextStartAfter(Rational time) {
+		long copy = Math.max(0, time.subtract(span.getRationalStart())
+				.divide(period).floor().longValue());
+
+		// the next start is either in this copy or at the start of the next
+		for (long i = copy; i <= copy + 1; i++) {
+			if (times != FOREVER && i >= times)
+				return null;
+
+			Rational offset = period.multiply(i);
+			Rational next = getNextStartAfter(source, time.subtract(offset));
+			if (next != null)
+				return next.add(offset);
+		}
+		return null;
+	}
+
+	@Override
+	public Interval getTotalInterval() {
+		if (times == FOREVER)
+			return null;
+		return new Interval(span.getRationalStart(), period.multiply(times));
+	}
+
+	public int getTimes() {
+		return times;
+	}
+
+	@Override
+	public String toString() {
+		return "EventRepeater(" + (times == FOREVER ? "forever" : times)
+				+ " x " + source.toString() + ")";
+	}
+}
@@ -0,0 +1,79 @@
+package com.corajr.loom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
+import com.corajr.loom.time.Scheduler;
+import com.corajr.loom.transforms.EventRewriter;
+
+/**
+ * Rewrites the events of another EventQueryable as they are queried, rather
+ * than all at once as {@link Pattern#rewrite(EventRewriter)} does. The rules
+ * must keep the events they produce within the interval of the original
+ * event (as splitting and filtering rules do), and are not told the original
+ * event's index.
+ * 
+ * @author corajr
+ */
+public class EventRewriteProxy extends LazyEventQueryable {
+	private final EventQueryable source;
+	private final EventRewriter rewriter;
+
+	public EventRewriteProxy(EventQueryable source, EventRewriter rewriter) {
+		this.source = source;
+		this.rewriter = rewriter;
+	}
+
+	@Override
+	protected long getSourceVersion() {
+		return getVersion(source);
+	}
+
+	@Override
+	protected Collection<LEvent> compute(Interval interval) {
+		List<LEvent> events = new ArrayList<LEvent>();
+		for (LEvent original : source.getForInterval(interval)) {
+			for (LEvent e : rewriter.apply(original)) {
+				if (e.containedBy(interval))
+					events.add(e);
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * The next start is either that of the next original event or one inside
+	 * an original event already under way.
+	 */
+	@Override
+	public Rational getNextStartAfter(Rational time) {
+		Rational next = getNextStartAfter(source, time);
+		if (next != null && next.equals(time))
+			return next;
+
+		Interval current = new Interval(time, time.add(Rational
+				.valueOf(Scheduler.DEFAULT_RESOLUTION)));
+		for (LEvent original : source.getForInterval(current)) {
+			for (LEvent e : rewriter.apply(original)) {
+				Rational start = e.getInterval().getRationalStart();
+				if (start.compareTo(time) > 0
+						&& (next == null || start.compareTo(next) < 0))
+					next = start;
+			}
+		}
+		return next;
+	}
+
+	@Override
+	public Interval getTotalInterval() {
+		return getTotalInterval(source);
+	}
+
+	@Override
+	public String toString() {
+		return "EventRewriteProxy(" + source.toString() + ")";
+	}
+}
@@ -0,0 +1,116 @@
+package com.corajr.loom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
+
+/**
+ * Plays the events of several EventQueryables one after another, without
+ * copying them. As with {@link EventCollection#addAfterwards(Collection)},
+ * each part begins where the one before it ends.
+ * 
+ * @author corajr
+ */
+public class EventSequence extends LazyEventQueryable {
+	private final EventQueryable[] parts;
+	private final Interval[] spans;
+
+	/**
+	 * The time at which each part begins, plus the end of the last.
+	 */
+	private final Rational[] offsets;
+
+	/**
+	 * @param parts
+	 *            the events to play in turn, each with a known span
+	 */
+	public EventSequence(EventQueryable... parts) {
+		if (parts.length == 0)
+			throw new IllegalArgumentException("Need at least one part!");
+
+		this.parts = parts.clone();
+		this.spans = new Interval[parts.length];
+		this.offsets = new Rational[parts.length + 1];
+
+		offsets[0] = Rational.ZERO;
+		for (int i = 0; i < parts.length; i++) {
+			spans[i] = getTotalInterval(parts[i]);
+			if (spans[i] == null)
+				throw new IllegalArgumentException(
+						"Can only sequence events with a known span!");
+			offsets[i + 1] = offsets[i].add(spans[i].getRationalEnd());
+		}
+	}
+
+	/**
+	 * As each part's version only increases, their sum changes whenever any
+	 * of them does.
+	 */
+	@Override
+	protected long getSourceVersion() {
+		long version = 0;
+		for (EventQueryable part : parts)
+			version += getVersion(part);
+		return version;
+	}
+
+	@Override
+	protected Collection<LEvent> compute(Interval interval) {
+		List<LEvent> events = new ArrayList<LEvent>();
+		for (int i = 0; i < parts.length; i++) {
+			if (!overlaps(i, interval))
+				continue;
+
+			events.addAll(shift(
+					parts[i].getForInterval(interval.subtract(offsets[i])),
+					offsets[i]));
+		}
+		return events;
+	}
+
+	/**
+	 * Checks whether a part could hold events matching the interval.
+	 */
+	private boolean overlaps(int i, Interval interval) {
+		Rational start = offsets[i].add(spans[i].getRationalStart());
+		Rational end = offsets[i].add(spans[i].getRationalEnd());
+		return start.compareTo(interval.getRationalEnd()) <= 0
+				&& end.compareTo(interval.getRationalStart()) > 0;
+	}
+
+	@Override
+	public Rational getNextStartAfter(Rational time) {
+		for (int i = 0; i < parts.length; i++) {
+			if (offsets[i + 1].compareTo(time) <= 0)
+				continue;
+
+			Rational next = getNextStartAfter(parts[i],
+					time.subtract(offsets[i]));
+			if (next != null)
+				return next.add(offsets[i]);
+		}
+		return null;
+	}
+
+	@Override
+	public Interval getTotalInterval() {
+		return new Interval(spans[0].getRationalStart(),
+				offsets[parts.length]);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("EventSequence(");
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(parts[i].toString());
+		}
+		sb.append(")");
+		return sb.toString();
+	}
+}
@@ -22,6 +22,10 @@ public abstract class EventTransformer implements EventQueryable {
 
 	public abstract Collection<LEvent> apply(Interval interval, LEvent e);
 
+	protected EventQueryable getParentEvents() {
+		return parentEvents;
+	}
+
 	@Override
 	public Collection<LEvent> getForInterval(Interval interval) {
 		Collection<LEvent> realEvents = parentEvents.getForInterval(interval);
@@ -0,0 +1,103 @@
+package com.corajr.loom;
+
+import java.math.BigInteger;
+import java.util.Collection;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * An immutable series of events stored in parallel primitive arrays: the
+ * start and end of each event as numerators over one common denominator, and
+ * its value. This takes a few dozen bytes per event rather than the hundreds
+ * used by an {@link EventCollection}.
+ * 
+ * @author corajr
+ * @see EventCollection#freeze()
+ */
+public final class FrozenEvents extends PackedEvents {
+	private static final BigInteger LONG_MAX = BigInteger
+			.valueOf(Long.MAX_VALUE);
+
+	private final long denominator;
+	private final long[] starts;
+	private final long[] ends;
+	private final double[] values;
+
+	/**
+	 * Copies a series of events.
+	 * 
+	 * @param events
+	 *            the events, in order of their start and not overlapping
+	 * @throws IllegalArgumentException
+	 *             if the events are out of order or overlap
+	 * @throws IllegalStateException
+	 *             if their times have no common denominator that fits in a
+	 *             long
+	 */
+	public FrozenEvents(Collection<LEvent> events) {
+		int n = events.size();
+		starts = new long[n];
+		ends = new long[n];
+		values = new double[n];
+
+		BigInteger common = BigInteger.ONE;
+		for (LEvent e : events) {
+			common = lcm(common, e.getInterval().getStart().getDenominator());
+			common = lcm(common, e.getInterval().getEnd().getDenominator());
+		}
+		if (common.compareTo(LONG_MAX) > 0)
+			throw new IllegalStateException(
+					"Event times are too finely divided to freeze!");
+		denominator = common.longValue();
+
+		int i = 0;
+		for (LEvent e : events) {
+			starts[i] = scale(e.getInterval().getStart(), common);
+			ends[i] = scale(e.getInterval().getEnd(), common);
+			values[i] = e.getValue();
+
+			if (i > 0 && starts[i] < ends[i - 1])
+				throw new IllegalArgumentException(
+						"Events must be in order and must not overlap!");
+			i++;
+		}
+	}
+
+	private static BigInteger lcm(BigInteger a, BigInteger b) {
+		return a.divide(a.gcd(b)).multiply(b);
+	}
+
+	private static long scale(BigFraction time, BigInteger common) {
+		BigInteger scaled = time.getNumerator().multiply(
+				common.divide(time.getDenominator()));
+		if (scaled.bitLength() >= Long.SIZE)
+			throw new IllegalStateException(
+					"Event times are too far from zero to freeze!");
+		return scaled.longValue();
+	}
+
+	@Override
+	public long getDenominator() {
+		return denominator;
+	}
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+	@Override
+	long getStart(int i) {
+		return starts[i];
+	}
+
+	@Override
+	long getEnd(int i) {
+		return ends[i];
+	}
+
+	@Override
+	double getValue(int i) {
+		return values[i];
+	}
+}
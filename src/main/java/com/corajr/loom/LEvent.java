@@ -6,6 +6,7 @@ import org.apache.commons.math3.fraction.BigFraction;
 
 import com.corajr.loom.time.Interval;
 import com.corajr.loom.time.IntervalMath;
+import com.corajr.loom.time.Rational;
 import com.corajr.loom.util.MidiTools.Note;
 
 /**
@@ -71,11 +72,11 @@ public class LEvent {
 	 * @return whether the event falls within the interval
 	 */
 	public boolean containedBy(Interval queryInterval) {
-		BigFraction queryStart = queryInterval.getStart();
-		BigFraction queryEnd = queryInterval.getEnd();
+		Rational queryStart = queryInterval.getRationalStart();
+		Rational queryEnd = queryInterval.getRationalEnd();
 
-		BigFraction start = interval.getStart();
-		BigFraction end = interval.getEnd();
+		Rational start = interval.getRationalStart();
+		Rational end = interval.getRationalEnd();
 
 		boolean startsBeforeOrAtQueryEnd = start.compareTo(queryEnd) <= 0;
 		boolean endsAfterQueryStart = end.compareTo(queryStart) > 0;
@@ -0,0 +1,149 @@
+package com.corajr.loom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
+
+/**
+ * Base class for events that are computed when queried rather than stored.
+ * The results of the most recent queries are kept in a small cache, since the
+ * same interval is usually asked for several times per tick (once for each
+ * mapping and once for the pattern's value). The cache is emptied only when
+ * the events it was computed from change.
+ * 
+ * @author corajr
+ */
+public abstract class LazyEventQueryable implements BoundedEventQueryable {
+	public static final int DEFAULT_CACHE_SIZE = 16;
+
+	private final Map<Interval, Collection<LEvent>> cache;
+	private long cachedVersion = -1;
+
+	public LazyEventQueryable() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * @param cacheSize
+	 *            the number of query results to keep
+	 */
+	public LazyEventQueryable(final int cacheSize) {
+		cache = new LinkedHashMap<Interval, Collection<LEvent>>(cacheSize + 1,
+				0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Interval, Collection<LEvent>> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Computes the events for which {@link LEvent#containedBy(Interval)} is
+	 * true, in order of their start.
+	 * 
+	 * @param interval
+	 *            the query interval
+	 * @return the matching events
+	 */
+	protected abstract Collection<LEvent> compute(Interval interval);
+
+	/**
+	 * Returns a number that changes whenever the events this queryable is
+	 * computed from change, so that cached results can be discarded. The
+	 * default treats the sources as fixed.
+	 * 
+	 * @return the version of the sources
+	 * @see #getVersion(EventQueryable)
+	 */
+	protected long getSourceVersion() {
+		return 0;
+	}
+
+	@Override
+	public Collection<LEvent> getForInterval(Interval interval) {
+		long version = getSourceVersion();
+		synchronized (cache) {
+			if (version != cachedVersion) {
+				cache.clear();
+				cachedVersion = version;
+			}
+
+			Collection<LEvent> events = cache.get(interval);
+			if (events != null)
+				return events;
+		}
+
+		Collection<LEvent> events = Collections
+				.unmodifiableList(new ArrayList<LEvent>(compute(interval)));
+		synchronized (cache) {
+			if (version == cachedVersion)
+				cache.put(interval, events);
+		}
+		return events;
+	}
+
+	/**
+	 * Finds the version of some events, for {@link #getSourceVersion()}. Only
+	 * EventCollections and other LazyEventQueryables can change; anything
+	 * else is treated as fixed.
+	 * 
+	 * @param events
+	 *            the events
+	 * @return a number that changes whenever the events do
+	 */
+	static long getVersion(EventQueryable events) {
+		if (events instanceof EventCollection)
+			return ((EventCollection) events).getVersion();
+		if (events instanceof LazyEventQueryable)
+			return ((LazyEventQueryable) events).getSourceVersion();
+		return 0;
+	}
+
+	/**
+	 * Finds the span of some events, if it is known.
+	 * 
+	 * @param events
+	 *            the events
+	 * @return the span, or null if it is infinite or unknown
+	 * @see BoundedEventQueryable
+	 */
+	static Interval getTotalInterval(EventQueryable events) {
+		if (events instanceof BoundedEventQueryable)
+			return ((BoundedEventQueryable) events).getTotalInterval();
+		return null;
+	}
+
+	/**
+	 * Asks for the next start after a given time, falling back to the time
+	 * itself if the events cannot say.
+	 */
+	static Rational getNextStartAfter(
+			EventQueryable events, Rational time) {
+		if (events instanceof SeekableEventQueryable)
+			return ((SeekableEventQueryable) events).getNextStartAfter(time);
+		return time;
+	}
+
+	/**
+	 * Moves events by an offset.
+	 */
+	static Collection<LEvent> shift(Collection<LEvent> events,
+			Rational offset) {
+		if (offset.signum() == 0)
+			return events;
+
+		Collection<LEvent> shifted = new ArrayList<LEvent>(events.size());
+		for (LEvent e : events)
+			shifted.add(new LEvent(e.getInterval().add(offset), e.getValue(),
+					e.getParentEvent()));
+		return shifted;
+	}
+}
@@ -29,11 +29,14 @@ package com.corajr.loom;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.DatagramChannel;
 
 import javax.sound.midi.MidiMessage;
 
 import org.apache.commons.math3.fraction.BigFraction;
 
+import com.corajr.loom.mappings.Mapping;
+import com.corajr.loom.mappings.MidiMessageMapping;
 import com.corajr.loom.time.*;
 import com.corajr.loom.wrappers.*;
 
@@ -58,6 +61,9 @@ public class Loom {
 
 	public OscP5Wrapper oscP5Wrapper = new OscP5Wrapper();
 	public MidiBusWrapper midiBusWrapper = new MidiBusWrapper();
+	private BatchingMidiBus midiBatch = null;
+	private VoiceTracker midiVoices = null;
+	private int maxPolyphony = VoiceTracker.DEFAULT_MAX_VOICES;
 
 	public final static String VERSION = "##library.prettyVersion##";
 
@@ -122,16 +128,61 @@ public class Loom {
 		return scheduler.getCurrentInterval();
 	}
 
+	/**
+	 * @return the number of milliseconds (i.e. ticks) since playback began
+	 */
+	public long getElapsedMillis() {
+		return scheduler.getElapsedMillis();
+	}
+
 	public void play() {
 		scheduler.play();
 	}
 
+	/**
+	 * Pauses playback, and sends a note-off for every MIDI note still sounding.
+	 */
 	public void pause() {
 		scheduler.pause();
+		releaseMidiNotes();
 	}
 
+	/**
+	 * Stops playback, and sends a note-off for every MIDI note still sounding.
+	 */
 	public void stop() {
 		scheduler.stop();
+		releaseMidiNotes();
+	}
+
+	/**
+	 * Sends a note-off for every note left sounding by a pattern mapped with
+	 * {@link Pattern#asMidiMessage(Pattern)}, and for any other note still
+	 * sounding on the MidiBus.
+	 */
+	void releaseMidiNotes() {
+		for (Pattern pattern : patterns)
+			releaseMidiNotes(pattern);
+		if (midiVoices != null)
+			midiVoices.allNotesOff();
+	}
+
+	/**
+	 * Sends a note-off for every note left sounding by the pattern or its
+	 * descendants.
+	 * 
+	 * @param pattern
+	 *            the pattern
+	 */
+	static void releaseMidiNotes(Pattern pattern) {
+		if (pattern.isConcretePattern()) {
+			for (Mapping<?> mapping : pattern.getOutputMappings().values())
+				if (mapping instanceof MidiMessageMapping)
+					((MidiMessageMapping) mapping).releaseAll();
+		} else if (pattern.children != null) {
+			for (Pattern child : pattern.children)
+				releaseMidiNotes(child);
+		}
 	}
 
 	/**
@@ -204,8 +255,60 @@ public class Loom {
 		oscP5Wrapper.set(new OscP5Impl(oscP5));
 	}
 
+	/**
+	 * Sends OSC output through a DatagramChannel instead of oscP5 (see
+	 * {@link OscChannelSender}). Bundles are then sent exactly as encoded,
+	 * without being rebuilt as oscP5 objects.
+	 * 
+	 * @param channel
+	 *            the channel to send from
+	 */
+	public void setOscChannel(DatagramChannel channel) {
+		oscP5Wrapper.set(new OscChannelSender(channel));
+	}
+
+	/**
+	 * Sends MIDI output to a MidiBus. The messages sent during each tick are
+	 * sent together at its end (see {@link BatchingMidiBus}), and each channel
+	 * plays at most {@link #getMaxPolyphony()} notes at once (see
+	 * {@link VoiceTracker}). Notes still sounding on a previous MidiBus are
+	 * released.
+	 * 
+	 * @param midiBus
+	 *            the MidiBus
+	 */
 	public void setMidiBus(themidibus.MidiBus midiBus) {
-		midiBusWrapper.set(new MidiBusImpl(midiBus));
+		if (midiBatch != null)
+			scheduler.removeTickListener(midiBatch);
+		if (midiVoices != null)
+			midiVoices.allNotesOff();
+		midiVoices = new VoiceTracker(new MidiBusImpl(midiBus), maxPolyphony);
+		midiBatch = new BatchingMidiBus(midiVoices);
+		scheduler.addTickListener(midiBatch);
+		midiBusWrapper.set(midiBatch);
+	}
+
+	/**
+	 * @return the number of notes each MIDI channel may play at once
+	 */
+	public int getMaxPolyphony() {
+		return maxPolyphony;
+	}
+
+	/**
+	 * Sets the number of notes each MIDI channel may play at once. Beyond
+	 * that, each new note releases the oldest one on its channel.
+	 * 
+	 * @param voices
+	 *            between 1 and 128
+	 */
+	public void setMaxPolyphony(int voices) {
+		if (voices < 1 || voices > 128)
+			throw new IllegalArgumentException(
+					"The number of voices must be between 1 and 128.");
+		maxPolyphony = voices;
+		if (midiVoices != null)
+			midiVoices.setMaxVoices(voices);
 	}
 
 	public void draw() {
@@ -238,6 +341,58 @@ public class Loom {
 		scheduler.setPeriod(millis);
 	}
 
+	public long getLookahead() {
+		return scheduler.getLookahead();
+	}
+
+	/**
+	 * Sets how far ahead of real time the scheduler renders callbacks.
+	 * 
+	 * @param millis
+	 *            the lookahead window in milliseconds
+	 * @see Scheduler#setLookahead(long)
+	 */
+	public void setLookahead(long millis) {
+		scheduler.setLookahead(millis);
+	}
+
+	/**
+	 * Starts collecting timing measurements from the scheduler.
+	 * 
+	 * @param metrics
+	 *            the receiver of measurements
+	 * @see Scheduler#addMetrics(SchedulerMetrics)
+	 */
+	public void addMetrics(SchedulerMetrics metrics) {
+		scheduler.addMetrics(metrics);
+	}
+
+	public void removeMetrics(SchedulerMetrics metrics) {
+		scheduler.removeMetrics(metrics);
+	}
+
+	/**
+	 * Runs callbacks on a pool of worker threads rather than the timing
+	 * thread.
+	 * 
+	 * @param executor
+	 *            the executor, or null to run callbacks on the timing thread
+	 * @see Scheduler#setCallbackExecutor(CallbackExecutor)
+	 */
+	public void setCallbackExecutor(CallbackExecutor executor) {
+		scheduler.setCallbackExecutor(executor);
+	}
+
+	/**
+	 * Returns the system time corresponding to the present moment, for
+	 * stamping output that is sent ahead of time.
+	 * 
+	 * @return the wall-clock time in milliseconds
+	 */
+	public long getWallClockMillis() {
+		return scheduler.getWallClockMillis();
+	}
+
 	public BigFraction getMinimumResolution() {
 		return scheduler.getMinimumResolution();
 	}
@@ -0,0 +1,80 @@
+package com.corajr.loom;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Immutable events read directly from a buffer, usually a file mapped into
+ * memory by {@link PatternArchive}. Nothing is copied when the events are
+ * opened; the operating system reads in the parts of the file that queries
+ * touch.
+ * 
+ * @author corajr
+ * @see PatternArchive#getEvents(String)
+ */
+public final class MappedEvents extends PackedEvents {
+	private final long denominator;
+	private final int size;
+	private final LongBuffer starts;
+	private final LongBuffer ends;
+	private final DoubleBuffer values;
+
+	/**
+	 * Reads the layout written by {@link PackedEvents#writeTo}.
+	 * 
+	 * @param buffer
+	 *            a buffer positioned at the start of the events
+	 */
+	MappedEvents(ByteBuffer buffer) {
+		ByteBuffer block = buffer.slice();
+		denominator = block.getLong(0);
+		size = block.getInt(8);
+		if (denominator <= 0 || size < 0
+				|| HEADER_SIZE + 24L * size > block.capacity())
+			throw new IllegalArgumentException("Corrupt event data!");
+
+		starts = region(block, HEADER_SIZE).asLongBuffer();
+		ends = region(block, HEADER_SIZE + 8 * size).asLongBuffer();
+		values = region(block, HEADER_SIZE + 16 * size).asDoubleBuffer();
+	}
+
+	private ByteBuffer region(ByteBuffer block, int offset) {
+		ByteBuffer region = block.duplicate();
+		region.position(offset);
+		region.limit(offset + 8 * size);
+		return region.slice();
+	}
+
+	/**
+	 * @return the number of bytes taken by these events
+	 */
+	int getByteSize() {
+		return HEADER_SIZE + 24 * size;
+	}
+
+	@Override
+	public long getDenominator() {
+		return denominator;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	long getStart(int i) {
+		return starts.get(i);
+	}
+
+	@Override
+	long getEnd(int i) {
+		return ends.get(i);
+	}
+
+	@Override
+	double getValue(int i) {
+		return values.get(i);
+	}
+}
@@ -0,0 +1,210 @@
+package com.corajr.loom;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.midi.*;
+
+import com.corajr.loom.Pattern.MappingType;
+import com.corajr.loom.mappings.Mapping;
+import com.corajr.loom.mappings.MidiMessageMapping;
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
+
+/**
+ * Renders the MIDI output of patterns straight to a
+ * {@link javax.sound.midi.Sequence}, without playing them. Each pattern set up
+ * with {@link Pattern#asMidiMessage(Pattern, Pattern, Pattern, Pattern)} is
+ * queried for its onsets directly, and stretches where no pattern is active
+ * are skipped, so a long piece is exported in a fraction of its running time.
+ * Example:
+ *
+ * <pre>
+ * MidiExporter exporter = new MidiExporter(loom);
+ * exporter.write(new Interval(0, 64), new File(&quot;piece.mid&quot;));
+ * </pre>
+ *
+ * The result matches a recording made with {@link Loom#recordMidi(String)}:
+ * one tick per millisecond at the loom's current tempo, with each message at
+ * the tick in which the scheduler would have sent it.
+ *
+ * @author corajr
+ * @see com.corajr.loom.recording.MidiBusRecorder
+ */
+public class MidiExporter {
+	/**
+	 * The resolution of the exported sequence, matching the recorder's.
+	 */
+	public static final int TICKS_PER_BEAT = 500;
+
+	private static final int CHANNELS = 16;
+	private static final int NOTES = 128;
+
+	/**
+	 * The onsets already exported for one mapping, kept as
+	 * {@link MidiMessageMapping} keeps those it has sent: for each channel and
+	 * note, the last onset and the tick in which it was sent.
+	 */
+	private static final class FiredOnsets {
+		final Interval[] onsets = new Interval[CHANNELS * NOTES];
+		final long[] ticks = new long[CHANNELS * NOTES];
+
+		/**
+		 * @return false if the message was already sent for the same onset in
+		 *         this tick or the one before
+		 */
+		boolean fire(ShortMessage message, Interval onset, long tick) {
+			int key = message.getChannel() * NOTES + message.getData1();
+			if (onset.equals(onsets[key]) && tick - ticks[key] <= 1)
+				return false;
+
+			onsets[key] = onset;
+			ticks[key] = tick;
+			return true;
+		}
+	}
+
+	private final Loom loom;
+
+	/**
+	 * @param loom
+	 *            the loom whose tempo and patterns are used
+	 */
+	public MidiExporter(Loom loom) {
+		this.loom = loom;
+	}
+
+	/**
+	 * Renders each of the loom's patterns to its own track.
+	 *
+	 * @param span
+	 *            the time to render, in cycles
+	 * @return a new sequence
+	 */
+	public Sequence export(Interval span) {
+		return export(span, loom.patterns.toArray(new Pattern[0]));
+	}
+
+	/**
+	 * Renders each of the given root patterns to its own track. Patterns that
+	 * produce no MIDI messages in the span get no track.
+	 *
+	 * @param span
+	 *            the time to render, in cycles
+	 * @param roots
+	 *            the patterns to render
+	 * @return a new sequence
+	 */
+	public Sequence export(Interval span, Pattern... roots) {
+		Sequence sequence;
+		try {
+			sequence = new Sequence(Sequence.PPQ, TICKS_PER_BEAT);
+		} catch (InvalidMidiDataException e) {
+			// we define the division type above, so this should never arise
+			throw new IllegalStateException(e);
+		}
+
+		long period = loom.getPeriod();
+		long start = span.getRationalStart().multiply(period).ceil()
+				.longValue();
+		long end = span.getRationalEnd().multiply(period).ceil().longValue();
+
+		for (Pattern root : roots) {
+			List<MidiEvent> events = render(root, start, end, period);
+			if (events.isEmpty())
+				continue;
+
+			Track track = sequence.createTrack();
+			for (MidiEvent event : events)
+				track.add(event);
+		}
+
+		return sequence;
+	}
+
+	/**
+	 * Renders the loom's patterns and writes them to a standard MIDI file.
+	 *
+	 * @param span
+	 *            the time to render, in cycles
+	 * @param file
+	 *            the file to write
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	public void write(Interval span, File file) throws IOException {
+		MidiSystem.write(export(span), 1, file);
+	}
+
+	/**
+	 * Visits each millisecond from start (inclusive) to end (exclusive) in
+	 * which the root may be active, as the scheduler would.
+	 */
+	private List<MidiEvent> render(Pattern root, long start, long end,
+			long period) {
+		List<MidiEvent> events = new ArrayList<MidiEvent>();
+		Map<MidiMessageMapping, FiredOnsets> fired = new IdentityHashMap<MidiMessageMapping, FiredOnsets>();
+		Rational half = Rational.valueOf(1, period * 2);
+
+		long tick = start;
+		while (tick < end) {
+			Rational now = Rational.valueOf(tick, period);
+			Interval interval = new Interval(now.subtract(half), now.add(half));
+
+			Rational untilActive = root.getTimeUntilActive(interval);
+			if (untilActive == null)
+				break;
+			if (untilActive.signum() > 0) {
+				tick += Math.max(1, untilActive.multiply(period).ceil()
+						.longValue());
+				continue;
+			}
+
+			collect(root, interval, tick, fired, events);
+			tick++;
+		}
+
+		return events;
+	}
+
+	/**
+	 * Gathers the messages a pattern would send during one tick, following
+	 * {@link Pattern#addActiveMappingsFor(Interval, java.util.Collection)}.
+	 */
+	private static void collect(Pattern pattern, Interval interval, long tick,
+			Map<MidiMessageMapping, FiredOnsets> fired, List<MidiEvent> events) {
+		if (!pattern.isConcretePattern()) {
+			if (pattern.children != null)
+				for (Pattern child : pattern.children)
+					collect(child,
+							pattern.transform(interval, child.useParentOffset),
+							tick, fired, events);
+			return;
+		}
+
+		ConcretePattern concrete = (ConcretePattern) pattern;
+		Mapping<?> mapping = concrete.getOutputMappings().get(
+				MappingType.CALLABLE_WITH_ARG);
+		if (!(mapping instanceof MidiMessageMapping)
+				|| concrete.events == null)
+			return;
+
+		MidiMessageMapping midi = (MidiMessageMapping) mapping;
+		FiredOnsets onsets = fired.get(midi);
+		if (onsets == null) {
+			onsets = new FiredOnsets();
+			fired.put(midi, onsets);
+		}
+
+		for (LEvent e : concrete.events.getForInterval(interval)) {
+			ShortMessage message = midi.getMessage(e);
+			// as in MidiMessageMapping, an onset spanning two ticks is sent once
+			if (message != null && onsets.fire(message, e.getInterval(), tick))
+				events.add(new MidiEvent(message, tick));
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.corajr.loom;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
+
+/**
+ * Base class for immutable events stored as numbers rather than objects: the
+ * start and end of each event as numerators over one common denominator, and
+ * its value. The events may not overlap, so their ends are sorted as well as
+ * their starts and every query is answered by binary search. The
+ * {@link LEvent}s returned by queries are created as needed and have no parent
+ * event.
+ * 
+ * @author corajr
+ * @see FrozenEvents
+ * @see MappedEvents
+ */
+public abstract class PackedEvents implements BoundedEventQueryable {
+	private static final Rational MAX = Rational.valueOf(Long.MAX_VALUE);
+	private static final Rational MIN = Rational.valueOf(Long.MIN_VALUE + 1);
+
+	/**
+	 * The size of the header written before the arrays by
+	 * {@link #writeTo(DataOutputStream)}.
+	 */
+	static final int HEADER_SIZE = 16;
+
+	/**
+	 * @return the denominator shared by every start and end
+	 */
+	public abstract long getDenominator();
+
+	/**
+	 * @return the number of events
+	 */
+	public abstract int size();
+
+	abstract long getStart(int i);
+
+	abstract long getEnd(int i);
+
+	abstract double getValue(int i);
+
+	/**
+	 * Finds the largest numerator, over the common denominator, that is not
+	 * after the given time.
+	 */
+	private long floorOf(Rational time) {
+		Rational scaled = time.multiply(getDenominator()).floor();
+		if (scaled.compareTo(MAX) >= 0)
+			return Long.MAX_VALUE;
+		if (scaled.compareTo(MIN) <= 0)
+			return Long.MIN_VALUE + 1;
+		return scaled.longValue();
+	}
+
+	/**
+	 * Finds the first event whose start (or end) is greater than the key.
+	 */
+	private int firstAbove(boolean ends, long key) {
+		int lo = 0, hi = size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if ((ends ? getEnd(mid) : getStart(mid)) > key)
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		return lo;
+	}
+
+	private Rational toRational(long numerator) {
+		return Rational.valueOf(numerator, getDenominator());
+	}
+
+	/**
+	 * @return the event at an index, created anew
+	 */
+	public LEvent get(int i) {
+		return new LEvent(new Interval(toRational(getStart(i)),
+				toRational(getEnd(i))), getValue(i));
+	}
+
+	/**
+	 * Finds the events for which {@link LEvent#containedBy(Interval)} is true:
+	 * those that end after the query starts and start no later than it ends.
+	 */
+	@Override
+	public Collection<LEvent> getForInterval(Interval interval) {
+		int from = firstAbove(true, floorOf(interval.getRationalStart()));
+		int to = firstAbove(false, floorOf(interval.getRationalEnd()));
+
+		List<LEvent> events = new ArrayList<LEvent>(Math.max(0, to - from));
+		for (int i = from; i < to; i++)
+			events.add(get(i));
+		return events;
+	}
+
+	@Override
+	public Rational getNextStartAfter(Rational time) {
+		int next = firstAbove(false, floorOf(time));
+		return next < size() ? toRational(getStart(next)) : null;
+	}
+
+	@Override
+	public Interval getTotalInterval() {
+		if (size() == 0)
+			return null;
+		return new Interval(toRational(getStart(0)),
+				toRational(getEnd(size() - 1)));
+	}
+
+	/**
+	 * Copies the events back into a new, modifiable collection.
+	 * 
+	 * @return a new EventCollection
+	 */
+	public EventCollection thaw() {
+		EventCollection.Builder builder = new EventCollection.Builder();
+		for (int i = 0; i < size(); i++)
+			builder.add(get(i));
+		return builder.build();
+	}
+
+	/**
+	 * Writes the denominator and count, then the starts, ends and values in
+	 * turn, in the layout read by {@link MappedEvents}.
+	 */
+	void writeTo(DataOutputStream out) throws IOException {
+		int n = size();
+		out.writeLong(getDenominator());
+		out.writeInt(n);
+		out.writeInt(0);
+		for (int i = 0; i < n; i++)
+			out.writeLong(getStart(i));
+		for (int i = 0; i < n; i++)
+			out.writeLong(getEnd(i));
+		for (int i = 0; i < n; i++)
+			out.writeDouble(getValue(i));
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "(" + size() + " events)";
+	}
+}
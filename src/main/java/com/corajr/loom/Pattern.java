@@ -3,9 +3,14 @@ package com.corajr.loom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sound.midi.*;
 
@@ -20,6 +25,8 @@ import com.corajr.loom.transforms.*;
 import com.corajr.loom.util.*;
 import com.corajr.loom.util.MidiTools.Instrument;
 import com.corajr.loom.util.MidiTools.Percussion;
+import com.corajr.loom.wrappers.IEncodedOscP5;
+import com.corajr.loom.wrappers.IOscP5;
 import com.corajr.loom.wrappers.OscP5Impl;
 
 import oscP5.*;
@@ -55,8 +62,8 @@ public class Pattern implements Cloneable {
 	protected double defaultValue;
 
 	boolean isLooping = false;
-	BigFraction timeOffset = BigFraction.ZERO;
-	BigFraction timeScale = BigFraction.ONE;
+	Rational timeOffset = Rational.ZERO;
+	Rational timeScale = Rational.ONE;
 	Interval loopInterval = new Interval(0, 1);
 
 	protected double valueOffset = 0.0;
@@ -69,6 +76,54 @@ public class Pattern implements Cloneable {
 
 	protected boolean isConcrete;
 
+	/**
+	 * Incremented whenever this pattern or one of its descendants gains or
+	 * loses a child or mapping.
+	 */
+	private final AtomicLong mappingVersion = new AtomicLong();
+
+	/**
+	 * Incremented whenever the timing of this pattern, one of its ancestors
+	 * or a pattern it matches changes, or when it gains a new parent.
+	 */
+	private final AtomicLong timingVersion = new AtomicLong();
+
+	/**
+	 * The patterns whose timing is matched to this one.
+	 * 
+	 * @see #setTimeMatch(Pattern)
+	 */
+	private final Collection<Pattern> timeMatchers = new CopyOnWriteArrayList<Pattern>();
+
+	private static final class CachedTransform {
+		final long version;
+
+		/**
+		 * The loom of the root pattern, which supplies the time.
+		 */
+		final Loom loom;
+		final TimeTransform transform;
+
+		CachedTransform(long version, Loom loom, TimeTransform transform) {
+			this.version = version;
+			this.loom = loom;
+			this.transform = transform;
+		}
+	}
+
+	/**
+	 * Compiled time transforms without and with this pattern's offset.
+	 */
+	private final CachedTransform[] timeTransforms = new CachedTransform[2];
+
+	/**
+	 * The costs recorded for this pattern, or null if profiling is off.
+	 * 
+	 * @see PatternProfile
+	 */
+	final PatternProfile profile = PatternProfile.ENABLED ? new PatternProfile()
+			: null;
+
 	/**
 	 * Constants for each possible mapping from floating-point values to output.
 	 * Only one mapping of each type is allowed per pattern.
@@ -175,6 +230,21 @@ public class Pattern implements Cloneable {
 		this(loom, events, null, false);
 	}
 
+	/**
+	 * A pattern whose events are computed when queried, such as an
+	 * {@link EventRepeater}.
+	 * 
+	 * @param loom
+	 *            the {@link Loom} that holds this pattern (can be null)
+	 * @param events
+	 *            the source of events
+	 */
+	public Pattern(Loom loom, EventQueryable events) {
+		this(loom, null, null, false);
+		this.children = new PatternCollection();
+		addChild(new ConcretePattern(loom, events));
+	}
+
 	/**
 	 * Creates a Pattern and adds itself to the {@link Loom}.
 	 * 
@@ -318,6 +388,8 @@ public class Pattern implements Cloneable {
 			children = new PatternCollection();
 		child.parent = this;
 		children.add(child);
+		child.timingChanged();
+		mappingsChanged();
 		return children.size() - 1;
 	}
 
@@ -328,9 +400,61 @@ public class Pattern implements Cloneable {
 			sibling.addSelfTo(loom);
 	}
 
+	/**
+	 * @return the pattern this one is a child of, or null if it has none
+	 */
+	public Pattern getParent() {
+		return parent;
+	}
+
 	protected void removeChild(Pattern child) {
-		if (children != null)
-			children.remove(child);
+		if (children != null && children.remove(child)) {
+			child.timingChanged();
+			mappingsChanged();
+		}
+	}
+
+	/**
+	 * @return a number that changes whenever this pattern or one of its
+	 *         descendants gains or loses a child or mapping
+	 * @see PatternCollection#getPatternsWithActiveMappings()
+	 */
+	long getMappingVersion() {
+		return mappingVersion.get();
+	}
+
+	/**
+	 * Signals that this pattern's subtree has gained or lost a child or
+	 * mapping.
+	 */
+	void mappingsChanged() {
+		for (Pattern p = this; p != null; p = p.parent)
+			p.mappingVersion.incrementAndGet();
+		PatternCollection.structureChanged();
+	}
+
+	/**
+	 * Signals that this pattern's timing has changed, which invalidates the
+	 * compiled time transforms of its descendants and of the patterns
+	 * matching it.
+	 */
+	void timingChanged() {
+		timingChanged(Collections
+				.newSetFromMap(new IdentityHashMap<Pattern, Boolean>()));
+		PatternCollection.structureChanged();
+	}
+
+	private void timingChanged(Set<Pattern> visited) {
+		if (!visited.add(this))
+			return;
+
+		timingVersion.incrementAndGet();
+		if (children != null) {
+			for (Pattern child : children)
+				child.timingChanged(visited);
+		}
+		for (Pattern matcher : timeMatchers)
+			matcher.timingChanged(visited);
 	}
 
 	/**
@@ -385,6 +509,9 @@ public class Pattern implements Cloneable {
 	 */
 	public Pattern putMapping(MappingType mappingType, Mapping<?> mapping) {
 		getOutputMappings().put(mappingType, mapping);
+		// the mapping is held by the concrete pattern, whose ancestors
+		// include this one
+		getConcretePattern().mappingsChanged();
 		return this;
 	}
 
@@ -584,14 +711,66 @@ public class Pattern implements Cloneable {
 	 * @see #transform(Interval, boolean)
 	 */
 	public Interval getCurrentInterval(boolean useOffset) {
-		Interval interval;
-		if (this.parent != null) {
-			interval = parent.getCurrentInterval(useParentOffset);
-		} else {
-			interval = loom.getCurrentInterval();
+		CachedTransform cached = getCachedTransform(useOffset);
+		return cached.transform.apply(cached.loom.getCurrentInterval());
+	}
+
+	/**
+	 * Returns the chain of time transformations from the Loom's time to this
+	 * pattern's, as used by {@link #getCurrentInterval(boolean)}. The chain is
+	 * compiled once and cached until the timing of this pattern, one of its
+	 * ancestors or a pattern it matches changes.
+	 * 
+	 * @param useOffset
+	 *            use this pattern's time offset
+	 * @return the compiled transform
+	 */
+	public TimeTransform getTimeTransform(boolean useOffset) {
+		return getCachedTransform(useOffset).transform;
+	}
+
+	private CachedTransform getCachedTransform(boolean useOffset) {
+		// read before the timing it covers, so a concurrent change is seen
+		// on the next call
+		long version = timingVersion.get();
+		int i = useOffset ? 1 : 0;
+
+		CachedTransform cached = timeTransforms[i];
+		if (cached == null || cached.version != version) {
+			if (parent != null) {
+				CachedTransform above = parent
+						.getCachedTransform(useParentOffset);
+				cached = new CachedTransform(version, above.loom,
+						appendTransform(above.transform, useOffset));
+			} else {
+				cached = new CachedTransform(version, loom, appendTransform(
+						TimeTransform.IDENTITY, useOffset));
+			}
+			timeTransforms[i] = cached;
 		}
+		return cached;
+	}
+
+	/**
+	 * Adds this pattern's own transformation to a chain, in the same way as
+	 * {@link #transform(Interval, boolean)}.
+	 */
+	private TimeTransform appendTransform(TimeTransform t, boolean useOffset) {
+		Rational scale = getRationalTimeScale();
+
+		boolean positiveScale = scale.signum() > 0;
+
+		t = t.scale(scale);
+		if (!positiveScale)
+			t = t.fit(loopInterval);
 
-		return transform(interval, useOffset);
+		if (useOffset)
+			t = t.offset(getRationalTimeOffset());
+
+		if (getRepeats() > 0 || (isLooping && positiveScale))
+			t = t.modulo(loopInterval);
+
+		return t;
 	}
 
 	/**
@@ -619,9 +798,9 @@ public class Pattern implements Cloneable {
 	 * @return the transformed interval
 	 */
 	public Interval transform(Interval interval, boolean useOffset) {
-		BigFraction scale = getTimeScale();
+		Rational scale = getRationalTimeScale();
 
-		boolean positiveScale = scale.compareTo(BigFraction.ZERO) > 0;
+		boolean positiveScale = scale.signum() > 0;
 
 		if (positiveScale) {
 			interval = interval.multiply(scale);
@@ -630,7 +809,7 @@ public class Pattern implements Cloneable {
 		}
 
 		if (useOffset)
-			interval = interval.add(getTimeOffset());
+			interval = interval.add(getRationalTimeOffset());
 
 		if (getRepeats() > 0 || (isLooping && positiveScale)) {
 			interval = interval.modulo(loopInterval);
@@ -646,6 +825,7 @@ public class Pattern implements Cloneable {
 	 */
 	public Pattern once() {
 		isLooping = false;
+		timingChanged();
 		return this;
 	}
 
@@ -656,8 +836,10 @@ public class Pattern implements Cloneable {
 	 */
 	public Pattern loop() {
 		isLooping = true;
-		if (getEvents() != null) {
-			setLoopInterval(getEvents().getTotalInterval());
+		timingChanged();
+		Interval span = getEventSpan();
+		if (span != null) {
+			setLoopInterval(span);
 		}
 		return this;
 	}
@@ -683,12 +865,16 @@ public class Pattern implements Cloneable {
 			events.addAfterwards(newEvents.values());
 		} else {
 			repeats.set(n);
+			timingChanged();
 			if (!repeaterSet) {
 				every(loopInterval.getSize(), new Callable<Void>() {
 					@Override
 					public Void call() {
-						if (repeats.get() > 0)
-							repeats.decrementAndGet();
+						// the loop interval stops applying once the last
+						// repeat is done
+						if (repeats.get() > 0
+								&& repeats.decrementAndGet() == 0)
+							timingChanged();
 						return null;
 					}
 				});
@@ -1066,8 +1252,8 @@ public class Pattern implements Cloneable {
 				EventBoundaryProxy.ONSET));
 		commands.addChild(onsets);
 		onsets.putMapping(MappingType.CALLABLE_WITH_ARG,
-				new MidiMessageMapping(loom.midiBusWrapper, commands, channels,
-						notes, velocities));
+				new MidiMessageMapping(loom.midiBusWrapper, loom, commands,
+						channels, notes, velocities));
 
 		return this;
 	}
@@ -1195,8 +1381,6 @@ public class Pattern implements Cloneable {
 	public Pattern asOscBundle(final NetAddress remoteAddress,
 			final Pattern... patterns) {
 
-		final Pattern original = this;
-
 		Pattern hits = new Pattern(loom,
 				new MatchRewriter(1.0).apply(getEvents()));
 		addChild(hits);
@@ -1215,16 +1399,35 @@ public class Pattern implements Cloneable {
 			throw new IllegalArgumentException(
 					"None of the patterns have an OSC mapping!");
 
-		putMapping(MappingType.OSC_BUNDLE, new OscBundleMapping(oscPatterns));
+		final OscBundleMapping bundleMapping = new OscBundleMapping(oscPatterns);
+		putMapping(MappingType.OSC_BUNDLE, bundleMapping);
 
-		hits.onOnset(new Callable<Void>() {
-			@Override
-			public Void call() {
-				loom.oscP5Wrapper.get().send(original.asOscBundle(),
-						remoteAddress);
-				return null;
-			}
-		});
+		// bundles carry their own timetag, so they can go out as soon as they
+		// are rendered when the scheduler is looking ahead; outputs that take
+		// encoded packets get them straight from a reused buffer, while oscP5
+		// itself is given an OscBundle as before
+		hits.boundaryPattern(EventBoundaryProxy.ONSET, CallableOnChange
+				.fromTimetaggedCallables(new OutputCallable() {
+					@Override
+					public Void call() {
+						IOscP5 oscP5 = loom.oscP5Wrapper.get();
+						boolean ahead = loom.getLookahead() > 0;
+						if (oscP5 instanceof IEncodedOscP5) {
+							long timetag = ahead ? OscEncoder.timetagFor(loom
+									.getWallClockMillis())
+									: OscEncoder.IMMEDIATELY;
+							((IEncodedOscP5) oscP5).send(
+									bundleMapping.encode(timetag),
+									remoteAddress);
+						} else {
+							OscBundle bundle = bundleMapping.call(0.0);
+							if (ahead)
+								bundle.setTimetag(loom.getWallClockMillis());
+							oscP5.send(bundle, remoteAddress);
+						}
+						return null;
+					}
+				}));
 
 		return this;
 	}
@@ -1470,19 +1673,107 @@ public class Pattern implements Cloneable {
 	}
 
 	public Collection<Callable<?>> getActiveMappingsFor(Interval interval) {
-		if (isConcretePattern())
-			return getConcretePattern().getActiveMappingsFor(interval);
-
 		Collection<Callable<?>> callables = new ArrayList<Callable<?>>();
+		addActiveMappingsFor(interval, callables);
+		return callables;
+	}
+
+	/**
+	 * Adds the callbacks of this pattern and its children for the given
+	 * interval to <code>callbacks</code>. Unlike
+	 * {@link #getActiveMappingsFor(Interval)}, no intermediate collections are
+	 * created, so the scheduler can reuse a single buffer on every tick.
+	 * 
+	 * @param interval
+	 *            the interval to query
+	 * @param callbacks
+	 *            the collection to which callbacks are added
+	 */
+	public void addActiveMappingsFor(Interval interval,
+			Collection<Callable<?>> callbacks) {
+		if (isConcretePattern()) {
+			getConcretePattern().addActiveMappingsFor(interval, callbacks);
+			return;
+		}
+
+		if (PatternProfile.ENABLED) {
+			long start = System.nanoTime();
+			int before = callbacks.size();
+			addChildMappingsFor(interval, callbacks);
+			profile.mappingsCollected(System.nanoTime() - start,
+					callbacks.size() - before);
+		} else {
+			addChildMappingsFor(interval, callbacks);
+		}
+	}
+
+	private void addChildMappingsFor(Interval interval,
+			Collection<Callable<?>> callbacks) {
 		if (children != null) {
 			for (Pattern child : children) {
 				Interval transformed = transform(interval,
 						child.useParentOffset);
-				callables.addAll(child.getActiveMappingsFor(transformed));
+				child.addActiveMappingsFor(transformed, callbacks);
 			}
 		}
+	}
 
-		return callables;
+	/**
+	 * Finds how far the given interval can be moved forward before this pattern
+	 * or its children could produce any callbacks in
+	 * {@link #addActiveMappingsFor(Interval, Collection)}. The result is a
+	 * lower bound, in the same units as the interval: zero means callbacks may
+	 * be produced right away, and null means they never will be (unless the
+	 * pattern is changed). The interval just before the given one is assumed
+	 * to have been queried already.
+	 * 
+	 * @param interval
+	 *            the interval that would be queried
+	 * @return the amount of time until this pattern may become active
+	 */
+	public Rational getTimeUntilActive(Interval interval) {
+		if (isConcretePattern())
+			return getConcretePattern().getTimeUntilActive(interval);
+
+		Rational result = null;
+		if (children != null) {
+			for (Pattern child : children) {
+				if (!child.hasActiveMappings())
+					continue;
+
+				Rational untilActive = getTimeUntilActive(child, interval);
+				if (untilActive == null)
+					continue;
+				if (untilActive.signum() <= 0)
+					return Rational.ZERO;
+				if (result == null || untilActive.compareTo(result) < 0)
+					result = untilActive;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Translates a child's time until active into this pattern's parent time,
+	 * stopping short wherever the loop interval would wrap around.
+	 */
+	private Rational getTimeUntilActive(Pattern child, Interval interval) {
+		Rational scale = getRationalTimeScale();
+		if (scale.signum() <= 0)
+			return Rational.ZERO;
+
+		Interval transformed = transform(interval, child.useParentOffset);
+		Rational untilActive = child.getTimeUntilActive(transformed);
+
+		if (getRepeats() > 0 || isLooping) {
+			Rational untilWrap = loopInterval.getRationalEnd().subtract(
+					transformed.getRationalEnd());
+			if (untilActive == null || untilWrap.compareTo(untilActive) < 0)
+				untilActive = untilWrap;
+		}
+
+		return untilActive != null ? untilActive.divide(scale) : null;
 	}
 
 	public boolean hasMapping(MappingType mapping) {
@@ -1561,7 +1852,7 @@ public class Pattern implements Cloneable {
 
 	public Pattern select(int i) {
 		selectedChild = i;
-		timeMatch = getChild(i);
+		setTimeMatch(getChild(i));
 		return this;
 	}
 
@@ -1754,11 +2045,21 @@ public class Pattern implements Cloneable {
 		return thenPat;
 	}
 
+	/**
+	 * Replaces this pattern's events with rewritten ones. Any MIDI notes the
+	 * old events left sounding are released.
+	 * 
+	 * @param eventRewriter
+	 *            the rewriter
+	 * @return this pattern
+	 */
 	public Pattern rewrite(EventRewriter eventRewriter) {
 		EventCollection events = getEvents();
 		if (events != null) {
 			EventCollection newEvents = eventRewriter.apply(events);
 			getConcretePattern().events = newEvents;
+			Loom.releaseMidiNotes(this);
+			PatternCollection.structureChanged();
 		} else {
 			throw new IllegalStateException(
 					"This pattern does not contain events.");
@@ -1766,6 +2067,49 @@ public class Pattern implements Cloneable {
 		return this;
 	}
 
+	/**
+	 * Creates a new pattern that plays this pattern's events a number of times
+	 * (or forever), computing them as they are needed instead of copying them
+	 * as {@link #repeat(int)} does.
+	 * 
+	 * @param times
+	 *            the number of times to play the events, or
+	 *            {@link EventRepeater#FOREVER}
+	 * @return a new pattern
+	 */
+	public Pattern repeated(int times) {
+		return new Pattern(loom, new EventRepeater(getEventQueryable(), times));
+	}
+
+	/**
+	 * Creates a new pattern that plays this pattern's events and then
+	 * another's, without copying either.
+	 * 
+	 * @param other
+	 *            the pattern to play afterwards
+	 * @return a new pattern
+	 * @see #then(Pattern)
+	 */
+	public Pattern followedBy(Pattern other) {
+		return new Pattern(loom, new EventSequence(getEventQueryable(),
+				other.getEventQueryable()));
+	}
+
+	/**
+	 * Creates a new pattern that rewrites this pattern's events as they are
+	 * queried, instead of all at once as {@link #rewrite(EventRewriter)} does.
+	 * 
+	 * @param eventRewriter
+	 *            the rewriter, whose rules must keep their output within each
+	 *            original event
+	 * @return a new pattern
+	 * @see EventRewriteProxy
+	 */
+	public Pattern rewritten(EventRewriter eventRewriter) {
+		return new Pattern(loom, new EventRewriteProxy(getEventQueryable(),
+				eventRewriter));
+	}
+
 	public Pattern onOnset(Callable<Void> callable) {
 		return onBoundary(EventBoundaryProxy.ONSET, callable);
 	}
@@ -1775,14 +2119,27 @@ public class Pattern implements Cloneable {
 	}
 
 	private Pattern onBoundary(double boundaryType, Callable<Void> callable) {
+		boundaryPattern(boundaryType, callable);
+
+		return this;
+	}
+
+	private ConcretePattern boundaryPattern(double boundaryType,
+			Callable<Void> callable) {
+		return boundaryPattern(boundaryType,
+				CallableOnChange.fromCallables(callable));
+	}
+
+	private ConcretePattern boundaryPattern(double boundaryType,
+			StatefulCallable[] callables) {
 		ConcretePattern concrete = ConcretePattern.forEach(this, boundaryType);
-		concrete.asStatefulCallable(CallableOnChange.fromCallables(callable));
+		concrete.asStatefulCallable(callables);
 
 		concrete.useParentOffset = false;
 
 		addChild(concrete);
 
-		return this;
+		return concrete;
 	}
 
 	public Pattern onOnset(Callable<Void>... callables) {
@@ -1807,8 +2164,16 @@ public class Pattern implements Cloneable {
 		return this;
 	}
 
+	/**
+	 * Removes this pattern's children, releasing any MIDI notes they left
+	 * sounding.
+	 * 
+	 * @return this pattern
+	 */
 	public Pattern clear() {
+		Loom.releaseMidiNotes(this);
 		children.clear();
+		mappingsChanged();
 		return this;
 	}
 
@@ -1820,8 +2185,12 @@ public class Pattern implements Cloneable {
 	}
 
 	public BigFraction getTimeOffset() {
+		return getRationalTimeOffset().toBigFraction();
+	}
+
+	protected Rational getRationalTimeOffset() {
 		if (timeMatch != null)
-			return timeMatch.getTimeOffset();
+			return timeMatch.getRationalTimeOffset();
 		else
 			return timeOffset;
 	}
@@ -1831,12 +2200,17 @@ public class Pattern implements Cloneable {
 	}
 
 	public void setTimeOffset(BigFraction timeOffset) {
-		this.timeOffset = timeOffset;
+		this.timeOffset = Rational.valueOf(timeOffset);
+		timingChanged();
 	}
 
 	public BigFraction getTimeScale() {
+		return getRationalTimeScale().toBigFraction();
+	}
+
+	protected Rational getRationalTimeScale() {
 		if (timeMatch != null)
-			return timeMatch.getTimeScale().abs();
+			return timeMatch.getRationalTimeScale().abs();
 		else
 			return timeScale;
 	}
@@ -1846,11 +2220,17 @@ public class Pattern implements Cloneable {
 	}
 
 	public void setTimeScale(BigFraction timeScale) {
-		this.timeScale = timeScale;
+		this.timeScale = Rational.valueOf(timeScale);
+		timingChanged();
 	}
 
 	public void setTimeMatch(Pattern pattern) {
+		if (timeMatch != null)
+			timeMatch.timeMatchers.remove(this);
 		this.timeMatch = pattern;
+		if (pattern != null)
+			pattern.timeMatchers.add(this);
+		timingChanged();
 	}
 
 	public Interval getLoopInterval() {
@@ -1859,6 +2239,7 @@ public class Pattern implements Cloneable {
 
 	public void setLoopInterval(Interval loopInterval) {
 		this.loopInterval = loopInterval;
+		timingChanged();
 	}
 
 	/**
@@ -1870,10 +2251,8 @@ public class Pattern implements Cloneable {
 	public Interval getTotalInterval() {
 		Interval result;
 
-		EventCollection events = getEvents();
-		if (events != null)
-			result = events.getTotalInterval();
-		else
+		result = getEventSpan();
+		if (result == null)
 			result = loopInterval;
 
 		int repeatN = repeats.get();
@@ -1891,6 +2270,7 @@ public class Pattern implements Cloneable {
 
 	public void setValueOffset(double valueOffset) {
 		this.valueOffset = valueOffset;
+		PatternCollection.structureChanged();
 		if (!isConcretePattern())
 			getConcretePattern().setValueOffset(valueOffset);
 	}
@@ -1901,10 +2281,37 @@ public class Pattern implements Cloneable {
 
 	public void setValueScale(double valueScale) {
 		this.valueScale = valueScale;
+		PatternCollection.structureChanged();
 		if (!isConcretePattern())
 			getConcretePattern().setValueScale(valueScale);
 	}
 
+	/**
+	 * Finds the span of this pattern's events, whether stored or computed.
+	 * 
+	 * @return the span, or null if there are no events or they never end
+	 */
+	private Interval getEventSpan() {
+		ConcretePattern pat = getConcretePattern();
+		if (pat == null || pat.events == null)
+			return null;
+		return LazyEventQueryable.getTotalInterval(pat.events);
+	}
+
+	/**
+	 * Returns this pattern's events, whether stored or computed.
+	 * 
+	 * @throws IllegalStateException
+	 *             if this pattern has no events
+	 */
+	private EventQueryable getEventQueryable() {
+		ConcretePattern pat = getConcretePattern();
+		if (pat == null || pat.events == null)
+			throw new IllegalStateException(
+					"This pattern does not contain events.");
+		return pat.events;
+	}
+
 	protected EventCollection getEvents() {
 		EventCollection events = null;
 		ConcretePattern pat = getConcretePattern();
@@ -1952,6 +2359,70 @@ public class Pattern implements Cloneable {
 		}
 	}
 
+	/**
+	 * Returns the costs recorded for this pattern, which include those of its
+	 * children.
+	 * 
+	 * @return the profile, or null if profiling is off
+	 * @see PatternProfile
+	 */
+	public PatternProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Describes this pattern and its children in the same shape as
+	 * {@link #toString()}, with each pattern followed by its recorded costs.
+	 * 
+	 * @return the annotated tree
+	 * @throws IllegalStateException
+	 *             if profiling is off
+	 * @see PatternProfile
+	 */
+	public String getProfileReport() {
+		if (!PatternProfile.ENABLED)
+			throw new IllegalStateException(
+					"Profiling is off! Run with -Dloom.profile=true to enable it.");
+
+		if (isConcretePattern())
+			return getConcretePattern().toString() + " "
+					+ getConcretePattern().profile;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("Pattern@" + Integer.toHexString(hashCode()));
+		sb.append(" " + profile);
+		if (children != null) {
+			sb.append("(\n");
+			boolean first = true;
+			for (Pattern child : children) {
+				if (!first) {
+					sb.append(",\n");
+				} else {
+					first = false;
+				}
+
+				sb.append("\t");
+				sb.append(child.getProfileReport().replaceAll("\n", "\n\t"));
+			}
+			sb.append("\n)");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Clears the costs recorded for this pattern and its children. Does
+	 * nothing if profiling is off.
+	 */
+	public void resetProfile() {
+		if (!PatternProfile.ENABLED)
+			return;
+
+		profile.reset();
+		if (children != null)
+			for (Pattern child : children)
+				child.resetProfile();
+	}
+
 	@Override
 	public String toString() {
 		if (isConcretePattern())
@@ -1988,7 +2459,7 @@ public class Pattern implements Cloneable {
 		copy.loopInterval = loopInterval;
 		copy.parent = parent;
 		copy.repeats.set(repeats.get());
-		copy.timeMatch = timeMatch;
+		copy.setTimeMatch(timeMatch);
 		copy.timeOffset = timeOffset;
 		copy.timeScale = timeScale;
 		copy.transposition = transposition;
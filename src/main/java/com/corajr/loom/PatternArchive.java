@@ -0,0 +1,468 @@
+package com.corajr.loom;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
+
+/**
+ * A file of named event collections and pattern trees, stored in binary so
+ * that it can be opened without parsing. Times are kept as integer ticks over
+ * a common denominator, as in {@link FrozenEvents}, and the file is mapped
+ * into memory when opened, so events are only read from disk when a query
+ * reaches them. This lets a large library of scores (parsed once from MIDI or
+ * ABC) be opened at once. Example:
+ *
+ * <pre>
+ * PatternArchive.Writer writer = new PatternArchive.Writer();
+ * writer.add(&quot;melody&quot;, pattern);
+ * writer.write(new File(&quot;scores.loom&quot;));
+ * // later...
+ * PatternArchive archive = PatternArchive.open(new File(&quot;scores.loom&quot;));
+ * Pattern melody = archive.getPattern(loom, &quot;melody&quot;);
+ * </pre>
+ *
+ * Only the timing and value transformations of each pattern are kept, not its
+ * mappings, and only patterns whose events end can be written.
+ *
+ * @author corajr
+ */
+public class PatternArchive {
+	private static final int MAGIC = 0x4c4f4f4d; // "LOOM"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int TRAILER_SIZE = 8;
+	private static final int MAX_NAME_BYTES = 0xffff;
+
+	/**
+	 * The largest file that can be mapped into a single buffer.
+	 */
+	static final long MAX_SIZE = Integer.MAX_VALUE;
+
+	private static final byte EVENTS = 0;
+	private static final byte TREE = 1;
+
+	private static final byte LEAF = 0;
+	private static final byte BRANCH = 1;
+
+	private final ByteBuffer buffer;
+	private final Map<String, Integer> offsets;
+	private final Map<String, Byte> kinds;
+
+	private PatternArchive(ByteBuffer buffer, Map<String, Integer> offsets,
+			Map<String, Byte> kinds) {
+		this.buffer = buffer;
+		this.offsets = offsets;
+		this.kinds = kinds;
+	}
+
+	/**
+	 * Maps an archive file into memory and reads its directory. The events
+	 * themselves are not read until they are queried.
+	 *
+	 * @param file
+	 *            the file, as written by {@link Writer#write(File)}
+	 * @return the archive
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws IllegalArgumentException
+	 *             if the file is not an archive
+	 */
+	public static PatternArchive open(File file) throws IOException {
+		MappedByteBuffer buffer;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > MAX_SIZE)
+				throw new IllegalArgumentException("Archive is too large!");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			raf.close();
+		}
+
+		if (buffer.capacity() < HEADER_SIZE + TRAILER_SIZE
+				|| buffer.getInt(0) != MAGIC)
+			throw new IllegalArgumentException(file + " is not an archive!");
+		if (buffer.getInt(4) != VERSION)
+			throw new IllegalArgumentException("Unsupported archive version "
+					+ buffer.getInt(4) + "!");
+
+		long directory = buffer.getLong(buffer.capacity() - TRAILER_SIZE);
+		if (directory < HEADER_SIZE
+				|| directory > buffer.capacity() - TRAILER_SIZE)
+			throw new IllegalArgumentException("Corrupt archive directory!");
+
+		ByteBuffer dir = buffer.duplicate();
+		dir.position((int) directory);
+		int count = dir.getInt();
+
+		Map<String, Integer> offsets = new LinkedHashMap<String, Integer>();
+		Map<String, Byte> kinds = new LinkedHashMap<String, Byte>();
+		for (int i = 0; i < count; i++) {
+			String name = readName(dir);
+			kinds.put(name, dir.get());
+			offsets.put(name, (int) dir.getLong());
+		}
+
+		return new PatternArchive(buffer, offsets, kinds);
+	}
+
+	/**
+	 * Names are stored as a 2-byte length followed by that many bytes of
+	 * standard UTF-8 (not the modified UTF-8 of
+	 * {@link DataOutputStream#writeUTF(String)}).
+	 */
+	private static String readName(ByteBuffer dir) {
+		byte[] bytes = new byte[dir.getShort() & 0xffff];
+		dir.get(bytes);
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] nameBytes(String name) {
+		try {
+			return name.getBytes("UTF-8");
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the names of the entries, in the order they were added
+	 */
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet(offsets.keySet());
+	}
+
+	private ByteBuffer at(String name) {
+		Integer offset = offsets.get(name);
+		if (offset == null)
+			throw new IllegalArgumentException("No entry named " + name
+					+ " in archive!");
+
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		return view;
+	}
+
+	/**
+	 * Opens an event collection stored with
+	 * {@link Writer#add(String, EventCollection)}.
+	 *
+	 * @param name
+	 *            the name of the entry
+	 * @return the events, read from the file as they are queried
+	 */
+	public MappedEvents getEvents(String name) {
+		ByteBuffer view = at(name);
+		if (kinds.get(name) != EVENTS)
+			throw new IllegalArgumentException(name
+					+ " is a pattern, not an event collection!");
+		return new MappedEvents(view);
+	}
+
+	/**
+	 * Rebuilds a pattern from an entry. An event collection becomes a pattern
+	 * of those events; a pattern tree is rebuilt with its original children
+	 * and timing, with each leaf's events read from the file as they are
+	 * queried.
+	 *
+	 * @param loom
+	 *            the {@link Loom} to hold the pattern (can be null)
+	 * @param name
+	 *            the name of the entry
+	 * @return the pattern
+	 */
+	public Pattern getPattern(Loom loom, String name) {
+		ByteBuffer view = at(name);
+		if (kinds.get(name) == EVENTS)
+			return new Pattern(loom, new MappedEvents(view));
+		return readNode(loom, view, true);
+	}
+
+	private static Pattern readNode(Loom loom, ByteBuffer in, boolean root) {
+		byte type = in.get();
+		boolean looping = in.get() != 0;
+		boolean useParentOffset = in.get() != 0;
+		in.get();
+		int childCount = in.getInt();
+
+		Rational timeScale = readRational(in);
+		Rational timeOffset = readRational(in);
+		Interval loopInterval = new Interval(readRational(in),
+				readRational(in));
+		double valueScale = in.getDouble();
+		double valueOffset = in.getDouble();
+
+		Pattern pattern;
+		if (type == LEAF) {
+			MappedEvents events = new MappedEvents(in);
+			in.position(in.position() + events.getByteSize());
+			pattern = new ConcretePattern(loom, events);
+		} else {
+			// only the root is added to the loom; children play through it
+			pattern = new Pattern(root ? loom : null, null, null, false);
+			pattern.loom = loom;
+			for (int i = 0; i < childCount; i++)
+				pattern.addChild(readNode(loom, in, false));
+		}
+
+		pattern.isLooping = looping;
+		pattern.useParentOffset = useParentOffset;
+		pattern.timeScale = timeScale;
+		pattern.timeOffset = timeOffset;
+		pattern.loopInterval = loopInterval;
+		pattern.valueScale = valueScale;
+		pattern.valueOffset = valueOffset;
+		pattern.timingChanged();
+		return pattern;
+	}
+
+	private static Rational readRational(ByteBuffer in) {
+		long numerator = in.getLong();
+		return Rational.valueOf(numerator, in.getLong());
+	}
+
+	@Override
+	public String toString() {
+		return "PatternArchive(" + offsets.keySet() + ")";
+	}
+
+	/**
+	 * Collects named event collections and patterns to be written to an
+	 * archive.
+	 */
+	public static class Writer {
+		private final Map<String, Object> entries = new LinkedHashMap<String, Object>();
+
+		/**
+		 * The largest archive this writer will produce.
+		 */
+		long maxSize = MAX_SIZE;
+
+		/**
+		 * Adds an event collection, to be opened with
+		 * {@link PatternArchive#getEvents(String)}.
+		 *
+		 * @param name
+		 *            a unique name for the entry
+		 * @param events
+		 *            the events
+		 * @return this writer
+		 */
+		public Writer add(String name, EventCollection events) {
+			put(name, new FrozenEvents(events.values()));
+			return this;
+		}
+
+		/**
+		 * Adds a pattern and its children, to be rebuilt with
+		 * {@link PatternArchive#getPattern(Loom, String)}. Mappings are not
+		 * saved.
+		 *
+		 * @param name
+		 *            a unique name for the entry
+		 * @param pattern
+		 *            the pattern
+		 * @return this writer
+		 * @throws IllegalArgumentException
+		 *             if any part of the pattern is a continuous function or
+		 *             has events that never end
+		 */
+		public Writer add(String name, Pattern pattern) {
+			checkWritable(pattern);
+			put(name, pattern);
+			return this;
+		}
+
+		private void put(String name, Object entry) {
+			if (entries.containsKey(name))
+				throw new IllegalArgumentException("Duplicate entry " + name
+						+ "!");
+			if (nameBytes(name).length > MAX_NAME_BYTES)
+				throw new IllegalArgumentException("Entry name is too long!");
+			entries.put(name, entry);
+		}
+
+		private static void checkWritable(Pattern pattern) {
+			if (pattern.isConcretePattern())
+				leafEvents((ConcretePattern) pattern);
+			else if (pattern.children != null)
+				for (Pattern child : pattern.children)
+					checkWritable(child);
+		}
+
+		/**
+		 * Writes the entries to a file, replacing it if it exists. If the
+		 * archive would be too large to open, nothing is left behind.
+		 *
+		 * @param file
+		 *            the file to write
+		 * @throws IOException
+		 *             if the file cannot be written
+		 * @throws IllegalStateException
+		 *             if the archive would be larger than can be mapped into
+		 *             memory
+		 */
+		public void write(File file) throws IOException {
+			// DataOutputStream.size() stops counting at Integer.MAX_VALUE,
+			// so the bytes written are counted here instead
+			CountingOutputStream counter = new CountingOutputStream(
+					new BufferedOutputStream(new FileOutputStream(file)));
+			DataOutputStream out = new DataOutputStream(counter);
+			boolean written = false;
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+
+				List<Long> offsets = new ArrayList<Long>(entries.size());
+				for (Object entry : entries.values()) {
+					align(out, counter);
+					offsets.add(checkSize(counter.count));
+					if (entry instanceof PackedEvents)
+						((PackedEvents) entry).writeTo(out);
+					else
+						writeNode(out, (Pattern) entry);
+				}
+
+				long directory = checkSize(counter.count);
+				out.writeInt(entries.size());
+				int i = 0;
+				for (Map.Entry<String, Object> entry : entries.entrySet()) {
+					byte[] name = nameBytes(entry.getKey());
+					out.writeShort(name.length);
+					out.write(name);
+					out.writeByte(entry.getValue() instanceof PackedEvents ? EVENTS
+							: TREE);
+					out.writeLong(offsets.get(i++));
+				}
+				out.writeLong(directory);
+				checkSize(counter.count);
+				written = true;
+			} finally {
+				out.close();
+				if (!written)
+					file.delete();
+			}
+		}
+
+		private long checkSize(long size) {
+			if (size > maxSize)
+				throw new IllegalStateException("Archive would be too large!");
+			return size;
+		}
+
+		private static void align(DataOutputStream out,
+				CountingOutputStream counter) throws IOException {
+			while (counter.count % 8 != 0)
+				out.writeByte(0);
+		}
+
+		private static void writeNode(DataOutputStream out, Pattern pattern)
+				throws IOException {
+			boolean leaf = pattern.isConcretePattern();
+			List<Pattern> children = leaf || pattern.children == null ? Collections
+					.<Pattern> emptyList() : pattern.children;
+
+			out.writeByte(leaf ? LEAF : BRANCH);
+			out.writeByte(pattern.isLooping ? 1 : 0);
+			out.writeByte(pattern.useParentOffset ? 1 : 0);
+			out.writeByte(0);
+			out.writeInt(children.size());
+
+			writeRational(out, pattern.timeScale);
+			writeRational(out, pattern.timeOffset);
+			writeRational(out, pattern.loopInterval.getRationalStart());
+			writeRational(out, pattern.loopInterval.getRationalEnd());
+			out.writeDouble(pattern.valueScale);
+			out.writeDouble(pattern.valueOffset);
+
+			if (leaf)
+				new FrozenEvents(leafEvents((ConcretePattern) pattern))
+						.writeTo(out);
+			else
+				for (Pattern child : children)
+					writeNode(out, child);
+		}
+
+		private static Collection<LEvent> leafEvents(ConcretePattern pattern) {
+			EventQueryable events = pattern.events;
+			if (events instanceof EventCollection)
+				return ((EventCollection) events).values();
+			if (events instanceof BoundedEventQueryable) {
+				Interval total = ((BoundedEventQueryable) events)
+						.getTotalInterval();
+				if (total != null)
+					return events.getForInterval(total);
+				if (events instanceof PackedEvents)
+					return Collections.emptyList();
+				throw new IllegalArgumentException(
+						"Cannot archive events that never end!");
+			}
+			throw new IllegalArgumentException(
+					"Only patterns of finite events can be archived!");
+		}
+
+		private static void writeRational(DataOutputStream out, Rational r)
+				throws IOException {
+			BigFraction f = r.toBigFraction();
+			if (!fitsInLong(f.getNumerator())
+					|| !fitsInLong(f.getDenominator()))
+				throw new IllegalArgumentException(r
+						+ " is too large to archive!");
+			out.writeLong(f.getNumerator().longValue());
+			out.writeLong(f.getDenominator().longValue());
+		}
+
+		private static boolean fitsInLong(BigInteger i) {
+			return i.bitLength() < Long.SIZE;
+		}
+	}
+
+	/**
+	 * Counts the bytes written through it in a long.
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream {
+		long count = 0;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
@@ -3,7 +3,12 @@
  */
 package com.corajr.loom;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Default holder for a set of Patterns. Follows the Collections API, with
@@ -15,19 +20,181 @@ import java.util.concurrent.*;
 public class PatternCollection extends CopyOnWriteArrayList<Pattern> {
 	private static final long serialVersionUID = -6951516407692217125L;
 
+	/**
+	 * Incremented whenever any pattern's children, mappings, events or timing
+	 * change. This is only a coarse hint for schedulers deciding whether time
+	 * they skipped is still known to be empty; cached query results use the
+	 * finer versions kept by each collection and pattern tree.
+	 */
+	private static final AtomicLong structureVersion = new AtomicLong();
+
+	/**
+	 * Incremented whenever this collection gains or loses a pattern.
+	 */
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * The patterns with active mappings, along with the versions they were
+	 * found at.
+	 * 
+	 * @author corajr
+	 */
+	private static final class ActivePatterns {
+		final long version;
+		final Pattern[] members;
+		final long memberVersions;
+		final List<Pattern> actives;
+
+		ActivePatterns(long version, Pattern[] members, long memberVersions,
+				List<Pattern> actives) {
+			this.version = version;
+			this.members = members;
+			this.memberVersions = memberVersions;
+			this.actives = actives;
+		}
+	}
+
+	private transient volatile ActivePatterns activesCache = null;
+
+	public PatternCollection() {
+		super();
+	}
+
+	public PatternCollection(Collection<? extends Pattern> patterns) {
+		super(patterns);
+	}
+
+	/**
+	 * Returns a number that changes whenever any pattern's children, mappings,
+	 * events or timing change.
+	 * 
+	 * @return the current structure version
+	 */
+	public static long getStructureVersion() {
+		return structureVersion.get();
+	}
+
+	/**
+	 * Signals that some pattern's children, mappings, events or timing have
+	 * changed.
+	 */
+	static void structureChanged() {
+		structureVersion.incrementAndGet();
+	}
+
 	/**
 	 * Finds all the patterns that have external mappings, i.e. those with
 	 * functions that must be triggered at each update rather than passively
 	 * queried.
 	 * 
-	 * @return the relevant subset of patterns
+	 * The result is cached until this collection changes or one of its
+	 * patterns' trees gains or loses a child or mapping (via
+	 * {@link Pattern#putMapping}, {@link Pattern#addChild},
+	 * {@link Pattern#removeChild} or {@link Pattern#clear}), so repeated calls
+	 * do not walk the pattern trees.
+	 * 
+	 * @return an unmodifiable list of the relevant subset of patterns
 	 */
-	public PatternCollection getPatternsWithActiveMappings() {
-		PatternCollection actives = new PatternCollection();
-		for (Pattern pattern : this) {
+	public List<Pattern> getPatternsWithActiveMappings() {
+		ActivePatterns cached = activesCache;
+		if (cached != null && cached.version == version.get()
+				&& cached.memberVersions == sumMappingVersions(cached.members))
+			return cached.actives;
+
+		// read the versions before the patterns, so a concurrent change is
+		// seen on the next call
+		long currentVersion = version.get();
+		Pattern[] members = toArray(new Pattern[0]);
+		long memberVersions = sumMappingVersions(members);
+
+		List<Pattern> actives = new ArrayList<Pattern>();
+		for (Pattern pattern : members) {
 			if (pattern.hasActiveMappings())
 				actives.add(pattern);
 		}
-		return actives;
+		cached = new ActivePatterns(currentVersion, members, memberVersions,
+				Collections.unmodifiableList(actives));
+		activesCache = cached;
+		return cached.actives;
+	}
+
+	/**
+	 * Sums the mapping versions of the given patterns. As each version only
+	 * increases, the sum changes whenever any of them does.
+	 */
+	private static long sumMappingVersions(Pattern[] patterns) {
+		long sum = 0;
+		for (Pattern pattern : patterns)
+			sum += pattern.getMappingVersion();
+		return sum;
+	}
+
+	/**
+	 * Signals that this collection has gained or lost a pattern.
+	 */
+	private void changed() {
+		version.incrementAndGet();
+		structureChanged();
+	}
+
+	@Override
+	public boolean add(Pattern pattern) {
+		boolean result = super.add(pattern);
+		changed();
+		return result;
+	}
+
+	@Override
+	public void add(int index, Pattern pattern) {
+		super.add(index, pattern);
+		changed();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Pattern> patterns) {
+		boolean result = super.addAll(patterns);
+		changed();
+		return result;
+	}
+
+	@Override
+	public boolean addIfAbsent(Pattern pattern) {
+		boolean result = super.addIfAbsent(pattern);
+		changed();
+		return result;
+	}
+
+	@Override
+	public Pattern set(int index, Pattern pattern) {
+		Pattern result = super.set(index, pattern);
+		changed();
+		return result;
+	}
+
+	@Override
+	public Pattern remove(int index) {
+		Pattern result = super.remove(index);
+		changed();
+		return result;
+	}
+
+	@Override
+	public boolean remove(Object pattern) {
+		boolean result = super.remove(pattern);
+		changed();
+		return result;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> patterns) {
+		boolean result = super.removeAll(patterns);
+		changed();
+		return result;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		changed();
 	}
 }
@@ -0,0 +1,105 @@
+package com.corajr.loom;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the work done by a single pattern: how often its callbacks were
+ * collected, how long that took (including its children), how many events it
+ * scanned and how many callbacks it produced, and how often and how long its
+ * value was computed.
+ *
+ * Profiling is off unless the JVM is started with
+ * <code>-Dloom.profile=true</code>. The switch is a static final constant, so
+ * when it is off the profiling code is removed by the JIT compiler entirely.
+ *
+ * @author corajr
+ * @see Pattern#getProfileReport()
+ */
+public class PatternProfile {
+	public static final boolean ENABLED = Boolean.getBoolean("loom.profile");
+
+	private static final double NANOS_PER_MICRO = 1000.0;
+
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+	private final AtomicLong eventsScanned = new AtomicLong();
+	private final AtomicLong callables = new AtomicLong();
+	private final AtomicLong valueCalls = new AtomicLong();
+	private final AtomicLong valueNanos = new AtomicLong();
+
+	void mappingsCollected(long durationNanos, int produced) {
+		calls.incrementAndGet();
+		nanos.addAndGet(durationNanos);
+		callables.addAndGet(produced);
+	}
+
+	void eventsScanned(int count) {
+		eventsScanned.addAndGet(count);
+	}
+
+	void valueComputed(long durationNanos) {
+		valueCalls.incrementAndGet();
+		valueNanos.addAndGet(durationNanos);
+	}
+
+	/**
+	 * @return the number of times callbacks were collected from this pattern
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * @return the time spent collecting callbacks, including in children
+	 */
+	public long getNanos() {
+		return nanos.get();
+	}
+
+	/**
+	 * @return the number of events examined while collecting callbacks
+	 */
+	public long getEventsScanned() {
+		return eventsScanned.get();
+	}
+
+	/**
+	 * @return the number of callbacks produced, including by children
+	 */
+	public long getCallables() {
+		return callables.get();
+	}
+
+	/**
+	 * @return the number of times this pattern's value was computed
+	 */
+	public long getValueCalls() {
+		return valueCalls.get();
+	}
+
+	/**
+	 * @return the time spent computing this pattern's value
+	 */
+	public long getValueNanos() {
+		return valueNanos.get();
+	}
+
+	public void reset() {
+		calls.set(0);
+		nanos.set(0);
+		eventsScanned.set(0);
+		callables.set(0);
+		valueCalls.set(0);
+		valueNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"[calls=%d, time=%.1fus, events=%d, callables=%d, "
+						+ "values=%d, valueTime=%.1fus]", getCalls(),
+				getNanos() / NANOS_PER_MICRO, getEventsScanned(),
+				getCallables(), getValueCalls(), getValueNanos()
+						/ NANOS_PER_MICRO);
+	}
+}
@@ -0,0 +1,22 @@
+package com.corajr.loom;
+
+import com.corajr.loom.time.Rational;
+
+/**
+ * An {@link EventQueryable} that can also report when its next event begins,
+ * allowing schedulers to skip over stretches of time in which nothing happens.
+ * 
+ * @author corajr
+ */
+public interface SeekableEventQueryable extends EventQueryable {
+	/**
+	 * Finds the start of the first event that begins strictly after the given
+	 * time. Implementations may return an earlier time (but never a later one)
+	 * if they cannot determine it exactly.
+	 * 
+	 * @param time
+	 *            the time after which to look
+	 * @return the start of the next event, or null if there is none
+	 */
+	public Rational getNextStartAfter(Rational time);
+}
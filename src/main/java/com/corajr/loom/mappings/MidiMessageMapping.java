@@ -1,13 +1,15 @@
 package com.corajr.loom.mappings;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sound.midi.*;
 
 import com.corajr.loom.*;
 import com.corajr.loom.time.Interval;
-import com.corajr.loom.util.MidiTools;
+import com.corajr.loom.util.OutputCallable;
+import com.corajr.loom.util.ShortMessagePool;
 import com.corajr.loom.wrappers.MidiBusWrapper;
 
 /**
@@ -18,13 +20,47 @@ import com.corajr.loom.wrappers.MidiBusWrapper;
  */
 public class MidiMessageMapping implements Mapping<MidiMessage>,
 		EventMapping<Callable<Void>> {
+	private static final int CHANNELS = 16;
+	private static final int NOTES = 128;
+
 	final MidiBusWrapper midiBusWrapper;
+	final Loom loom;
 	final Pattern[] patterns;
-	int lastHash = -1;
+
+	/**
+	 * For each channel and note (or other data byte), the onset that last
+	 * fired a message and the tick in which it did. An onset can span two
+	 * ticks, but must only be sent once.
+	 */
+	private final Interval[] firedOnsets = new Interval[CHANNELS * NOTES];
+	private final long[] firedTicks = new long[CHANNELS * NOTES];
+
+	/**
+	 * Whether each channel and note is sounding, having been sent a note-on
+	 * but not yet a note-off.
+	 */
+	private final boolean[] sounding = new boolean[CHANNELS * NOTES];
+	private int soundingCount = 0;
 
 	public MidiMessageMapping(MidiBusWrapper midiBusWrapper,
 			final Pattern... patterns) {
+		this(midiBusWrapper, null, patterns);
+	}
+
+	/**
+	 * @param midiBusWrapper
+	 *            where to send messages
+	 * @param loom
+	 *            the loom whose ticks are used to tell a repeated onset from
+	 *            the same one seen twice (can be null, in which case an onset
+	 *            is only sent again once another has been sent for its note)
+	 * @param patterns
+	 *            the command, channel, data 1 and (optionally) data 2 patterns
+	 */
+	public MidiMessageMapping(MidiBusWrapper midiBusWrapper, Loom loom,
+			final Pattern... patterns) {
 		this.midiBusWrapper = midiBusWrapper;
+		this.loom = loom;
 		this.patterns = patterns;
 	}
 
@@ -33,8 +69,23 @@ public class MidiMessageMapping implements Mapping<MidiMessage>,
 		return null;
 	}
 
-	@Override
-	public Callable<Void> call(LEvent event) {
+	/**
+	 * Builds the message for an onset, without sending it.
+	 * 
+	 * @param event
+	 *            the onset event
+	 * @return the message, or null if the patterns do not describe a valid
+	 *         message at that time
+	 */
+	public ShortMessage getMessage(LEvent event) {
+		return getMessage(event, false);
+	}
+
+	/**
+	 * Builds the message for an onset, either as a new message or one from
+	 * the {@link ShortMessagePool}.
+	 */
+	private ShortMessage getMessage(LEvent event, boolean pooled) {
 		Interval now = event.getInterval();
 
 		int command = patterns[0].asMidiCommand(now);
@@ -48,22 +99,89 @@ public class MidiMessageMapping implements Mapping<MidiMessage>,
 		int data2 = patterns.length > 3 && patterns[3] != null ? patterns[3]
 				.asMidiData2(now) : 0x00;
 
-		final ShortMessage message = new ShortMessage();
 		try {
+			if (pooled)
+				return ShortMessagePool.obtain(command, channel, data1, data2);
+
+			ShortMessage message = new ShortMessage();
 			message.setMessage(command, channel, data1, data2);
+			return message;
 		} catch (InvalidMidiDataException e) {
 			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Records that a message is about to be sent for an onset, unless it was
+	 * already sent for the same onset in this tick or the one before.
+	 * 
+	 * @return false if the message is a duplicate
+	 */
+	private synchronized boolean fire(ShortMessage message, Interval onset) {
+		int key = message.getChannel() * NOTES + message.getData1();
+		long tick = loom != null ? loom.getElapsedMillis() : 0;
+
+		if (onset.equals(firedOnsets[key])
+				&& (loom == null || tick - firedTicks[key] <= 1))
+			return false;
+
+		firedOnsets[key] = onset;
+		firedTicks[key] = tick;
+
+		int command = message.getCommand();
+		if (command == ShortMessage.NOTE_ON || command == ShortMessage.NOTE_OFF) {
+			boolean on = command == ShortMessage.NOTE_ON
+					&& message.getData2() > 0;
+			if (on != sounding[key]) {
+				sounding[key] = on;
+				soundingCount += on ? 1 : -1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sends a note-off for every note this mapping has left sounding.
+	 */
+	public void releaseAll() {
+		List<ShortMessage> offs = new ArrayList<ShortMessage>();
+		synchronized (this) {
+			if (soundingCount == 0 || midiBusWrapper == null)
+				return;
+
+			for (int key = 0; key < sounding.length; key++) {
+				if (!sounding[key])
+					continue;
+
+				sounding[key] = false;
+				firedOnsets[key] = null;
+				try {
+					offs.add(ShortMessagePool.obtain(ShortMessage.NOTE_OFF, key
+							/ NOTES, key % NOTES, 0));
+				} catch (InvalidMidiDataException e) {
+					e.printStackTrace();
+				}
+			}
+			soundingCount = 0;
 		}
 
-		// ensure this is only sent once
+		for (ShortMessage off : offs)
+			midiBusWrapper.get().sendMessage(off);
+	}
 
-		int hash = MidiTools.hash(message) ^ now.hashCode();
-		if (hash == lastHash)
+	@Override
+	public Callable<Void> call(LEvent event) {
+		final ShortMessage message = getMessage(event, true);
+		if (message == null)
 			return null;
 
-		lastHash = hash;
+		if (!fire(message, event.getInterval())) {
+			ShortMessagePool.release(message);
+			return null;
+		}
 
-		return new Callable<Void>() {
+		return new OutputCallable() {
 			@Override
 			public Void call() {
 				midiBusWrapper.get().sendMessage(message);
@@ -1,8 +1,13 @@
 package com.corajr.loom.mappings;
 
+import java.nio.ByteBuffer;
+
 import com.corajr.loom.*;
+import com.corajr.loom.Pattern.MappingType;
+import com.corajr.loom.util.OscEncoder;
 
 import oscP5.OscBundle;
+import oscP5.OscMessage;
 
 /**
  * Collects OSC messages from the specified patterns and wraps them in a single
@@ -13,6 +18,13 @@ import oscP5.OscBundle;
 public class OscBundleMapping implements Mapping<OscBundle> {
 	private final PatternCollection oscPatterns;
 
+	private final ThreadLocal<OscEncoder> encoders = new ThreadLocal<OscEncoder>() {
+		@Override
+		protected OscEncoder initialValue() {
+			return new OscEncoder();
+		}
+	};
+
 	public OscBundleMapping(final PatternCollection oscPatterns) {
 		this.oscPatterns = oscPatterns;
 	}
@@ -25,4 +37,27 @@ public class OscBundleMapping implements Mapping<OscBundle> {
 		}
 		return bundle;
 	}
+
+	/**
+	 * Encodes the current bundle into a buffer belonging to the calling
+	 * thread, with the same bytes as {@link #call(double)} would produce.
+	 * 
+	 * @param timetag
+	 *            the bundle's timetag
+	 * @return the encoded bundle, valid until this thread encodes another
+	 * @see OscEncoder#timetagFor(long)
+	 */
+	public ByteBuffer encode(long timetag) {
+		OscEncoder encoder = encoders.get();
+		encoder.beginBundle(timetag);
+		for (Pattern pat : oscPatterns) {
+			Mapping<?> mapping = pat.getOutputMappings().get(
+					MappingType.OSC_MESSAGE);
+			if (mapping instanceof OscMessageMapping)
+				((OscMessageMapping) mapping).encodeTo(encoder);
+			else
+				encoder.addMessage(pat.asOscMessage());
+		}
+		return encoder.getPacket();
+	}
 }
@@ -1,6 +1,7 @@
 package com.corajr.loom.mappings;
 
 import com.corajr.loom.*;
+import com.corajr.loom.util.OscEncoder;
 
 import oscP5.OscMessage;
 
@@ -13,12 +14,14 @@ import oscP5.OscMessage;
 public class OscMessageMapping implements Mapping<OscMessage> {
 	private final Pattern original;
 	private final String addressPattern;
+	private final byte[] address;
 	private final Mapping<?> mapping;
 
 	public OscMessageMapping(final Pattern original,
 			final String addressPattern, final Mapping<?> mapping) {
 		this.original = original;
 		this.addressPattern = addressPattern;
+		this.address = OscEncoder.addressOf(addressPattern);
 		this.mapping = mapping;
 	}
 
@@ -27,4 +30,15 @@ public class OscMessageMapping implements Mapping<OscMessage> {
 		return new OscMessage(addressPattern,
 				new Object[] { mapping.call(original.getValue()) });
 	};
+
+	/**
+	 * Adds the current message to an encoder, without building an
+	 * {@link OscMessage}.
+	 * 
+	 * @param encoder
+	 *            the encoder
+	 */
+	public void encodeTo(OscEncoder encoder) {
+		encoder.addMessage(address, mapping.call(original.getValue()));
+	}
 }
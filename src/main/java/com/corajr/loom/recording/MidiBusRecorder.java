@@ -9,6 +9,7 @@ import org.apache.commons.math3.fraction.BigFraction;
 
 import com.corajr.loom.*;
 import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.RenderPartition;
 import com.corajr.loom.wrappers.*;
 
 import themidibus.MidiBus;
@@ -40,7 +41,16 @@ public class MidiBusRecorder implements IMidiBus {
 				currentInterval.getSize().divide(2));
 		long ticks = now.multiply(loom.getPeriod()).longValue();
 
-		track.add(new MidiEvent(message, ticks));
+		// the sender may reuse the message once this returns
+		final MidiEvent event = new MidiEvent((MidiMessage) message.clone(),
+				ticks);
+		if (!RenderPartition.defer(new Runnable() {
+			@Override
+			public void run() {
+				track.add(event);
+			}
+		}))
+			track.add(event);
 	}
 
 	@Override
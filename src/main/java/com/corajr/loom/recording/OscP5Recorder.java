@@ -4,42 +4,106 @@ import oscP5.*;
 import netP5.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 import com.corajr.loom.*;
+import com.corajr.loom.time.RenderPartition;
 import com.corajr.loom.wrappers.*;
 
-public class OscP5Recorder extends OscP5 implements IOscP5 {
+/**
+ * @author corajr
+ * 
+ *         Records OSC bundles into an {@link OscScore} file, timetagging each
+ *         with the pattern time at which it was sent. Bundles are appended to
+ *         the file as they are sent, so nothing is held in memory and an
+ *         interrupted recording keeps what was sent before. When the scheduler renders
+ *         ahead, bundles arrive before their deadline but are still tagged with
+ *         the time they were rendered for.
+ * 
+ * @see com.corajr.loom.time.Scheduler#setLookahead(long)
+ */
+public class OscP5Recorder extends OscP5 implements IEncodedOscP5 {
 	Loom loom;
 	File outputFile;
-	OscScore score;
+	OscScoreWriter writer;
 
 	public OscP5Recorder(Loom loom, File outputFile) throws IOException {
 		super(loom, 13000);
 		this.outputFile = outputFile;
 		this.loom = loom;
-		score = new OscScore();
+		writer = new OscScoreWriter(outputFile);
 	}
 
 	@Override
 	public void send(OscPacket packet, NetAddress addr) {
 		if (!(packet instanceof OscBundle))
 			return;
-		TaggedOscBundle bundle = new TaggedOscBundle((OscBundle) packet);
+		final TaggedOscBundle bundle = new TaggedOscBundle((OscBundle) packet);
+		bundle.setTimetag(timetagNow());
 
+		Runnable append = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writer.append(bundle);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		if (!RenderPartition.defer(append))
+			append.run();
+	}
+
+	/**
+	 * Records an encoded bundle, copying it first if the scheduler is
+	 * rendering in parallel. Packets other than bundles are ignored, as in
+	 * {@link #send(OscPacket, NetAddress)}.
+	 */
+	@Override
+	public void send(ByteBuffer packet, NetAddress addr) {
+		if (packet.remaining() < 16 || packet.get(packet.position()) != '#')
+			return;
+
+		final long time = timetagNow();
+		if (RenderPartition.isRendering()) {
+			final ByteBuffer copy = ByteBuffer.allocate(packet.remaining());
+			copy.put(packet.duplicate());
+			copy.flip();
+			RenderPartition.defer(new Runnable() {
+				@Override
+				public void run() {
+					append(copy, time);
+				}
+			});
+		} else {
+			append(packet, time);
+		}
+	}
+
+	private void append(ByteBuffer packet, long time) {
+		try {
+			writer.append(packet, time);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return the current pattern time as a timetag
+	 */
+	private long timetagNow() {
 		double timestamp = loom.getNow().doubleValue();
 
 		long seconds = (long) timestamp;
 		long fraction = (long) ((timestamp - seconds) * (1L << 32));
-		long time = seconds << 32 | fraction;
-		bundle.setTimetag(time);
-
-		score.put(timestamp, bundle);
+		return seconds << 32 | fraction;
 	}
 
 	@Override
 	public void dispose() {
 		try {
-			score.write(outputFile);
+			writer.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
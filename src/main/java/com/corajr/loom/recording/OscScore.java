@@ -5,7 +5,6 @@ import java.nio.*;
 import java.util.concurrent.*;
 
 import oscP5.*;
-import netP5.*;
 
 /**
  * @author corajr
@@ -21,41 +20,29 @@ public class OscScore extends ConcurrentSkipListMap<Double, OscBundle> {
 			0x6e, 0x64, 0x6c, 0x65, 0x00 };
 	public static final int BUNDLE_HEADER_SIZE = 16;
 
+	/**
+	 * Reads a whole score file into memory. To process long recordings
+	 * without holding them in memory, use an {@link OscScoreReader} instead.
+	 * 
+	 * @param file
+	 *            the score file
+	 * @return the bundles, keyed by timestamp
+	 */
 	public static OscScore fromFile(File file) {
 		OscScore score = new OscScore();
 
-		DataInputStream is = null;
+		OscScoreReader reader = null;
 
 		try {
-			is = new DataInputStream(new FileInputStream(file));
-
-			long total = file.length();
-
-			int read = 0;
-			while (read < total) {
-				int packetSize = is.readInt();
-				read += 4;
-				byte[] packetBuf = new byte[packetSize];
-
-				read += is.read(packetBuf);
-
-				OscBundle bundle = new BinaryOscBundle(packetBuf);
-
-				ByteBuffer bb = ByteBuffer.wrap(bundle.timetag());
-				long timeValue = bb.getLong();
-				long seconds = (timeValue >>> 32) & 0xffffffffL;
-				long fraction = timeValue & 0xffffffffL;
-
-				double timestamp = seconds + (fraction / Math.pow(2, 32));
-
-				score.put(timestamp, bundle);
-			}
+			reader = new OscScoreReader(file);
+			for (OscBundle bundle : reader)
+				score.put(timestampOf(bundle), bundle);
 		} catch (Exception e) {
 			e.printStackTrace();
 		} finally {
 			try {
-				if (is != null)
-					is.close();
+				if (reader != null)
+					reader.close();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -64,15 +51,30 @@ public class OscScore extends ConcurrentSkipListMap<Double, OscBundle> {
 		return score;
 	}
 
+	/**
+	 * Converts a bundle's OSC timetag back to a timestamp.
+	 * 
+	 * @param bundle
+	 *            the bundle
+	 * @return its timestamp, where 1.0 == one cycle
+	 */
+	public static double timestampOf(OscBundle bundle) {
+		ByteBuffer bb = ByteBuffer.wrap(bundle.timetag());
+		long timeValue = bb.getLong();
+		long seconds = (timeValue >>> 32) & 0xffffffffL;
+		long fraction = timeValue & 0xffffffffL;
+
+		return seconds + (fraction / Math.pow(2, 32));
+	}
+
 	public void write(File file) throws IOException {
-		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		OscScoreWriter out = new OscScoreWriter(file);
 
-		for (OscBundle bundle : this.values()) {
-			byte[] bytes = bundle.getBytes();
-			out.write(Bytes.toBytes(bytes.length));
-			out.write(bytes);
+		try {
+			for (OscBundle bundle : this.values())
+				out.append(bundle);
+		} finally {
+			out.close();
 		}
-
-		out.close();
 	}
 }
@@ -0,0 +1,143 @@
+package com.corajr.loom.recording;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import oscP5.OscBundle;
+
+/**
+ * Reads the bundles of a recorded {@link OscScore} one at a time, in the order
+ * they were written, without loading the whole file. The file is mapped into
+ * memory a window at a time, so recordings of any length can be read in
+ * constant heap.
+ * 
+ * A file that ends partway through a packet (for instance, because the
+ * recording was interrupted) is read up to the last complete bundle.
+ * 
+ * <pre>
+ * OscScoreReader reader = new OscScoreReader(file);
+ * try {
+ * 	for (OscBundle bundle : reader)
+ * 		println(OscScore.timestampOf(bundle));
+ * } finally {
+ * 	reader.close();
+ * }
+ * </pre>
+ * 
+ * @author corajr
+ * @see OscScoreWriter
+ */
+public class OscScoreReader implements Iterable<OscBundle>, Iterator<OscBundle>,
+		Closeable {
+	static final int DEFAULT_WINDOW = 1 << 26;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private final int windowSize;
+
+	private MappedByteBuffer window = null;
+	private long windowStart = 0;
+	private long position = 0;
+	private byte[] next = null;
+
+	public OscScoreReader(File file) throws IOException {
+		this(file, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param file
+	 *            the score file
+	 * @param windowSize
+	 *            the number of bytes to map at a time (a larger packet is
+	 *            mapped whole)
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	OscScoreReader(File file, int windowSize) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.size = channel.size();
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Makes sure that the bytes from the current position onward are mapped.
+	 * 
+	 * @return false if the file has fewer bytes left than needed
+	 */
+	private boolean ensureMapped(int needed) throws IOException {
+		if (size - position < needed)
+			return false;
+
+		if (window == null || position < windowStart
+				|| position + needed > windowStart + window.capacity()) {
+			long length = Math.min(size - position,
+					Math.max(windowSize, needed));
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+					length);
+			windowStart = position;
+		}
+		window.position((int) (position - windowStart));
+		return true;
+	}
+
+	private byte[] readPacket() throws IOException {
+		if (!ensureMapped(4))
+			return null;
+		int packetSize = window.getInt();
+		if (packetSize < 0)
+			throw new IOException("Corrupt OSC score at byte " + position
+					+ "!");
+
+		position += 4;
+		if (!ensureMapped(packetSize)) {
+			position = size;
+			return null;
+		}
+
+		byte[] packet = new byte[packetSize];
+		window.get(packet);
+		position += packetSize;
+		return packet;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = readPacket();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public OscBundle next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		OscBundle bundle = new BinaryOscBundle(next);
+		next = null;
+		return bundle;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<OscBundle> iterator() {
+		return this;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		file.close();
+	}
+}
@@ -0,0 +1,103 @@
+package com.corajr.loom.recording;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+import oscP5.OscBundle;
+
+/**
+ * Writes the bundles of an {@link OscScore} to a file as they are produced.
+ * Each bundle is handed to the operating system as soon as it is appended, so
+ * a recording that is interrupted keeps everything written before the
+ * interruption.
+ * 
+ * @author corajr
+ * @see OscScoreReader
+ */
+public class OscScoreWriter implements Closeable, Flushable {
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+	/**
+	 * Creates (or empties) a score file.
+	 * 
+	 * @param file
+	 *            the file to write
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public OscScoreWriter(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		this.channel = this.file.getChannel();
+	}
+
+	/**
+	 * Appends a bundle to the file.
+	 * 
+	 * @param bundle
+	 *            the bundle to write
+	 * @throws IOException
+	 *             if it could not be written
+	 */
+	public synchronized void append(OscBundle bundle) throws IOException {
+		byte[] bytes = bundle.getBytes();
+		prepare(bytes.length);
+		buffer.put(bytes);
+		write();
+	}
+
+	/**
+	 * Appends an encoded bundle to the file, replacing its timetag.
+	 * 
+	 * @param bundle
+	 *            the bundle, from its position to its limit (left unchanged)
+	 * @param timetag
+	 *            the timetag to record
+	 * @throws IOException
+	 *             if it could not be written
+	 * @see com.corajr.loom.util.OscEncoder
+	 */
+	public synchronized void append(ByteBuffer bundle, long timetag)
+			throws IOException {
+		prepare(bundle.remaining());
+		int start = buffer.position();
+		buffer.put(bundle.duplicate());
+		// the timetag follows the 8-byte "#bundle" header
+		buffer.putLong(start + 8, timetag);
+		write();
+	}
+
+	/**
+	 * Makes room for a bundle of the given length and writes its length.
+	 */
+	private void prepare(int length) {
+		if (buffer.capacity() < length + 4)
+			buffer = ByteBuffer.allocate(Math.max(length + 4,
+					buffer.capacity() * 2));
+
+		buffer.clear();
+		buffer.putInt(length);
+	}
+
+	private void write() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Forces everything appended so far onto the disk.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		channel.force(false);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,305 @@
+package com.corajr.loom.time;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.corajr.loom.util.Histogram;
+
+/**
+ * Runs a scheduler's callbacks on a pool of worker threads, so that a slow
+ * callback (such as a {@link com.corajr.loom.transforms.Transform} rewriting a
+ * large pattern) does not hold up the timing thread. Example:
+ * 
+ * <pre>
+ * CallbackExecutor executor = new CallbackExecutor(
+ * 		CallbackExecutor.Threads.PLATFORM, 2, 1024);
+ * loom.setCallbackExecutor(executor);
+ * </pre>
+ * 
+ * Callbacks from the same pattern are run one at a time, in the order they
+ * were produced. At most <code>capacity</code> callbacks may be waiting at
+ * once; any more are dropped and counted as rejected, rather than blocking
+ * the timing thread. MIDI and OSC output is not queued at all (see
+ * {@link com.corajr.loom.util.OutputCallable}).
+ * 
+ * @author corajr
+ * @see Scheduler#setCallbackExecutor(CallbackExecutor)
+ */
+public class CallbackExecutor {
+	/**
+	 * The kind of worker threads to use.
+	 */
+	public enum Threads {
+		PLATFORM, VIRTUAL
+	}
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The most callbacks a pattern may run before letting other patterns use
+	 * its worker thread.
+	 */
+	private static final int BATCH_SIZE = 32;
+
+	private final ExecutorService pool;
+	private final int capacity;
+
+	private final Map<Object, Lane> lanes = Collections
+			.synchronizedMap(new WeakHashMap<Object, Lane>());
+
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicLong rejected = new AtomicLong();
+	private final Histogram queueDepths = new Histogram();
+
+	private volatile Scheduler scheduler;
+
+	/**
+	 * The callbacks waiting to run for a single pattern. A lane is on the
+	 * pool's queue at most once, so its callbacks never run concurrently.
+	 */
+	private class Lane implements Runnable {
+		private final Queue<Callable<?>> pending = new ArrayDeque<Callable<?>>();
+		private boolean scheduled = false;
+
+		void add(Callable<?> callback) {
+			synchronized (this) {
+				pending.add(callback);
+				if (scheduled)
+					return;
+				scheduled = true;
+			}
+			schedule();
+		}
+
+		private void schedule() {
+			try {
+				pool.execute(this);
+			} catch (RejectedExecutionException e) {
+				// shut down; whatever is pending will never run
+				synchronized (this) {
+					queueDepth.addAndGet(-pending.size());
+					rejected.addAndGet(pending.size());
+					pending.clear();
+					scheduled = false;
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			// once shut down, finish everything rather than yielding
+			for (int i = 0; i < BATCH_SIZE || pool.isShutdown(); i++) {
+				Callable<?> callback;
+				synchronized (this) {
+					callback = pending.poll();
+					if (callback == null) {
+						scheduled = false;
+						return;
+					}
+				}
+
+				queueDepth.decrementAndGet();
+				Scheduler owner = scheduler;
+				if (owner != null)
+					owner.runCallback(callback, owner.isMeasured());
+			}
+
+			// still scheduled, so give other patterns a turn first
+			schedule();
+		}
+	}
+
+	/**
+	 * Creates an executor with the default capacity.
+	 * 
+	 * @param threads
+	 *            platform or virtual threads
+	 * @param threadCount
+	 *            the number of worker threads
+	 */
+	public CallbackExecutor(Threads threads, int threadCount) {
+		this(threads, threadCount, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an executor.
+	 * 
+	 * @param threads
+	 *            platform or virtual threads
+	 * @param threadCount
+	 *            the number of worker threads
+	 * @param capacity
+	 *            the most callbacks that may wait to run at once
+	 * @throws IllegalStateException
+	 *             if virtual threads are requested but the JVM does not
+	 *             support them
+	 */
+	public CallbackExecutor(Threads threads, int threadCount, int capacity) {
+		this(threads == Threads.VIRTUAL ? virtualThreadFactory()
+				: platformThreadFactory(), threadCount, capacity);
+	}
+
+	/**
+	 * Creates an executor whose workers are made by a given factory.
+	 * 
+	 * @param factory
+	 *            the factory for worker threads
+	 * @param threadCount
+	 *            the number of worker threads
+	 * @param capacity
+	 *            the most callbacks that may wait to run at once
+	 */
+	public CallbackExecutor(ThreadFactory factory, int threadCount,
+			int capacity) {
+		if (threadCount < 1)
+			throw new IllegalArgumentException(
+					"Need at least one worker thread!");
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive!");
+
+		this.pool = Executors.newFixedThreadPool(threadCount, factory);
+		this.capacity = capacity;
+	}
+
+	private static ThreadFactory platformThreadFactory() {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "loom-callback-"
+						+ count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Looks up <code>Thread.ofVirtual().factory()</code>, which only exists
+	 * from Java 21 onwards.
+	 */
+	private static ThreadFactory virtualThreadFactory() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtual.invoke(null);
+			Method factory = ofVirtual.getReturnType().getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(
+					"Virtual threads need Java 21 or later!", e);
+		}
+	}
+
+	/**
+	 * Attaches this executor to the scheduler whose callbacks it runs.
+	 */
+	void attach(Scheduler owner) {
+		if (scheduler != null && scheduler != owner)
+			throw new IllegalStateException(
+					"CallbackExecutor is already used by another scheduler!");
+		scheduler = owner;
+	}
+
+	void detach(Scheduler owner) {
+		if (scheduler == owner)
+			scheduler = null;
+	}
+
+	/**
+	 * Queues a callback behind any others from the same pattern.
+	 * 
+	 * @param pattern
+	 *            the pattern that produced the callback
+	 * @param callback
+	 *            the callback to run
+	 * @return false if the queue was full and the callback was dropped
+	 */
+	boolean execute(Object pattern, Callable<?> callback) {
+		int depth = queueDepth.incrementAndGet();
+		if (depth > capacity) {
+			queueDepth.decrementAndGet();
+			rejected.incrementAndGet();
+			return false;
+		}
+		queueDepths.record(depth);
+
+		Lane lane;
+		synchronized (lanes) {
+			lane = lanes.get(pattern);
+			if (lane == null) {
+				lane = new Lane();
+				lanes.put(pattern, lane);
+			}
+		}
+		lane.add(callback);
+		return true;
+	}
+
+	/**
+	 * @return the number of callbacks waiting to run
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * @return the queue depth seen by each accepted callback
+	 */
+	public Histogram getQueueDepths() {
+		return queueDepths;
+	}
+
+	/**
+	 * @return the number of callbacks dropped because the queue was full
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Stops the workers once the callbacks already queued have run.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Waits for the workers to finish after {@link #shutdown()}.
+	 * 
+	 * @param timeout
+	 *            the longest time to wait
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return true if the workers finished in time
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return pool.awaitTermination(timeout, unit);
+	}
+
+	@Override
+	public String toString() {
+		return "CallbackExecutor(queueDepth=" + getQueueDepth() + ", rejected="
+				+ getRejectedCount() + ", depths=" + queueDepths.getSnapshot()
+				+ ")";
+	}
+}
@@ -0,0 +1,83 @@
+package com.corajr.loom.time;
+
+import com.corajr.loom.util.Histogram;
+
+/**
+ * Collects a scheduler's measurements into histograms, which may be read from
+ * the sketch thread while playback continues. Example:
+ *
+ * <pre>
+ * HistogramMetrics metrics = new HistogramMetrics();
+ * loom.addMetrics(metrics);
+ * // later...
+ * println(metrics.getTickLateness().getSnapshot());
+ * </pre>
+ *
+ * @author corajr
+ */
+public class HistogramMetrics implements SchedulerMetrics {
+	private final Histogram tickDuration = new Histogram();
+	private final Histogram callbacksPerTick = new Histogram();
+	private final Histogram callbackDuration = new Histogram();
+	private final Histogram tickLateness = new Histogram();
+
+	@Override
+	public void tickUpdated(long durationNanos, int callbacks) {
+		tickDuration.record(durationNanos);
+		callbacksPerTick.record(callbacks);
+	}
+
+	@Override
+	public void callbackRan(long durationNanos) {
+		callbackDuration.record(durationNanos);
+	}
+
+	@Override
+	public void tickStarted(long latenessNanos) {
+		tickLateness.record(latenessNanos);
+	}
+
+	/**
+	 * @return the time taken by each update, in nanoseconds
+	 */
+	public Histogram getTickDuration() {
+		return tickDuration;
+	}
+
+	/**
+	 * @return the number of callbacks run by each update
+	 */
+	public Histogram getCallbacksPerTick() {
+		return callbacksPerTick;
+	}
+
+	/**
+	 * @return the time spent in each callback, in nanoseconds
+	 */
+	public Histogram getCallbackDuration() {
+		return callbackDuration;
+	}
+
+	/**
+	 * @return how late each real-time tick started, in nanoseconds
+	 */
+	public Histogram getTickLateness() {
+		return tickLateness;
+	}
+
+	public void reset() {
+		tickDuration.reset();
+		callbacksPerTick.reset();
+		callbackDuration.reset();
+		tickLateness.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "HistogramMetrics(\n\ttickDuration="
+				+ tickDuration.getSnapshot() + "\n\tcallbacksPerTick="
+				+ callbacksPerTick.getSnapshot() + "\n\tcallbackDuration="
+				+ callbackDuration.getSnapshot() + "\n\ttickLateness="
+				+ tickLateness.getSnapshot() + "\n)";
+	}
+}
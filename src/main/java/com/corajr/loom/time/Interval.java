@@ -3,8 +3,8 @@ package com.corajr.loom.time;
 import org.apache.commons.math3.fraction.BigFraction;
 
 public class Interval {
-	private final BigFraction start;
-	private final BigFraction end;
+	private final Rational start;
+	private final Rational end;
 
 	public Interval(double start, double end) {
 		this(IntervalMath.toFraction(start), IntervalMath.toFraction(end));
@@ -20,6 +20,19 @@ public class Interval {
 	 *            the end of the interval
 	 */
 	public Interval(BigFraction start, BigFraction end) {
+		this(Rational.valueOf(start), Rational.valueOf(end));
+	}
+
+	/**
+	 * Creates a new Interval, which must have a non-zero duration and end after
+	 * it begins.
+	 * 
+	 * @param start
+	 *            the beginning of the interval
+	 * @param end
+	 *            the end of the interval
+	 */
+	public Interval(Rational start, Rational end) {
 		if (end.compareTo(start) <= 0)
 			throw new IllegalArgumentException("Must end after start!");
 		this.start = start;
@@ -45,31 +58,55 @@ public class Interval {
 	 * @return a new interval
 	 */
 	public static Interval zeroTo(BigFraction duration) {
-		return new Interval(BigFraction.ZERO, duration);
+		return new Interval(Rational.ZERO, Rational.valueOf(duration));
 	}
 
 	public BigFraction getStart() {
-		return start;
+		return start.toBigFraction();
 	}
 
 	public BigFraction getEnd() {
-		return end;
+		return end.toBigFraction();
 	}
 
 	public BigFraction getSize() {
+		return getRationalSize().toBigFraction();
+	}
+
+	public Rational getRationalStart() {
+		return start;
+	}
+
+	public Rational getRationalEnd() {
+		return end;
+	}
+
+	public Rational getRationalSize() {
 		return end.subtract(start);
 	}
 
 	public Interval add(BigFraction fraction) {
-		return new Interval(start.add(fraction), end.add(fraction));
+		return add(Rational.valueOf(fraction));
 	}
 
 	public Interval subtract(BigFraction fraction) {
-		return new Interval(start.subtract(fraction), end.subtract(fraction));
+		return subtract(Rational.valueOf(fraction));
 	}
 
 	public Interval multiply(BigFraction fraction) {
-		return new Interval(start.multiply(fraction), end.multiply(fraction));
+		return multiply(Rational.valueOf(fraction));
+	}
+
+	public Interval add(Rational amount) {
+		return new Interval(start.add(amount), end.add(amount));
+	}
+
+	public Interval subtract(Rational amount) {
+		return new Interval(start.subtract(amount), end.subtract(amount));
+	}
+
+	public Interval multiply(Rational amount) {
+		return new Interval(start.multiply(amount), end.multiply(amount));
 	}
 
 	public Interval add(double i) {
@@ -87,7 +124,7 @@ public class Interval {
 	/**
 	 * "Modulo interval" in the sense given in
 	 * <http://www.cs.tau.ac.il/~nachum/papers/Modulo.pdf>. This transforms a
-	 * BigFraction to fit it into the specified interval.
+	 * Rational to fit it into the specified interval.
 	 * 
 	 * @param fraction
 	 *            the fraction to transform
@@ -95,16 +132,15 @@ public class Interval {
 	 *            the interval into which to fit the fraction
 	 * @return the fraction mod [start, end]
 	 */
-	private static BigFraction fractionMod(BigFraction x, Interval interval) {
+	private static Rational fractionMod(Rational x, Interval interval) {
 
-		BigFraction a = interval.getStart();
-		BigFraction b = interval.getEnd();
+		Rational a = interval.start;
+		Rational b = interval.end;
 
-		BigFraction x_minus_a = x.subtract(a);
-		BigFraction length = b.subtract(a);
+		Rational x_minus_a = x.subtract(a);
+		Rational length = b.subtract(a);
 
-		int multiplier = (int) Math.floor((x_minus_a.divide(length))
-				.doubleValue());
+		Rational multiplier = x_minus_a.divide(length).floor();
 
 		return x.subtract(length.multiply(multiplier));
 	}
@@ -121,20 +157,27 @@ public class Interval {
 	 */
 	public Interval modulo(Interval other) throws IllegalArgumentException {
 
-		BigFraction otherSize = other.getSize();
-		if (this.getSize().compareTo(otherSize) > 0)
+		Rational otherSize = other.getRationalSize();
+		if (this.getRationalSize().compareTo(otherSize) > 0)
 			throw new IllegalArgumentException(
 					"This interval is larger than modulo interval; will be aliased!");
 
-		Interval i = this;
+		// the least number of whole loops that brings the start up to the
+		// loop's start, then the least that brings the end back down to its end
+		Rational shift = Rational.ZERO;
 
-		while (i.getStart().compareTo(other.getStart()) < 0)
-			i = i.add(otherSize);
+		Rational below = other.start.subtract(start);
+		if (below.signum() > 0)
+			shift = below.divide(otherSize).ceil();
 
-		while (i.getEnd().compareTo(other.getEnd()) > 0)
-			i = i.subtract(otherSize);
+		Rational above = end.add(otherSize.multiply(shift)).subtract(other.end);
+		if (above.signum() > 0)
+			shift = shift.subtract(above.divide(otherSize).ceil());
 
-		return i;
+		if (shift.signum() == 0)
+			return this;
+
+		return add(otherSize.multiply(shift));
 	}
 
 	/**
@@ -166,8 +209,25 @@ public class Interval {
 	 */
 	public static Interval modulo(BigFraction start, BigFraction end,
 			Interval other) {
-		BigFraction newStart = Interval.fractionMod(start, other);
-		BigFraction newEnd = Interval.fractionMod(end, other);
+		return modulo(Rational.valueOf(start), Rational.valueOf(end), other);
+	}
+
+	/**
+	 * Fits the start and end of an interval inside another interval, returning
+	 * the result.
+	 * 
+	 * @param start
+	 *            the start of the original interval
+	 * @param end
+	 *            the end of the original interval
+	 * @param other
+	 *            the interval within which to fit the start and end
+	 * @return the new interval
+	 * @see fractionMod
+	 */
+	public static Interval modulo(Rational start, Rational end, Interval other) {
+		Rational newStart = Interval.fractionMod(start, other);
+		Rational newEnd = Interval.fractionMod(end, other);
 
 		Interval i = null;
 
@@ -197,8 +257,22 @@ public class Interval {
 	 * @return the product, modulo the other interval
 	 */
 	public Interval multiplyMod(BigFraction fraction, Interval interval) {
-		BigFraction newStart = getStart().multiply(fraction);
-		BigFraction newEnd = getEnd().multiply(fraction);
+		return multiplyMod(Rational.valueOf(fraction), interval);
+	}
+
+	/**
+	 * Multiplies this interval by some amount, then fits the product into
+	 * another interval.
+	 * 
+	 * @param amount
+	 *            the multiplier
+	 * @param interval
+	 *            the other interval into which the product should be fit
+	 * @return the product, modulo the other interval
+	 */
+	public Interval multiplyMod(Rational amount, Interval interval) {
+		Rational newStart = start.multiply(amount);
+		Rational newEnd = end.multiply(amount);
 
 		return Interval.modulo(newStart, newEnd, interval);
 	}
@@ -215,10 +289,10 @@ public class Interval {
 	 * @return an array of two intervals, long and short
 	 */
 	public static Interval[] shortenBy(Interval interval, BigFraction fraction) {
-		BigFraction newEnd = interval.getEnd().subtract(fraction);
+		Rational newEnd = interval.end.subtract(Rational.valueOf(fraction));
 
-		Interval shortened = new Interval(interval.getStart(), newEnd);
-		Interval after = new Interval(newEnd, interval.getEnd());
+		Interval shortened = new Interval(interval.start, newEnd);
+		Interval after = new Interval(newEnd, interval.end);
 
 		return new Interval[] { shortened, after };
 	}
@@ -256,7 +330,6 @@ public class Interval {
 
 	@Override
 	public String toString() {
-		String s = "[" + start.toString() + "," + end.toString() + "]";
-		return s.replaceAll(" ", "");
+		return "[" + start.toString() + "," + end.toString() + "]";
 	}
 }
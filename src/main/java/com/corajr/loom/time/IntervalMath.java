@@ -28,4 +28,8 @@ public class IntervalMath {
 	public static BigFraction toFraction(double value) {
 		return new BigFraction(value, EPSILON, 100);
 	}
+
+	public static Rational toRational(double value) {
+		return Rational.valueOf(toFraction(value));
+	}
 }
@@ -0,0 +1,87 @@
+package com.corajr.loom.time;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+
+/**
+ * Holds callbacks that were rendered ahead of time, ordered by the millisecond
+ * at which they are due. Callbacks due at the same time are kept in the order
+ * they were added.
+ * 
+ * @author corajr
+ */
+class LookaheadQueue {
+	static final class Entry implements Comparable<Entry> {
+		final long dueMillis;
+		final long targetMillis;
+		final long sequence;
+		final Callable<?> callback;
+
+		Entry(long dueMillis, long targetMillis, long sequence,
+				Callable<?> callback) {
+			this.dueMillis = dueMillis;
+			this.targetMillis = targetMillis;
+			this.sequence = sequence;
+			this.callback = callback;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (dueMillis != other.dueMillis)
+				return dueMillis < other.dueMillis ? -1 : 1;
+			return sequence < other.sequence ? -1
+					: (sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+	private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+	private long sequence = 0;
+
+	/**
+	 * Adds a callback to the queue.
+	 * 
+	 * @param dueMillis
+	 *            when the callback should be run
+	 * @param targetMillis
+	 *            the time the callback was rendered for, which it will see as
+	 *            the present
+	 * @param callback
+	 *            the callback
+	 */
+	synchronized void add(long dueMillis, long targetMillis,
+			Callable<?> callback) {
+		queue.add(new Entry(dueMillis, targetMillis, sequence++, callback));
+	}
+
+	synchronized Entry peek() {
+		return queue.peek();
+	}
+
+	synchronized Entry poll() {
+		return queue.poll();
+	}
+
+	/**
+	 * Removes the head of the queue if it was rendered for the same time and
+	 * is due at the same time as another entry.
+	 * 
+	 * @param entry
+	 *            the entry to match
+	 * @return the head, or null if it does not match
+	 */
+	synchronized Entry pollSameTick(Entry entry) {
+		Entry next = queue.peek();
+		if (next == null || next.dueMillis != entry.dueMillis
+				|| next.targetMillis != entry.targetMillis)
+			return null;
+		return queue.poll();
+	}
+
+	synchronized int size() {
+		return queue.size();
+	}
+
+	synchronized void clear() {
+		queue.clear();
+	}
+}
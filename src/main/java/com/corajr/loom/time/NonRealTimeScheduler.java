@@ -1,5 +1,17 @@
 package com.corajr.loom.time;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.corajr.loom.Pattern;
+
 /**
  * @author corajr
  * 
@@ -8,6 +20,11 @@ package com.corajr.loom.time;
  */
 public class NonRealTimeScheduler extends Scheduler {
 
+	/**
+	 * Whether to skip over milliseconds in which no pattern is active.
+	 */
+	private boolean fastForward = true;
+
 	// NonRealTimeScheduler only progresses when explicitly updated via
 	// <code>setElapsedMillis</code>.
 	@Override
@@ -16,14 +33,18 @@ public class NonRealTimeScheduler extends Scheduler {
 	}
 
 	/**
-	 * Jump to a new time.
+	 * Jump to a new time. Every millisecond in between is updated in turn,
+	 * except those that the patterns report cannot produce any callbacks.
 	 * 
 	 * @param elapsedMillis
 	 */
 	public void setElapsedMillis(long elapsedMillis) {
 		if (this.elapsedMillis < elapsedMillis) {
 			while (this.elapsedMillis < elapsedMillis) {
-				this.elapsedMillis++;
+				long next = this.elapsedMillis + 1;
+				if (fastForward)
+					next += getMillisUntilActive(next, elapsedMillis - next);
+				this.elapsedMillis = next;
 				update();
 			}
 		} else {
@@ -31,8 +52,176 @@ public class NonRealTimeScheduler extends Scheduler {
 		}
 	}
 
+	/**
+	 * Renders one tree of patterns on its own timeline.
+	 */
+	class RenderTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final List<Pattern> patterns = new ArrayList<Pattern>();
+		final List<Integer> order = new ArrayList<Integer>();
+		final RenderPartition partition;
+		final long endMillis;
+
+		RenderTask(long startMillis, long endMillis) {
+			this.partition = new RenderPartition(startMillis);
+			this.endMillis = endMillis;
+		}
+
+		private long getMillisUntilActive(long fromMillis) {
+			if (fromMillis >= endMillis)
+				return 0;
+
+			Interval interval = getIntervalAt(fromMillis);
+			Rational result = null;
+			for (Pattern pattern : patterns) {
+				Rational untilActive = pattern.getTimeUntilActive(interval);
+				if (untilActive != null
+						&& (result == null || untilActive.compareTo(result) < 0))
+					result = untilActive;
+			}
+			return toMillis(result, endMillis - fromMillis);
+		}
+
+		@Override
+		protected void compute() {
+			List<Callable<?>> callbacks = new ArrayList<Callable<?>>();
+
+			partition.begin();
+			try {
+				while (partition.elapsedMillis < endMillis) {
+					long next = partition.elapsedMillis + 1;
+					if (fastForward)
+						next += getMillisUntilActive(next);
+					partition.elapsedMillis = next;
+
+					boolean measured = isMeasured();
+					long tickStart = measured ? System.nanoTime() : 0;
+					int called = 0;
+
+					Interval interval = getIntervalAt(next);
+					beforeTick();
+					try {
+						for (int i = 0; i < patterns.size(); i++) {
+							partition.pattern = order.get(i);
+							patterns.get(i).addActiveMappingsFor(interval,
+									callbacks);
+							for (Callable<?> callback : callbacks) {
+								if (callback != null) {
+									runCallback(callback, measured);
+									called++;
+								}
+							}
+							callbacks.clear();
+						}
+					} finally {
+						afterTick();
+					}
+
+					if (measured)
+						tickUpdated(System.nanoTime() - tickStart, called);
+				}
+			} finally {
+				partition.end();
+			}
+		}
+	}
+
+	/**
+	 * Jumps to a new time like {@link #setElapsedMillis(long)}, but renders
+	 * each tree of patterns on its own thread. Output sent to the recorders
+	 * is held back and merged afterwards by time, then by the order of the
+	 * patterns, so the result is the same as a serial render. Separate trees
+	 * must not share state, since they are updated concurrently.
+	 * 
+	 * @param elapsedMillis
+	 *            the time to render up to
+	 * @param pool
+	 *            the pool to render in
+	 */
+	public void render(long elapsedMillis, ForkJoinPool pool) {
+		if (this.elapsedMillis >= elapsedMillis) {
+			setElapsedMillis(elapsedMillis);
+			return;
+		}
+
+		// a pattern whose ancestor is also updated directly shares its
+		// callbacks, so both must be rendered by the same task
+		List<Pattern> patterns = getPatternsWithActiveMappings();
+		Map<Pattern, RenderTask> tasksByRoot = new LinkedHashMap<Pattern, RenderTask>();
+		for (int i = 0; i < patterns.size(); i++) {
+			Pattern pattern = patterns.get(i);
+			Pattern root = pattern;
+			for (Pattern p = pattern.getParent(); p != null; p = p.getParent())
+				if (patterns.contains(p))
+					root = p;
+
+			RenderTask task = tasksByRoot.get(root);
+			if (task == null) {
+				task = new RenderTask(this.elapsedMillis, elapsedMillis);
+				tasksByRoot.put(root, task);
+			}
+			task.patterns.add(pattern);
+			task.order.add(i);
+		}
+
+		final Collection<RenderTask> tasks = tasksByRoot.values();
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+
+		List<RenderPartition.Entry> output = new ArrayList<RenderPartition.Entry>();
+		for (RenderTask task : tasks)
+			output.addAll(task.partition.entries);
+		Collections.sort(output);
+
+		this.elapsedMillis = elapsedMillis;
+		for (RenderPartition.Entry entry : output)
+			entry.action.run();
+	}
+
+	/**
+	 * Renders up to a new time using all available processors.
+	 * 
+	 * @param elapsedMillis
+	 *            the time to render up to
+	 * @see #render(long, ForkJoinPool)
+	 */
+	public void render(long elapsedMillis) {
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			render(elapsedMillis, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public boolean isFastForward() {
+		return fastForward;
+	}
+
+	/**
+	 * Sets whether <code>setElapsedMillis</code> may skip milliseconds in which
+	 * nothing happens. Either way, the callbacks that run are the same; turning
+	 * this off forces a full query of the patterns at every millisecond.
+	 * 
+	 * @param fastForward
+	 *            true to skip idle milliseconds
+	 */
+	public void setFastForward(boolean fastForward) {
+		this.fastForward = fastForward;
+	}
+
 	@Override
 	public long getElapsedMillis() {
+		RenderPartition partition = RenderPartition.current();
+		if (partition != null)
+			return partition.elapsedMillis;
 		return elapsedMillis;
 	}
 }
@@ -0,0 +1,350 @@
+package com.corajr.loom.time;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.LockSupport;
+
+import com.corajr.loom.PatternCollection;
+import com.corajr.loom.util.Timetagged;
+
+/**
+ * @author corajr
+ *
+ *         This Scheduler plays back pattern events in real time, measuring time
+ *         with <code>System.nanoTime()</code>. Instead of polling every
+ *         millisecond, it asks the patterns when they will next produce a
+ *         callback, parks the timing thread until just before that deadline,
+ *         and spins only for the final few microseconds.
+ */
+public class PreciseRealTimeScheduler extends Scheduler {
+	/**
+	 * How long before a deadline to stop parking and start spinning.
+	 */
+	public static final long DEFAULT_SPIN_NANOS = 50000;
+
+	/**
+	 * The longest time to sleep without looking at the patterns again, so that
+	 * changes made from other threads are noticed.
+	 */
+	public static final long DEFAULT_MAX_SLEEP_MILLIS = 10;
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	class Timer implements Runnable {
+		@Override
+		public void run() {
+			Rational lastUpdated = Rational.valueOf(elapsedMillis, periodMillis)
+					.subtract(getRationalHalfMinimum());
+			long nextMillis = elapsedMillis;
+			long version = PatternCollection.getStructureVersion();
+
+			while (true) {
+				long lookahead = lookaheadMillis;
+				long deadline = startNanos + (nextMillis - lookahead)
+						* NANOS_PER_MILLI;
+				if (!waitUntil(deadline))
+					break;
+
+				long nowNanos = System.nanoTime();
+				long actualMillis = (nowNanos - startNanos) / NANOS_PER_MILLI;
+				// how far the system clock has moved from the nanoTime
+				// timeline since playback began
+				long driftNanos = (System.currentTimeMillis() - startWallMillis)
+						* NANOS_PER_MILLI - (nowNanos - startNanos);
+				statistics.record(nowNanos - deadline, driftNanos);
+				if (isMeasured())
+					tickStarted(nowNanos - deadline);
+
+				// when rendering ahead, every tick is rendered in turn so that
+				// its callbacks keep their own deadline
+				long renderMillis;
+				if (lookahead == 0) {
+					renderMillis = Math.max(nextMillis, actualMillis);
+					elapsedMillis = renderMillis;
+				} else {
+					renderMillis = nextMillis;
+					if (actualMillis > elapsedMillis)
+						elapsedMillis = actualMillis;
+				}
+
+				try {
+					Rational now = Rational.valueOf(renderMillis, periodMillis);
+					Rational half = getRationalHalfMinimum();
+
+					// time skipped while parked is known to be empty, unless
+					// the patterns were changed in the meantime
+					Rational skippedTo = Rational.valueOf(nextMillis,
+							periodMillis).subtract(half);
+					if (version == PatternCollection.getStructureVersion()
+							&& skippedTo.compareTo(lastUpdated) > 0)
+						lastUpdated = skippedTo;
+
+					Rational nowFrac = now.add(half);
+					Interval interval = new Interval(lastUpdated, nowFrac);
+					if (lookahead == 0)
+						updateFor(interval);
+					else
+						render(interval, actualMillis, renderMillis);
+					lastUpdated = nowFrac;
+
+					version = PatternCollection.getStructureVersion();
+					nextMillis = renderMillis + 1
+							+ getMillisUntilActive(renderMillis + 1,
+									maxSleepMillis - 1);
+				} catch (Exception e) {
+					e.printStackTrace();
+					nextMillis = renderMillis + 1;
+				}
+			}
+		}
+	}
+
+	class Dispatcher implements Runnable {
+		@Override
+		public void run() {
+			while (!Thread.interrupted()) {
+				LookaheadQueue.Entry next = output.peek();
+				if (next == null) {
+					LockSupport.parkNanos(maxSleepMillis * NANOS_PER_MILLI);
+					continue;
+				}
+
+				// park until close to the deadline, waking early if the
+				// renderer adds something sooner
+				long remaining = startNanos + next.dueMillis * NANOS_PER_MILLI
+						- System.nanoTime();
+				if (remaining > spinNanos) {
+					LockSupport.parkNanos(remaining - spinNanos);
+					continue;
+				}
+
+				if (!waitUntil(startNanos + next.dueMillis * NANOS_PER_MILLI))
+					break;
+
+				LookaheadQueue.Entry entry = output.poll();
+				if (entry == null)
+					continue;
+
+				dispatchMillis = entry.targetMillis;
+				if (entry.dueMillis == entry.targetMillis
+						&& entry.targetMillis > elapsedMillis)
+					elapsedMillis = entry.targetMillis;
+
+				// everything rendered for this tick runs as one batch
+				boolean measured = isMeasured();
+				beforeTick();
+				try {
+					do {
+						runCallback(entry.callback, measured);
+					} while ((entry = output.pollSameTick(entry)) != null);
+				} finally {
+					afterTick();
+				}
+			}
+		}
+	}
+
+	private final Timer timer = new Timer();
+
+	/**
+	 * Guards starting and stopping the threads.
+	 */
+	private final Object lifecycle = new Object();
+	private final Dispatcher dispatcher = new Dispatcher();
+	private Thread timingThread = null;
+	private Thread dispatchThread = null;
+
+	private final LookaheadQueue output = new LookaheadQueue();
+	private final List<Callable<?>> renderBuffer = new ArrayList<Callable<?>>();
+
+	/**
+	 * <code>System.nanoTime()</code> and <code>System.currentTimeMillis()</code>
+	 * when elapsedMillis was zero.
+	 */
+	private volatile long startNanos;
+	private volatile long startWallMillis;
+
+	/**
+	 * The time the callback being dispatched was rendered for.
+	 */
+	private volatile long dispatchMillis;
+
+	private final TimingStatistics statistics = new TimingStatistics();
+
+	private long spinNanos = DEFAULT_SPIN_NANOS;
+	private long maxSleepMillis = DEFAULT_MAX_SLEEP_MILLIS;
+
+	/**
+	 * Queues the callbacks for an interval rendered ahead of time.
+	 * 
+	 * @param interval
+	 *            the interval to query
+	 * @param actualMillis
+	 *            the present time
+	 * @param targetMillis
+	 *            the time the interval was rendered for
+	 */
+	private void render(Interval interval, long actualMillis, long targetMillis) {
+		boolean measured = isMeasured();
+		long renderStart = measured ? System.nanoTime() : 0;
+
+		try {
+			collectFor(interval, renderBuffer);
+			if (measured)
+				tickUpdated(System.nanoTime() - renderStart,
+						renderBuffer.size());
+			if (renderBuffer.isEmpty())
+				return;
+
+			for (Callable<?> callback : renderBuffer) {
+				if (callback == null)
+					continue;
+				long due = callback instanceof Timetagged ? actualMillis
+						: targetMillis;
+				output.add(due, targetMillis, callback);
+			}
+		} finally {
+			renderBuffer.clear();
+		}
+
+		LockSupport.unpark(dispatchThread);
+	}
+
+	/**
+	 * Parks until shortly before the deadline, then spins.
+	 *
+	 * @param deadline
+	 *            the target value of <code>System.nanoTime()</code>
+	 * @return false if the thread was interrupted while waiting
+	 */
+	private boolean waitUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > spinNanos) {
+			LockSupport.parkNanos(remaining - spinNanos);
+			if (Thread.interrupted())
+				return false;
+		}
+
+		while (System.nanoTime() - deadline < 0) {
+			if (Thread.interrupted())
+				return false;
+		}
+
+		return !Thread.interrupted();
+	}
+
+	@Override
+	public long getElapsedMillis() {
+		if (Thread.currentThread() == dispatchThread)
+			return dispatchMillis;
+		return elapsedMillis;
+	}
+
+	@Override
+	public long getWallClockMillis() {
+		return startWallMillis + getElapsedMillis();
+	}
+
+	/**
+	 * Returns the lateness and drift statistics of the timing thread.
+	 *
+	 * @return the statistics
+	 */
+	public TimingStatistics getStatistics() {
+		return statistics;
+	}
+
+	public long getSpinNanos() {
+		return spinNanos;
+	}
+
+	/**
+	 * Sets how long before each deadline the timing thread stops parking and
+	 * starts spinning. Larger values are more accurate but use more CPU.
+	 *
+	 * @param spinNanos
+	 *            the spin duration in nanoseconds
+	 */
+	public void setSpinNanos(long spinNanos) {
+		this.spinNanos = spinNanos;
+	}
+
+	public long getMaxSleepMillis() {
+		return maxSleepMillis;
+	}
+
+	/**
+	 * Sets the longest time the timing thread may sleep before looking at the
+	 * patterns again.
+	 *
+	 * @param maxSleepMillis
+	 *            the maximum sleep in milliseconds
+	 */
+	public void setMaxSleepMillis(long maxSleepMillis) {
+		this.maxSleepMillis = Math.max(1, maxSleepMillis);
+	}
+
+	@Override
+	public void play() {
+		synchronized (lifecycle) {
+			if (state == State.STOPPED) {
+				elapsedMillis = 0;
+				statistics.reset();
+			}
+
+			super.play();
+
+			if (timingThread == null) {
+				startNanos = System.nanoTime() - elapsedMillis
+						* NANOS_PER_MILLI;
+				startWallMillis = System.currentTimeMillis() - elapsedMillis;
+
+				dispatchThread = new Thread(dispatcher);
+				dispatchThread.start();
+				timingThread = new Thread(timer);
+				timingThread.start();
+			}
+		}
+	}
+
+	@Override
+	public void pause() {
+		synchronized (lifecycle) {
+			stopThreads();
+			super.pause();
+		}
+	}
+
+	@Override
+	public void stop() {
+		synchronized (lifecycle) {
+			stopThreads();
+			super.stop();
+		}
+	}
+
+	private void stopThreads() {
+		stopThread(timingThread);
+		stopThread(dispatchThread);
+		timingThread = null;
+		dispatchThread = null;
+
+		// anything rendered ahead will be rendered again on resuming
+		output.clear();
+	}
+
+	private static void stopThread(Thread thread) {
+		if (thread == null)
+			return;
+
+		thread.interrupt();
+		if (Thread.currentThread() != thread) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,386 @@
+package com.corajr.loom.time;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+/**
+ * An immutable rational number used for positions in time (where 1 == one
+ * cycle). The value is normally held as a reduced long numerator and a positive
+ * long denominator, so the common arithmetic on the scheduling path needs no
+ * BigInteger allocation. If an operation would overflow a long, the result
+ * falls back to a {@link BigFraction}.
+ *
+ * @author corajr
+ */
+public final class Rational implements Comparable<Rational>, Serializable {
+	private static final long serialVersionUID = 3417946390165284931L;
+
+	public static final Rational ZERO = new Rational(0, 1);
+	public static final Rational ONE = new Rational(1, 1);
+
+	private static final BigInteger LONG_MIN = BigInteger
+			.valueOf(Long.MIN_VALUE);
+	private static final BigInteger LONG_MAX = BigInteger
+			.valueOf(Long.MAX_VALUE);
+
+	private final long numerator;
+	private final long denominator;
+
+	/**
+	 * The value, when it does not fit in a long numerator and denominator
+	 * (null otherwise).
+	 */
+	private final BigFraction big;
+
+	/**
+	 * Lazily created BigFraction equivalent of this value.
+	 */
+	private transient volatile BigFraction fraction;
+
+	private Rational(long numerator, long denominator) {
+		this.numerator = numerator;
+		this.denominator = denominator;
+		this.big = null;
+	}
+
+	private Rational(BigFraction big) {
+		this.numerator = 0;
+		this.denominator = 1;
+		this.big = big;
+		this.fraction = big;
+	}
+
+	/**
+	 * Creates a rational number from an integer.
+	 *
+	 * @param value
+	 *            the integer
+	 * @return a new Rational
+	 */
+	public static Rational valueOf(long value) {
+		return valueOf(value, 1);
+	}
+
+	/**
+	 * Creates a rational number from a numerator and denominator, reducing it
+	 * to lowest terms.
+	 *
+	 * @param numerator
+	 *            the numerator
+	 * @param denominator
+	 *            the denominator (must not be zero)
+	 * @return a new Rational
+	 * @throws ArithmeticException
+	 *             if the denominator is zero
+	 */
+	public static Rational valueOf(long numerator, long denominator) {
+		if (denominator == 0)
+			throw new ArithmeticException("Denominator must not be zero.");
+
+		if (numerator == Long.MIN_VALUE || denominator == Long.MIN_VALUE)
+			return valueOf(new BigFraction(BigInteger.valueOf(numerator),
+					BigInteger.valueOf(denominator)));
+
+		if (numerator == 0)
+			return ZERO;
+
+		if (denominator < 0) {
+			numerator = -numerator;
+			denominator = -denominator;
+		}
+
+		long gcd = gcd(Math.abs(numerator), denominator);
+		if (gcd > 1) {
+			numerator /= gcd;
+			denominator /= gcd;
+		}
+
+		return new Rational(numerator, denominator);
+	}
+
+	/**
+	 * Converts a BigFraction, keeping the compact representation whenever the
+	 * numerator and denominator fit in a long.
+	 *
+	 * @param fraction
+	 *            the fraction to convert
+	 * @return an equivalent Rational
+	 */
+	public static Rational valueOf(BigFraction fraction) {
+		BigInteger num = fraction.getNumerator();
+		BigInteger den = fraction.getDenominator();
+
+		if (fitsInLong(num) && fitsInLong(den)) {
+			Rational r = valueOf(num.longValue(), den.longValue());
+			if (r.fraction == null)
+				r.fraction = fraction;
+			return r;
+		}
+
+		return new Rational(fraction);
+	}
+
+	private static boolean fitsInLong(BigInteger value) {
+		return value.compareTo(LONG_MIN) > 0 && value.compareTo(LONG_MAX) <= 0;
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	private static long addExact(long a, long b) {
+		long r = a + b;
+		if (((a ^ r) & (b ^ r)) < 0)
+			throw new ArithmeticException("long overflow");
+		return r;
+	}
+
+	private static long subtractExact(long a, long b) {
+		long r = a - b;
+		if (((a ^ b) & (a ^ r)) < 0)
+			throw new ArithmeticException("long overflow");
+		return r;
+	}
+
+	private static long multiplyExact(long a, long b) {
+		long r = a * b;
+		long ax = Math.abs(a);
+		long ay = Math.abs(b);
+		if (((ax | ay) >>> 31 != 0)) {
+			if ((b != 0 && r / b != a) || (a == Long.MIN_VALUE && b == -1))
+				throw new ArithmeticException("long overflow");
+		}
+		return r;
+	}
+
+	/**
+	 * @return true if this value is held as a BigFraction rather than as longs
+	 */
+	public boolean isBig() {
+		return big != null;
+	}
+
+	public Rational add(Rational other) {
+		if (big == null && other.big == null) {
+			if (numerator == 0)
+				return other;
+			if (other.numerator == 0)
+				return this;
+			try {
+				if (denominator == other.denominator)
+					return valueOf(addExact(numerator, other.numerator),
+							denominator);
+
+				long gcd = gcd(denominator, other.denominator);
+				long n = addExact(
+						multiplyExact(numerator, other.denominator / gcd),
+						multiplyExact(other.numerator, denominator / gcd));
+				long d = multiplyExact(denominator / gcd, other.denominator);
+				return valueOf(n, d);
+			} catch (ArithmeticException e) {
+				// fall through to BigFraction
+			}
+		}
+		return valueOf(toBigFraction().add(other.toBigFraction()));
+	}
+
+	public Rational subtract(Rational other) {
+		if (big == null && other.big == null) {
+			if (other.numerator == 0)
+				return this;
+			try {
+				if (denominator == other.denominator)
+					return valueOf(subtractExact(numerator, other.numerator),
+							denominator);
+
+				long gcd = gcd(denominator, other.denominator);
+				long n = subtractExact(
+						multiplyExact(numerator, other.denominator / gcd),
+						multiplyExact(other.numerator, denominator / gcd));
+				long d = multiplyExact(denominator / gcd, other.denominator);
+				return valueOf(n, d);
+			} catch (ArithmeticException e) {
+				// fall through to BigFraction
+			}
+		}
+		return valueOf(toBigFraction().subtract(other.toBigFraction()));
+	}
+
+	public Rational multiply(Rational other) {
+		if (big == null && other.big == null) {
+			if (numerator == 0 || other.numerator == 0)
+				return ZERO;
+			if (other.numerator == 1 && other.denominator == 1)
+				return this;
+			try {
+				long g1 = gcd(Math.abs(numerator), other.denominator);
+				long g2 = gcd(Math.abs(other.numerator), denominator);
+				long n = multiplyExact(numerator / g1, other.numerator / g2);
+				long d = multiplyExact(denominator / g2, other.denominator / g1);
+				return valueOf(n, d);
+			} catch (ArithmeticException e) {
+				// fall through to BigFraction
+			}
+		}
+		return valueOf(toBigFraction().multiply(other.toBigFraction()));
+	}
+
+	public Rational multiply(long value) {
+		return multiply(valueOf(value));
+	}
+
+	public Rational divide(Rational other) {
+		if (other.signum() == 0)
+			throw new ArithmeticException("Division by zero.");
+		return multiply(other.reciprocal());
+	}
+
+	public Rational divide(long value) {
+		return divide(valueOf(value));
+	}
+
+	public Rational reciprocal() {
+		if (big != null)
+			return valueOf(big.reciprocal());
+		return valueOf(denominator, numerator);
+	}
+
+	public Rational negate() {
+		if (big != null)
+			return valueOf(big.negate());
+		return numerator == 0 ? this : new Rational(-numerator, denominator);
+	}
+
+	public Rational abs() {
+		return signum() < 0 ? negate() : this;
+	}
+
+	/**
+	 * @return -1, 0, or 1 according to the sign of this value
+	 */
+	public int signum() {
+		if (big != null)
+			return big.getNumerator().signum();
+		return Long.signum(numerator);
+	}
+
+	/**
+	 * Returns the largest integer less than or equal to this value.
+	 *
+	 * @return the floor, as a Rational with denominator 1
+	 */
+	public Rational floor() {
+		if (big != null) {
+			BigInteger[] qr = big.getNumerator().divideAndRemainder(
+					big.getDenominator());
+			BigInteger q = qr[0];
+			if (qr[1].signum() < 0)
+				q = q.subtract(BigInteger.ONE);
+			return valueOf(new BigFraction(q));
+		}
+
+		long q = numerator / denominator;
+		if (numerator % denominator != 0 && numerator < 0)
+			q--;
+		return valueOf(q);
+	}
+
+	/**
+	 * Returns the smallest integer greater than or equal to this value.
+	 *
+	 * @return the ceiling, as a Rational with denominator 1
+	 */
+	public Rational ceil() {
+		return negate().floor().negate();
+	}
+
+	@Override
+	public int compareTo(Rational other) {
+		if (big == null && other.big == null) {
+			if (denominator == other.denominator)
+				return numerator < other.numerator ? -1
+						: (numerator == other.numerator ? 0 : 1);
+			try {
+				long lhs = multiplyExact(numerator, other.denominator);
+				long rhs = multiplyExact(other.numerator, denominator);
+				return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+			} catch (ArithmeticException e) {
+				// fall through to BigFraction
+			}
+		}
+		return toBigFraction().compareTo(other.toBigFraction());
+	}
+
+	public double doubleValue() {
+		if (big != null)
+			return big.doubleValue();
+		return (double) numerator / denominator;
+	}
+
+	public long longValue() {
+		if (big != null)
+			return big.longValue();
+		return numerator / denominator;
+	}
+
+	public int intValue() {
+		return (int) longValue();
+	}
+
+	/**
+	 * Converts this value to a BigFraction (cached after the first call).
+	 *
+	 * @return the equivalent BigFraction
+	 */
+	public BigFraction toBigFraction() {
+		BigFraction f = fraction;
+		if (f == null) {
+			f = new BigFraction(numerator, denominator);
+			fraction = f;
+		}
+		return f;
+	}
+
+	@Override
+	public int hashCode() {
+		if (big != null)
+			return big.hashCode();
+		final int prime = 31;
+		int result = 1;
+		result = prime * result
+				+ (int) (denominator ^ (denominator >>> 32));
+		result = prime * result + (int) (numerator ^ (numerator >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (!(obj instanceof Rational))
+			return false;
+		Rational other = (Rational) obj;
+		if (big != null || other.big != null)
+			return big != null && big.equals(other.big);
+		return numerator == other.numerator
+				&& denominator == other.denominator;
+	}
+
+	@Override
+	public String toString() {
+		if (big != null)
+			return big.toString().replaceAll(" ", "");
+		if (denominator == 1)
+			return Long.toString(numerator);
+		return numerator + "/" + denominator;
+	}
+}
@@ -1,7 +1,5 @@
 package com.corajr.loom.time;
 
-import org.apache.commons.math3.fraction.BigFraction;
-
 /**
  * @author corajr
  * 
@@ -24,17 +22,23 @@ public class RealTimeScheduler extends Scheduler {
 			if (waitInNanos > 999999)
 				waitInNanos = 500000;
 
-			BigFraction lastUpdated = getNow().subtract(getHalfMinimum());
-			BigFraction nowFrac;
+			Rational lastUpdated = getRationalNow().subtract(
+					getRationalHalfMinimum());
+			Rational nowFrac;
+			long intendedNanos = System.nanoTime();
 			while (true) {
 				try {
+					if (isMeasured())
+						tickStarted(System.nanoTime() - intendedNanos);
+
 					elapsedMillis = System.currentTimeMillis() - startMillis;
 
-					nowFrac = getNow().add(getHalfMinimum());
+					nowFrac = getRationalNow().add(getRationalHalfMinimum());
 					updateFor(new Interval(lastUpdated, nowFrac));
 
 					lastUpdated = nowFrac;
 
+					intendedNanos = System.nanoTime() + waitInNanos;
 					Thread.sleep(0, waitInNanos);
 				} catch (InterruptedException e) {
 					break;
@@ -0,0 +1,97 @@
+package com.corajr.loom.time;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state of one partition of a parallel offline render: its own position
+ * in time, and the output it has produced so far. While a partition is being
+ * rendered, recorders hand their output to it through {@link #defer(Runnable)}
+ * so that it can be merged in order once every partition is done.
+ * 
+ * @author corajr
+ * @see NonRealTimeScheduler#render(long, java.util.concurrent.ForkJoinPool)
+ */
+public final class RenderPartition {
+	private static final ThreadLocal<RenderPartition> current = new ThreadLocal<RenderPartition>();
+
+	static final class Entry implements Comparable<Entry> {
+		final long millis;
+		final int pattern;
+		final int sequence;
+		final Runnable action;
+
+		Entry(long millis, int pattern, int sequence, Runnable action) {
+			this.millis = millis;
+			this.pattern = pattern;
+			this.sequence = sequence;
+			this.action = action;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (millis != other.millis)
+				return millis < other.millis ? -1 : 1;
+			if (pattern != other.pattern)
+				return pattern < other.pattern ? -1 : 1;
+			return sequence < other.sequence ? -1
+					: (sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+	long elapsedMillis;
+
+	/**
+	 * The position of the pattern being updated among the scheduler's
+	 * patterns, which orders output produced at the same time.
+	 */
+	int pattern;
+	final List<Entry> entries = new ArrayList<Entry>();
+
+	RenderPartition(long elapsedMillis) {
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return the partition being rendered on this thread, or null
+	 */
+	static RenderPartition current() {
+		return current.get();
+	}
+
+	void begin() {
+		current.set(this);
+	}
+
+	void end() {
+		current.remove();
+	}
+
+	/**
+	 * @return true if the calling thread is rendering a partition, so that
+	 *         output passed to {@link #defer(Runnable)} would be held back
+	 */
+	public static boolean isRendering() {
+		return current.get() != null;
+	}
+
+	/**
+	 * Holds back a piece of output if the calling thread is rendering a
+	 * partition. The action will be run once all partitions have finished, in
+	 * the same order that a serial render would have produced it.
+	 * 
+	 * @param action
+	 *            the output to apply
+	 * @return false if no partition is being rendered, in which case the caller
+	 *         should apply the output itself
+	 */
+	public static boolean defer(Runnable action) {
+		RenderPartition partition = current.get();
+		if (partition == null)
+			return false;
+
+		partition.entries.add(new Entry(partition.elapsedMillis,
+				partition.pattern, partition.entries.size(), action));
+		return true;
+	}
+}
@@ -7,6 +7,8 @@ import org.apache.commons.math3.fraction.BigFraction;
 
 import com.corajr.loom.Pattern;
 import com.corajr.loom.PatternCollection;
+import com.corajr.loom.util.OutputCallable;
+import com.corajr.loom.util.Timetagged;
 
 /**
  * The base class for schedulers in Loom.
@@ -50,6 +52,43 @@ public abstract class Scheduler {
 
 	private BigFraction minimumResolution = DEFAULT_RESOLUTION;
 
+	/**
+	 * Scratch space for the callbacks of each tick, reused to avoid
+	 * allocating on the timing thread. Each thread has its own, so updates
+	 * need no lock and callbacks never run while one is held.
+	 */
+	private final ThreadLocal<List<Callable<?>>> callbackBuffers = new ThreadLocal<List<Callable<?>>>() {
+		@Override
+		protected List<Callable<?>> initialValue() {
+			return new ArrayList<Callable<?>>();
+		}
+	};
+
+	private Rational halfMinimum = Rational.valueOf(DEFAULT_RESOLUTION)
+			.divide(2);
+
+	/**
+	 * How far ahead of real time to render callbacks, in milliseconds.
+	 */
+	long lookaheadMillis = 0;
+
+	/**
+	 * Receivers of timing measurements. While this is empty, nothing is
+	 * measured.
+	 */
+	private final List<SchedulerMetrics> metrics = new CopyOnWriteArrayList<SchedulerMetrics>();
+
+	/**
+	 * Listeners told when each call to {@link #updateFor(Interval)} begins and
+	 * ends.
+	 */
+	private final List<TickListener> tickListeners = new CopyOnWriteArrayList<TickListener>();
+
+	/**
+	 * Runs callbacks off the timing thread, if set.
+	 */
+	private volatile CallbackExecutor callbackExecutor = null;
+
 	/**
 	 * Implementations of the Scheduler class must provide the present time when
 	 * queried.
@@ -64,6 +103,16 @@ public abstract class Scheduler {
 	 * @return the present moment as a fraction of a cycle
 	 */
 	public BigFraction getNow() {
+		return getRationalNow().toBigFraction();
+	}
+
+	/**
+	 * Returns the current time in milliseconds divided by the period.
+	 * 
+	 * @return the present moment as a fraction of a cycle
+	 * @see #getNow()
+	 */
+	public Rational getRationalNow() {
 		if (state == State.STOPPED)
 			throw new IllegalStateException(
 					"Tried to retrieve the time while stopped! "
@@ -71,7 +120,7 @@ public abstract class Scheduler {
 
 		long elapsed = getElapsedMillis();
 
-		return new BigFraction(elapsed, periodMillis);
+		return Rational.valueOf(elapsed, periodMillis);
 	}
 
 	/**
@@ -81,9 +130,8 @@ public abstract class Scheduler {
 	 * @return an interval
 	 */
 	public Interval getCurrentInterval() {
-		BigFraction now = getNow();
-		return new Interval(now.subtract(getHalfMinimum()),
-				now.add(getHalfMinimum()));
+		Rational now = getRationalNow();
+		return new Interval(now.subtract(halfMinimum), now.add(halfMinimum));
 	}
 
 	/**
@@ -117,7 +165,45 @@ public abstract class Scheduler {
 	}
 
 	public BigFraction getHalfMinimum() {
-		return minimumResolution.divide(2);
+		return halfMinimum.toBigFraction();
+	}
+
+	public Rational getRationalHalfMinimum() {
+		return halfMinimum;
+	}
+
+	public long getLookahead() {
+		return lookaheadMillis;
+	}
+
+	/**
+	 * Sets how far ahead of real time the scheduler should query its patterns.
+	 * Callbacks found during the lookahead window are queued by their target
+	 * time and run by a separate dispatcher at their deadline, so that slow
+	 * pattern evaluation does not delay output. Callbacks marked
+	 * {@link com.corajr.loom.util.Timetagged} are run as soon as they
+	 * are rendered. A lookahead of zero (the default) runs callbacks directly.
+	 * Schedulers without real-time deadlines ignore this setting.
+	 * 
+	 * @param lookaheadMillis
+	 *            the lookahead window in milliseconds
+	 */
+	public void setLookahead(long lookaheadMillis) {
+		if (lookaheadMillis < 0)
+			throw new IllegalArgumentException(
+					"Lookahead must not be negative!");
+		this.lookaheadMillis = lookaheadMillis;
+	}
+
+	/**
+	 * Returns the system time (as from <code>System.currentTimeMillis()</code>)
+	 * that corresponds to the scheduler's present, for output that is stamped
+	 * with its own time.
+	 * 
+	 * @return the wall-clock time in milliseconds
+	 */
+	public long getWallClockMillis() {
+		return System.currentTimeMillis();
 	}
 
 	/**
@@ -129,6 +215,7 @@ public abstract class Scheduler {
 	public void setPeriod(long periodMillis) {
 		this.periodMillis = periodMillis;
 		this.minimumResolution = new BigFraction(1, periodMillis);
+		this.halfMinimum = Rational.valueOf(1, periodMillis * 2);
 	}
 
 	/**
@@ -147,27 +234,272 @@ public abstract class Scheduler {
 	 *            the interval over which to run callbacks
 	 */
 	public void updateFor(Interval interval) {
-		PatternCollection actives = getPatternsWithActiveMappings();
-		for (Pattern pattern : actives) {
-			Collection<Callable<?>> callbacks = pattern
-					.getActiveMappingsFor(interval);
-			for (Callable<?> callback : callbacks) {
-				if (callback != null)
-					try {
-						callback.call();
-					} catch (Exception e) {
-						e.printStackTrace();
+		boolean measured = isMeasured();
+		long tickStart = measured ? System.nanoTime() : 0;
+		int called;
+		CallbackExecutor executor = callbackExecutor;
+
+		beforeTick();
+		try {
+			called = runCallbacksFor(interval, executor, measured);
+		} finally {
+			afterTick();
+		}
+
+		if (measured)
+			tickUpdated(System.nanoTime() - tickStart, called);
+	}
+
+	private int runCallbacksFor(Interval interval, CallbackExecutor executor,
+			boolean measured) {
+		List<Callable<?>> callbackBuffer = callbackBuffers.get();
+		int called = 0;
+		for (Pattern pattern : getPatternsWithActiveMappings()) {
+			// callbacks may re-enter updateFor, so only use our own slice
+			int start = callbackBuffer.size();
+			try {
+				pattern.addActiveMappingsFor(interval, callbackBuffer);
+				int end = callbackBuffer.size();
+				for (int i = start; i < end; i++) {
+					Callable<?> callback = callbackBuffer.get(i);
+					if (callback == null)
+						continue;
+
+					if (executor == null || isOutput(callback)) {
+						runCallback(callback, measured);
+						called++;
+					} else if (executor.execute(pattern, callback)) {
+						called++;
 					}
+				}
+			} finally {
+				for (int i = callbackBuffer.size() - 1; i >= start; i--)
+					callbackBuffer.remove(i);
 			}
 		}
+		return called;
+	}
+
+	/**
+	 * Tells the tick listeners that a group of callbacks for the same time is
+	 * about to run on this thread. Must be followed by {@link #afterTick()}.
+	 */
+	void beforeTick() {
+		for (TickListener listener : tickListeners)
+			listener.beforeTick();
+	}
+
+	/**
+	 * Tells the tick listeners that the callbacks begun with
+	 * {@link #beforeTick()} have run.
+	 */
+	void afterTick() {
+		for (TickListener listener : tickListeners)
+			listener.afterTick();
+	}
+
+	/**
+	 * Runs a single callback, printing any exception it throws.
+	 * 
+	 * @param callback
+	 *            the callback to run
+	 * @param measured
+	 *            whether to report the time it took
+	 */
+	void runCallback(Callable<?> callback, boolean measured) {
+		long start = measured ? System.nanoTime() : 0;
+		try {
+			callback.call();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		if (measured) {
+			long duration = System.nanoTime() - start;
+			for (SchedulerMetrics m : metrics)
+				m.callbackRan(duration);
+		}
+	}
+
+	/**
+	 * Checks whether a callback only sends output, and should be run on the
+	 * timing thread even when there is a {@link CallbackExecutor}. Timetagged
+	 * callbacks are OSC bundles.
+	 */
+	static boolean isOutput(Callable<?> callback) {
+		return callback instanceof OutputCallable
+				|| callback instanceof Timetagged;
+	}
+
+	/**
+	 * @return true if any metrics are being collected
+	 */
+	boolean isMeasured() {
+		return !metrics.isEmpty();
+	}
+
+	void tickUpdated(long durationNanos, int callbacks) {
+		for (SchedulerMetrics m : metrics)
+			m.tickUpdated(durationNanos, callbacks);
+	}
+
+	void tickStarted(long latenessNanos) {
+		for (SchedulerMetrics m : metrics)
+			m.tickStarted(latenessNanos);
+	}
+
+	/**
+	 * Starts sending timing measurements to a receiver, such as
+	 * {@link HistogramMetrics}. Nothing is measured while there are no
+	 * receivers.
+	 * 
+	 * @param sink
+	 *            the receiver of measurements
+	 */
+	public void addMetrics(SchedulerMetrics sink) {
+		metrics.add(sink);
+	}
+
+	/**
+	 * Stops sending timing measurements to a receiver.
+	 * 
+	 * @param sink
+	 *            the receiver to remove
+	 */
+	public void removeMetrics(SchedulerMetrics sink) {
+		metrics.remove(sink);
+	}
+
+	/**
+	 * Starts telling a listener when each tick's callbacks begin and end.
+	 * 
+	 * @param listener
+	 *            the listener to add
+	 */
+	public void addTickListener(TickListener listener) {
+		tickListeners.add(listener);
+	}
+
+	/**
+	 * Stops telling a listener about ticks.
+	 * 
+	 * @param listener
+	 *            the listener to remove
+	 */
+	public void removeTickListener(TickListener listener) {
+		tickListeners.remove(listener);
+	}
+
+	public CallbackExecutor getCallbackExecutor() {
+		return callbackExecutor;
+	}
+
+	/**
+	 * Hands the callbacks found by {@link #updateFor(Interval)} to an executor
+	 * instead of running them on the timing thread. Callbacks that send MIDI or
+	 * OSC output are still run directly. Callbacks run by the executor may see
+	 * a later time than the one they were produced for. Schedulers that render
+	 * offline, and callbacks rendered ahead with
+	 * {@link #setLookahead(long)}, are not affected.
+	 * 
+	 * @param executor
+	 *            the executor, or null to run callbacks on the timing thread
+	 * @throws IllegalStateException
+	 *             if the executor is already used by another scheduler
+	 */
+	public void setCallbackExecutor(CallbackExecutor executor) {
+		if (executor != null)
+			executor.attach(this);
+		CallbackExecutor previous = callbackExecutor;
+		callbackExecutor = executor;
+		if (previous != null && previous != executor)
+			previous.detach(this);
+	}
+
+	/**
+	 * Collects the callbacks for a given interval without running them. As
+	 * with {@link #updateFor(Interval)}, no lock is taken; the callbacks go
+	 * only into the caller's collection.
+	 * 
+	 * @param interval
+	 *            the interval over which to collect callbacks
+	 * @param callbacks
+	 *            the collection to add them to
+	 */
+	public void collectFor(Interval interval,
+			Collection<Callable<?>> callbacks) {
+		for (Pattern pattern : getPatternsWithActiveMappings())
+			pattern.addActiveMappingsFor(interval, callbacks);
+	}
+
+	/**
+	 * Finds how far the given interval can be moved forward before any pattern
+	 * could produce callbacks.
+	 * 
+	 * @param interval
+	 *            the interval that would be passed to {@link #updateFor}
+	 * @return a lower bound on the time until the next callback in cycles, or
+	 *         null if no pattern will produce any
+	 * @see Pattern#getTimeUntilActive(Interval)
+	 */
+	public Rational getTimeUntilActive(Interval interval) {
+		Rational result = null;
+		for (Pattern pattern : getPatternsWithActiveMappings()) {
+			Rational untilActive = pattern.getTimeUntilActive(interval);
+			if (untilActive == null)
+				continue;
+			if (untilActive.signum() <= 0)
+				return Rational.ZERO;
+			if (result == null || untilActive.compareTo(result) < 0)
+				result = untilActive;
+		}
+		return result;
+	}
+
+	/**
+	 * Finds how many ticks, starting from a given millisecond, can be skipped
+	 * because no pattern will produce callbacks during them.
+	 * 
+	 * @param fromMillis
+	 *            the first tick to consider
+	 * @param limit
+	 *            the most ticks to skip
+	 * @return the number of ticks that can be skipped
+	 */
+	long getMillisUntilActive(long fromMillis, long limit) {
+		if (limit <= 0)
+			return 0;
+
+		return toMillis(getTimeUntilActive(getIntervalAt(fromMillis)), limit);
+	}
+
+	/**
+	 * Returns the interval that would be current at a given millisecond.
+	 */
+	Interval getIntervalAt(long millis) {
+		Rational now = Rational.valueOf(millis, periodMillis);
+		return new Interval(now.subtract(halfMinimum), now.add(halfMinimum));
+	}
+
+	/**
+	 * Converts a time until active into a number of ticks, up to a limit.
+	 */
+	long toMillis(Rational untilActive, long limit) {
+		if (untilActive == null)
+			return limit;
+
+		Rational millis = untilActive.multiply(periodMillis).ceil();
+		if (millis.compareTo(Rational.valueOf(limit)) >= 0)
+			return limit;
+		return millis.longValue();
 	}
 
 	/**
 	 * Retrieve the patterns that we must query for callbacks.
 	 * 
-	 * @return the patterns that have external mappings
+	 * @return an unmodifiable list of the patterns that have external mappings
 	 */
-	public PatternCollection getPatternsWithActiveMappings() {
+	public List<Pattern> getPatternsWithActiveMappings() {
 		return patterns.getPatternsWithActiveMappings();
 	}
 
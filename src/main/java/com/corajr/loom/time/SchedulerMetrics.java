@@ -0,0 +1,38 @@
+package com.corajr.loom.time;
+
+/**
+ * Receives timing measurements from a {@link Scheduler}. Implementations are
+ * called on the scheduler's own threads, in the middle of playback, so they
+ * must be thread-safe and return quickly.
+ *
+ * @author corajr
+ * @see Scheduler#addMetrics(SchedulerMetrics)
+ * @see HistogramMetrics
+ */
+public interface SchedulerMetrics {
+	/**
+	 * Called after each call to {@link Scheduler#updateFor(Interval)}.
+	 *
+	 * @param durationNanos
+	 *            the time taken to find and run the callbacks
+	 * @param callbacks
+	 *            the number of callbacks that were run
+	 */
+	void tickUpdated(long durationNanos, int callbacks);
+
+	/**
+	 * Called after each callback has run.
+	 *
+	 * @param durationNanos
+	 *            the time spent in the callback
+	 */
+	void callbackRan(long durationNanos);
+
+	/**
+	 * Called when a real-time scheduler wakes for a tick.
+	 *
+	 * @param latenessNanos
+	 *            how long after its intended time the tick started
+	 */
+	void tickStarted(long latenessNanos);
+}
@@ -0,0 +1,22 @@
+package com.corajr.loom.time;
+
+/**
+ * Is told when a {@link Scheduler} starts and finishes running the callbacks
+ * for one tick, on the thread that runs them. Implementations must be
+ * thread-safe and return quickly.
+ * 
+ * @author corajr
+ * @see Scheduler#addTickListener(TickListener)
+ */
+public interface TickListener {
+	/**
+	 * Called before any callbacks for a tick are run.
+	 */
+	void beforeTick();
+
+	/**
+	 * Called once all the callbacks for a tick have run (or been handed to a
+	 * {@link CallbackExecutor}), even if one of them failed.
+	 */
+	void afterTick();
+}
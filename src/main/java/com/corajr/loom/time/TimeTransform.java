@@ -0,0 +1,159 @@
+package com.corajr.loom.time;
+
+import java.util.Arrays;
+
+/**
+ * An immutable chain of time transformations (scales, offsets, and loops)
+ * compiled into as few steps as possible. Consecutive scales and offsets are
+ * combined into a single multiply and add, so applying the chain costs one
+ * step per loop rather than one step per pattern it was built from.
+ *
+ * @author corajr
+ * @see com.corajr.loom.Pattern#getTimeTransform(boolean)
+ */
+public final class TimeTransform {
+	public static final TimeTransform IDENTITY = new TimeTransform(
+			new Step[0], new Step(Rational.ONE, Rational.ZERO, null, false));
+
+	/**
+	 * A multiply and add, followed by an optional modulo.
+	 */
+	private static final class Step {
+		final Rational scale;
+		final Rational offset;
+		final Interval modulo;
+
+		/**
+		 * Whether to fit each endpoint into the modulo interval separately (as
+		 * with a negative scale), rather than shifting the whole interval.
+		 */
+		final boolean fit;
+
+		Step(Rational scale, Rational offset, Interval modulo, boolean fit) {
+			this.scale = scale;
+			this.offset = offset;
+			this.modulo = modulo;
+			this.fit = fit;
+		}
+
+		Interval apply(Interval interval) {
+			Rational start = interval.getRationalStart().multiply(scale)
+					.add(offset);
+			Rational end = interval.getRationalEnd().multiply(scale)
+					.add(offset);
+
+			if (modulo == null)
+				return new Interval(start, end);
+			else if (fit)
+				return Interval.modulo(start, end, modulo);
+			else
+				return new Interval(start, end).modulo(modulo);
+		}
+	}
+
+	/**
+	 * The steps that end in a modulo, in order.
+	 */
+	private final Step[] steps;
+
+	/**
+	 * The affine step being accumulated after the last modulo.
+	 */
+	private final Step last;
+
+	private TimeTransform(Step[] steps, Step last) {
+		this.steps = steps;
+		this.last = last;
+	}
+
+	/**
+	 * Returns this transform followed by a change of scale.
+	 *
+	 * @param scale
+	 *            the multiplier
+	 * @return a new transform
+	 */
+	public TimeTransform scale(Rational scale) {
+		return new TimeTransform(steps, new Step(last.scale.multiply(scale),
+				last.offset.multiply(scale), null, false));
+	}
+
+	/**
+	 * Returns this transform followed by an offset.
+	 *
+	 * @param offset
+	 *            the amount to add
+	 * @return a new transform
+	 */
+	public TimeTransform offset(Rational offset) {
+		return new TimeTransform(steps, new Step(last.scale,
+				last.offset.add(offset), null, false));
+	}
+
+	/**
+	 * Returns this transform followed by shifting the interval into a loop.
+	 *
+	 * @param loopInterval
+	 *            the loop interval
+	 * @return a new transform
+	 * @see Interval#modulo(Interval)
+	 */
+	public TimeTransform modulo(Interval loopInterval) {
+		return close(loopInterval, false);
+	}
+
+	/**
+	 * Returns this transform followed by fitting each endpoint of the interval
+	 * into a loop.
+	 *
+	 * @param loopInterval
+	 *            the loop interval
+	 * @return a new transform
+	 * @see Interval#modulo(Rational, Rational, Interval)
+	 */
+	public TimeTransform fit(Interval loopInterval) {
+		return close(loopInterval, true);
+	}
+
+	private TimeTransform close(Interval loopInterval, boolean fit) {
+		Step[] newSteps = Arrays.copyOf(steps, steps.length + 1);
+		newSteps[steps.length] = new Step(last.scale, last.offset,
+				loopInterval, fit);
+		return new TimeTransform(newSteps, IDENTITY.last);
+	}
+
+	/**
+	 * Applies every transformation in the chain to an interval.
+	 *
+	 * @param interval
+	 *            the interval to transform
+	 * @return the transformed interval
+	 */
+	public Interval apply(Interval interval) {
+		for (Step step : steps)
+			interval = step.apply(interval);
+
+		if (last != IDENTITY.last)
+			interval = last.apply(interval);
+
+		return interval;
+	}
+
+	/**
+	 * @return the number of steps needed to apply this transform
+	 */
+	public int getStepCount() {
+		return steps.length + (last != IDENTITY.last ? 1 : 0);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("TimeTransform(");
+		for (Step step : steps) {
+			sb.append(String.format("*%s+%s %% %s%s; ", step.scale,
+					step.offset, step.modulo, step.fit ? " (fit)" : ""));
+		}
+		sb.append(String.format("*%s+%s)", last.scale, last.offset));
+		return sb.toString();
+	}
+}
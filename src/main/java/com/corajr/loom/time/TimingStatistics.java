@@ -0,0 +1,89 @@
+package com.corajr.loom.time;
+
+/**
+ * Accumulates how late a scheduler woke up relative to its intended deadlines,
+ * and how far its notion of time has drifted from the system clock. All values
+ * are in nanoseconds.
+ *
+ * @author corajr
+ */
+public class TimingStatistics {
+	private long count = 0;
+	private double meanLateness = 0.0;
+	private double sumSquaredDeviation = 0.0;
+	private long maxLateness = 0;
+	private long drift = 0;
+
+	/**
+	 * Records a single wake-up.
+	 *
+	 * @param latenessNanos
+	 *            the time between the deadline and the actual wake-up
+	 * @param driftNanos
+	 *            the time elapsed on the system clock
+	 *            (<code>System.currentTimeMillis()</code>) minus the time
+	 *            elapsed on the scheduler's own clock at the wake-up
+	 */
+	public synchronized void record(long latenessNanos, long driftNanos) {
+		count++;
+		double delta = latenessNanos - meanLateness;
+		meanLateness += delta / count;
+		sumSquaredDeviation += delta * (latenessNanos - meanLateness);
+
+		if (latenessNanos > maxLateness)
+			maxLateness = latenessNanos;
+
+		drift = driftNanos;
+	}
+
+	public synchronized void reset() {
+		count = 0;
+		meanLateness = 0.0;
+		sumSquaredDeviation = 0.0;
+		maxLateness = 0;
+		drift = 0;
+	}
+
+	/**
+	 * @return the number of wake-ups recorded
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the average lateness of each wake-up
+	 */
+	public synchronized double getMeanLateness() {
+		return meanLateness;
+	}
+
+	/**
+	 * @return the largest lateness recorded
+	 */
+	public synchronized long getMaxLateness() {
+		return maxLateness;
+	}
+
+	/**
+	 * @return the standard deviation of the lateness
+	 */
+	public synchronized double getJitter() {
+		return count > 1 ? Math.sqrt(sumSquaredDeviation / (count - 1)) : 0.0;
+	}
+
+	/**
+	 * @return the drift at the most recent wake-up
+	 */
+	public synchronized long getDrift() {
+		return drift;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"TimingStatistics(count=%d, mean=%.0fns, max=%dns, "
+						+ "jitter=%.0fns, drift=%dns)", count, meanLateness,
+				maxLateness, getJitter(), drift);
+	}
+}
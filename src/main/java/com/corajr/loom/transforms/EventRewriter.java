@@ -25,9 +25,39 @@ public abstract class EventRewriter {
 
 	public EventCollection apply(EventCollection originalEvents) {
 		EventCollection newEvents = new EventCollection();
+		newEvents.addAll(rewrite(originalEvents.values()));
+		return newEvents;
+	}
+
+	/**
+	 * Rewrites a single event with the first rule that applies to it. Rules
+	 * are given an index of -1, since the event's position is not known.
+	 * 
+	 * @param event
+	 *            the event to rewrite
+	 * @return the rewritten events, in order
+	 */
+	public Collection<LEvent> apply(LEvent event) {
+		for (Rule rule : rules) {
+			if (rule.canApply(event))
+				return rule.apply(event);
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Applies the first matching rule to each event in turn, without checking
+	 * the results for overlaps.
+	 * 
+	 * @param originalEvents
+	 *            the events to rewrite, in order
+	 * @return the rewritten events, in order
+	 */
+	List<LEvent> rewrite(Collection<LEvent> originalEvents) {
+		List<LEvent> newEvents = new ArrayList<LEvent>(originalEvents.size());
 
 		int i = 0;
-		for (LEvent event : originalEvents.values()) {
+		for (LEvent event : originalEvents) {
 			for (Rule rule : rules) {
 				if (rule.canApply(i, event)) {
 					newEvents.addAll(rule.apply(i, event));
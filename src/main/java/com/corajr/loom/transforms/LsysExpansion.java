@@ -0,0 +1,125 @@
+package com.corajr.loom.transforms;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.fraction.BigFraction;
+
+import com.corajr.loom.LEvent;
+import com.corajr.loom.SeekableEventQueryable;
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
+
+/**
+ * The events of an L-system after a number of generations, expanded only
+ * where they are queried. Every rewrite divides an event evenly among its
+ * successors, so the events produced by any event of an earlier generation lie
+ * within its interval. A query therefore follows only the events that overlap
+ * it, down through each generation, taking time proportional to the number of
+ * generations and the number of events found.
+ * 
+ * @author corajr
+ * @see LsysRewriter#expand(com.corajr.loom.EventCollection)
+ */
+public class LsysExpansion implements SeekableEventQueryable {
+	private final List<LEvent> axiom;
+	private final Map<Double, Double[]> successors;
+	private final int generations;
+
+	LsysExpansion(Collection<LEvent> axiom, Map<Double, Double[]> successors,
+			int generations) {
+		this.axiom = new ArrayList<LEvent>(axiom);
+		this.successors = successors;
+		this.generations = generations;
+	}
+
+	@Override
+	public Collection<LEvent> getForInterval(Interval interval) {
+		List<LEvent> events = new ArrayList<LEvent>();
+		for (LEvent e : axiom)
+			collect(e, generations, interval, events);
+		return events;
+	}
+
+	/**
+	 * Adds the events that an event becomes after some generations, if they
+	 * overlap the interval. Since they all lie within the event, none can
+	 * overlap unless the event itself does.
+	 */
+	private void collect(LEvent event, int remaining, Interval interval,
+			List<LEvent> events) {
+		if (!event.containedBy(interval))
+			return;
+
+		if (remaining == 0) {
+			events.add(event);
+			return;
+		}
+
+		Double[] replaceWith = successors.get(event.getValue());
+		if (replaceWith == null)
+			return;
+
+		Interval parent = event.getInterval();
+		BigFraction size = parent.getSize().divide(replaceWith.length);
+		BigFraction start = parent.getStart();
+		for (double value : replaceWith) {
+			BigFraction end = start.add(size);
+			collect(new LEvent(new Interval(start, end), value, event),
+					remaining - 1, interval, events);
+			start = end;
+		}
+	}
+
+	@Override
+	public Rational getNextStartAfter(Rational time) {
+		for (LEvent e : axiom) {
+			Rational next = findStartAfter(e, generations, time);
+			if (next != null)
+				return next;
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the first start after the given time among the events that an
+	 * event becomes after some generations.
+	 */
+	private Rational findStartAfter(LEvent event, int remaining, Rational time) {
+		Interval interval = event.getInterval();
+		if (interval.getRationalEnd().compareTo(time) <= 0)
+			return null;
+
+		if (remaining == 0)
+			return interval.getRationalStart().compareTo(time) > 0 ? interval
+					.getRationalStart() : null;
+
+		Double[] replaceWith = successors.get(event.getValue());
+		if (replaceWith == null)
+			return null;
+
+		BigFraction size = interval.getSize().divide(replaceWith.length);
+		BigFraction start = interval.getStart();
+		for (double value : replaceWith) {
+			BigFraction end = start.add(size);
+			Rational next = findStartAfter(new LEvent(new Interval(start, end),
+					value), remaining - 1, time);
+			if (next != null)
+				return next;
+			start = end;
+		}
+		return null;
+	}
+
+	public int getGenerations() {
+		return generations;
+	}
+
+	@Override
+	public String toString() {
+		return "LsysExpansion(" + axiom.size() + " events, " + generations
+				+ " generations)";
+	}
+}
@@ -15,6 +15,12 @@ public class LsysRewriter extends EventRewriter {
 	public String alphabet;
 	public Map<String, TurtleDrawCommand> turtleDrawCommands = new HashMap<String, TurtleDrawCommand>();
 
+	/**
+	 * Each generation rewritten so far from the axiom last passed to
+	 * {@link #apply(EventCollection)}, starting with the axiom itself.
+	 */
+	private final List<List<LEvent>> cachedGenerations = new ArrayList<List<LEvent>>();
+
 	public static class LsysRule extends Rule {
 		Double matchOn;
 		Double[] replaceWith;
@@ -160,12 +166,92 @@ public class LsysRewriter extends EventRewriter {
 		return commands;
 	}
 
+	/**
+	 * Rewrites the axiom for the current number of generations. Generations
+	 * are cached, so asking again for the same axiom (with the same or more
+	 * generations) only rewrites the generations not yet seen. Each generation
+	 * takes time linear in its length.
+	 * 
+	 * @param original
+	 *            the axiom
+	 * @return a new collection holding the last generation
+	 */
 	@Override
 	public EventCollection apply(EventCollection original) {
-		EventCollection events = original;
-		for (int i = 0; i < generations; i++) {
-			events = super.apply(events);
+		List<LEvent> generation = getGeneration(original, generations);
+
+		EventCollection events = new EventCollection();
+		if (hasOnlyLsysRules()) {
+			// L-system rules split each event into disjoint parts
+			for (LEvent e : generation)
+				events.put(e.getInterval().getStart(), e);
+		} else {
+			events.addAll(generation);
 		}
 		return events;
 	}
+
+	/**
+	 * Rewrites a single event for the current number of generations.
+	 * 
+	 * @param event
+	 *            the event to rewrite
+	 * @return the events it becomes, in order
+	 */
+	@Override
+	public Collection<LEvent> apply(LEvent event) {
+		List<LEvent> events = Collections.singletonList(event);
+		for (int i = 0; i < generations; i++)
+			events = rewrite(events);
+		return events;
+	}
+
+	private synchronized List<LEvent> getGeneration(EventCollection axiom,
+			int n) {
+		List<LEvent> start = new ArrayList<LEvent>(axiom.values());
+		if (cachedGenerations.isEmpty()
+				|| !cachedGenerations.get(0).equals(start)) {
+			cachedGenerations.clear();
+			cachedGenerations.add(start);
+		}
+
+		while (cachedGenerations.size() <= n)
+			cachedGenerations.add(rewrite(cachedGenerations
+					.get(cachedGenerations.size() - 1)));
+		return cachedGenerations.get(n);
+	}
+
+	private boolean hasOnlyLsysRules() {
+		for (Rule rule : rules)
+			if (!(rule instanceof LsysRule))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the events of the current generation without computing them in
+	 * advance. Each query expands only the parts of the axiom that overlap
+	 * the query interval, so deep L-systems may be played without ever
+	 * holding a whole generation in memory.
+	 * 
+	 * @param axiom
+	 *            the axiom
+	 * @return the lazily expanded events
+	 * @throws IllegalStateException
+	 *             if any rule is not an {@link LsysRule}
+	 */
+	public LsysExpansion expand(EventCollection axiom) {
+		if (!hasOnlyLsysRules())
+			throw new IllegalStateException(
+					"Only L-system rules can be expanded lazily!");
+
+		Map<Double, Double[]> successors = new HashMap<Double, Double[]>();
+		for (Rule rule : rules) {
+			LsysRule lsysRule = (LsysRule) rule;
+			if (!successors.containsKey(lsysRule.matchOn))
+				successors.put(lsysRule.matchOn, lsysRule.replaceWith);
+		}
+
+		return new LsysExpansion(axiom.values(), successors, generations);
+	}
 }
@@ -25,16 +25,67 @@ public class CallableOnChange extends StatefulCallable {
 		return null;
 	}
 
+	@Override
+	public boolean isIdle() {
+		return lastValue.get() == index;
+	}
+
+	/**
+	 * A {@link CallableOnChange} whose output carries its own timestamp.
+	 */
+	static class TimetaggedOnChange extends CallableOnChange implements
+			Timetagged {
+		TimetaggedOnChange(final AtomicInteger lastValue,
+				final Callable<?> inner, final int index) {
+			super(lastValue, inner, index);
+		}
+	}
+
+	/**
+	 * The {@link StatefulNoop} that goes with {@link TimetaggedOnChange}. It
+	 * must run when they do, or a callback rendered ahead of it would still see
+	 * the state it resets.
+	 */
+	static class TimetaggedNoop extends StatefulNoop implements Timetagged {
+		TimetaggedNoop(final AtomicInteger lastValue, final int index) {
+			super(lastValue, index);
+		}
+	}
+
+	@SafeVarargs
 	public static StatefulCallable[] fromCallables(Callable<Void>... callables) {
+		return fromCallables(false, callables);
+	}
+
+	/**
+	 * Like {@link #fromCallables(Callable...)}, but marks each callable, and
+	 * the no-op that resets their state, as {@link Timetagged}.
+	 * 
+	 * @param callables
+	 *            the callables, whose output carries its own timestamp
+	 * @return the stateful callables
+	 */
+	@SafeVarargs
+	public static StatefulCallable[] fromTimetaggedCallables(
+			Callable<Void>... callables) {
+		return fromCallables(true, callables);
+	}
+
+	@SafeVarargs
+	private static StatefulCallable[] fromCallables(boolean timetagged,
+			Callable<Void>... callables) {
 		ArrayList<StatefulCallable> result = new ArrayList<StatefulCallable>();
 
 		int i = 0;
 
 		final AtomicInteger lastValue = new AtomicInteger();
 
-		result.add(new StatefulNoop(lastValue, i++));
+		result.add(timetagged ? new TimetaggedNoop(lastValue, i++)
+				: new StatefulNoop(lastValue, i++));
 		for (Callable<Void> callable : callables) {
-			result.add(new CallableOnChange(lastValue, callable, i++));
+			result.add(timetagged ? new TimetaggedOnChange(lastValue,
+					callable, i++) : new CallableOnChange(lastValue, callable,
+					i++));
 		}
 
 		return result.toArray(new StatefulCallable[] {});
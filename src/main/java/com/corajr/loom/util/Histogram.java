@@ -0,0 +1,179 @@
+package com.corajr.loom.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative long values, such as durations in
+ * nanoseconds. Values are counted in logarithmic buckets: each power of two is
+ * split into {@value #SUB_BUCKETS} equal sub-buckets, so any recorded value is
+ * known to within 1/{@value #SUB_BUCKETS} of itself while the whole range of
+ * long fits in a few hundred counters. Recording never blocks or allocates, and
+ * a {@link Snapshot} may be taken from another thread at any time.
+ *
+ * @author corajr
+ */
+public class Histogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS)
+			* SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Finds the bucket holding a value.
+	 */
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS
+				+ (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * Finds the smallest value held by a bucket.
+	 */
+	static long lowestValueAt(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+
+		int shift = index / SUB_BUCKETS - 1;
+		return ((long) (index % SUB_BUCKETS + SUB_BUCKETS)) << shift;
+	}
+
+	/**
+	 * Finds the largest value held by a bucket.
+	 */
+	static long highestValueAt(int index) {
+		if (index + 1 >= BUCKET_COUNT)
+			return Long.MAX_VALUE;
+		return lowestValueAt(index + 1) - 1;
+	}
+
+	/**
+	 * Records a value. Negative values are counted as zero.
+	 *
+	 * @param value
+	 *            the value to record
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long current;
+		while (value > (current = max.get())
+				&& !max.compareAndSet(current, value))
+			;
+	}
+
+	/**
+	 * Clears all recorded values. Values recorded concurrently with a reset
+	 * may or may not be kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++)
+			counts.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Copies the current counts, without stopping other threads from
+	 * recording.
+	 *
+	 * @return a snapshot of this histogram
+	 */
+	public Snapshot getSnapshot() {
+		long[] copy = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		return new Snapshot(copy, total, sum.get(), max.get());
+	}
+
+	/**
+	 * An immutable copy of a histogram's counts.
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * @return the number of values recorded
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the average of the values recorded, or 0 if there are none
+		 */
+		public double getMean() {
+			return count > 0 ? (double) sum / count : 0.0;
+		}
+
+		/**
+		 * @return the largest value recorded
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Estimates the value below which a given percentage of the recorded
+		 * values fall. The result is the upper end of the bucket holding that
+		 * value, but never more than the maximum.
+		 *
+		 * @param percentile
+		 *            the percentile, from 0 to 100
+		 * @return the value at that percentile, or 0 if nothing was recorded
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (percentile < 0 || percentile > 100)
+				throw new IllegalArgumentException(
+						"Percentile must be between 0 and 100!");
+			if (count == 0)
+				return 0;
+
+			long target = Math.max(1,
+					(long) Math.ceil(percentile / 100.0 * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= target)
+					return Math.min(highestValueAt(i), max);
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"Histogram(count=%d, mean=%.0f, p50=%d, p99=%d, max=%d)",
+					count, getMean(), getValueAtPercentile(50),
+					getValueAtPercentile(99), max);
+		}
+	}
+}
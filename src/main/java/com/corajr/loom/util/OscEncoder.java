@@ -0,0 +1,325 @@
+package com.corajr.loom.util;
+
+import java.nio.ByteBuffer;
+
+import oscP5.OscMessage;
+
+/**
+ * Encodes OSC messages and bundles straight into a reusable buffer, producing
+ * the same bytes as oscP5's {@link OscMessage#getBytes()} and
+ * {@link oscP5.OscBundle#getBytes()} without building those objects. Example:
+ *
+ * <pre>
+ * OscEncoder encoder = new OscEncoder();
+ * encoder.beginBundle(OscEncoder.IMMEDIATELY);
+ * encoder.addMessage(OscEncoder.addressOf(&quot;/light&quot;), 1);
+ * ByteBuffer packet = encoder.getPacket();
+ * </pre>
+ *
+ * Arguments are encoded as oscP5 encodes them: Integer, Float, Double,
+ * String, Character, Boolean and byte[] (as a blob) each become one argument;
+ * int[], float[], char[] and String[] become one argument per element; any
+ * other value is left out. An encoder is not thread-safe.
+ *
+ * @author corajr
+ */
+public final class OscEncoder {
+	/**
+	 * The timetag oscP5 gives a bundle by default, meaning "as soon as it
+	 * arrives."
+	 */
+	public static final long IMMEDIATELY = 1L;
+
+	private static final byte[] BUNDLE = { '#', 'b', 'u', 'n', 'd', 'l', 'e',
+			0 };
+
+	/**
+	 * The seconds between the NTP epoch (1900) and the Java epoch (1970).
+	 */
+	private static final long NTP_OFFSET = 2208988800L;
+
+	private ByteBuffer buffer;
+	private boolean inBundle = false;
+
+	public OscEncoder() {
+		this(1024);
+	}
+
+	/**
+	 * @param capacity
+	 *            the initial size of the buffer, which grows as needed
+	 */
+	public OscEncoder(int capacity) {
+		buffer = ByteBuffer.allocate(capacity);
+	}
+
+	/**
+	 * Converts a wall-clock time to an OSC timetag, as
+	 * {@link oscP5.OscBundle#setTimetag(long)} does.
+	 *
+	 * @param millis
+	 *            milliseconds since 1970
+	 * @return the 64-bit NTP timetag
+	 */
+	public static long timetagFor(long millis) {
+		long seconds = millis / 1000 + NTP_OFFSET;
+		long fraction = ((millis % 1000) << 32) / 1000;
+		return seconds << 32 | fraction;
+	}
+
+	/**
+	 * Converts an address to bytes once, so that it can be reused with
+	 * {@link #addMessage(byte[], Object)}.
+	 *
+	 * @param address
+	 *            the OSC address, e.g. "/light"
+	 * @return its bytes, as oscP5 encodes them
+	 */
+	public static byte[] addressOf(String address) {
+		return address.getBytes();
+	}
+
+	/**
+	 * Discards what was encoded so far, so that a single message can be
+	 * encoded with no bundle around it.
+	 *
+	 * @return this encoder
+	 */
+	public OscEncoder clear() {
+		buffer.clear();
+		inBundle = false;
+		return this;
+	}
+
+	/**
+	 * Discards what was encoded so far and starts a bundle. Messages added
+	 * afterwards go into the bundle.
+	 *
+	 * @param timetag
+	 *            the bundle's timetag
+	 * @return this encoder
+	 * @see #timetagFor(long)
+	 */
+	public OscEncoder beginBundle(long timetag) {
+		clear();
+		ensure(16);
+		buffer.put(BUNDLE);
+		buffer.putLong(timetag);
+		inBundle = true;
+		return this;
+	}
+
+	/**
+	 * Adds a message with a single argument (which may expand to several; see
+	 * the class description).
+	 *
+	 * @param address
+	 *            the address, from {@link #addressOf(String)}
+	 * @param argument
+	 *            the argument, or null for none
+	 * @return this encoder
+	 */
+	public OscEncoder addMessage(byte[] address, Object argument) {
+		int sizeAt = beginElement();
+
+		writePadded(address);
+
+		int tags = tagCount(argument);
+		ensure(tags + 5);
+		buffer.put((byte) ',');
+		writeTags(argument);
+		buffer.put((byte) 0);
+		pad(tags + 2);
+
+		writeArgument(argument);
+
+		endElement(sizeAt);
+		return this;
+	}
+
+	/**
+	 * Adds a message already built by oscP5.
+	 *
+	 * @param message
+	 *            the message
+	 * @return this encoder
+	 */
+	public OscEncoder addMessage(OscMessage message) {
+		int sizeAt = beginElement();
+		byte[] bytes = message.getBytes();
+		ensure(bytes.length);
+		buffer.put(bytes);
+		endElement(sizeAt);
+		return this;
+	}
+
+	/**
+	 * Returns the encoded packet, from position 0 to its limit. The buffer is
+	 * reused by the next call to {@link #clear()} or
+	 * {@link #beginBundle(long)}, so it must be sent or copied before then.
+	 *
+	 * @return the packet
+	 */
+	public ByteBuffer getPacket() {
+		ByteBuffer packet = buffer.duplicate();
+		packet.flip();
+		return packet;
+	}
+
+	/**
+	 * Within a bundle, reserves the size of the next element.
+	 *
+	 * @return where the size goes, or -1 outside a bundle
+	 */
+	private int beginElement() {
+		if (!inBundle)
+			return -1;
+		ensure(4);
+		int sizeAt = buffer.position();
+		buffer.putInt(0);
+		return sizeAt;
+	}
+
+	private void endElement(int sizeAt) {
+		if (sizeAt >= 0)
+			buffer.putInt(sizeAt, buffer.position() - sizeAt - 4);
+	}
+
+	private static int tagCount(Object argument) {
+		if (argument instanceof int[])
+			return ((int[]) argument).length;
+		else if (argument instanceof float[])
+			return ((float[]) argument).length;
+		else if (argument instanceof char[])
+			return ((char[]) argument).length;
+		else if (argument instanceof String[])
+			return ((String[]) argument).length;
+		else
+			return tagOf(argument) == 0 ? 0 : 1;
+	}
+
+	private static byte tagOf(Object argument) {
+		if (argument instanceof Integer)
+			return 'i';
+		else if (argument instanceof Float)
+			return 'f';
+		else if (argument instanceof Double)
+			return 'd';
+		else if (argument instanceof String)
+			return 's';
+		else if (argument instanceof Character)
+			return 'c';
+		else if (argument instanceof Boolean)
+			return ((Boolean) argument) ? (byte) 'T' : (byte) 'F';
+		else if (argument instanceof byte[])
+			return 'b';
+		else
+			return 0;
+	}
+
+	private void writeTags(Object argument) {
+		int count = tagCount(argument);
+		byte tag;
+		if (argument instanceof int[])
+			tag = 'i';
+		else if (argument instanceof float[])
+			tag = 'f';
+		else if (argument instanceof char[])
+			tag = 'c';
+		else if (argument instanceof String[])
+			tag = 's';
+		else
+			tag = tagOf(argument);
+
+		for (int i = 0; i < count; i++)
+			buffer.put(tag);
+	}
+
+	private void writeArgument(Object argument) {
+		if (argument instanceof Integer) {
+			ensure(4);
+			buffer.putInt((Integer) argument);
+		} else if (argument instanceof Float) {
+			ensure(4);
+			buffer.putFloat((Float) argument);
+		} else if (argument instanceof Double) {
+			ensure(8);
+			buffer.putDouble((Double) argument);
+		} else if (argument instanceof String) {
+			writeString((String) argument);
+		} else if (argument instanceof Character) {
+			ensure(4);
+			buffer.putInt((Character) argument);
+		} else if (argument instanceof byte[]) {
+			byte[] blob = (byte[]) argument;
+			ensure(blob.length + 7);
+			buffer.putInt(blob.length);
+			buffer.put(blob);
+			pad(blob.length);
+		} else if (argument instanceof int[]) {
+			int[] values = (int[]) argument;
+			ensure(values.length * 4);
+			for (int value : values)
+				buffer.putInt(value);
+		} else if (argument instanceof float[]) {
+			float[] values = (float[]) argument;
+			ensure(values.length * 4);
+			for (float value : values)
+				buffer.putFloat(value);
+		} else if (argument instanceof char[]) {
+			char[] values = (char[]) argument;
+			ensure(values.length * 4);
+			for (char value : values)
+				buffer.putInt(value);
+		} else if (argument instanceof String[]) {
+			for (String value : (String[]) argument)
+				writeString(value);
+		}
+	}
+
+	/**
+	 * Writes a string with at least one trailing zero, padded to 4 bytes.
+	 * ASCII strings are copied directly; others are converted as oscP5 does.
+	 */
+	private void writeString(String s) {
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			if (s.charAt(i) >= 0x80) {
+				writePadded(s.getBytes());
+				return;
+			}
+		}
+
+		ensure(length + 4);
+		for (int i = 0; i < length; i++)
+			buffer.put((byte) s.charAt(i));
+		buffer.put((byte) 0);
+		pad(length + 1);
+	}
+
+	private void writePadded(byte[] bytes) {
+		ensure(bytes.length + 4);
+		buffer.put(bytes);
+		buffer.put((byte) 0);
+		pad(bytes.length + 1);
+	}
+
+	/**
+	 * Writes zeros to bring a field of the given length to a multiple of 4.
+	 */
+	private void pad(int length) {
+		for (int i = length; (i & 3) != 0; i++)
+			buffer.put((byte) 0);
+	}
+
+	private void ensure(int bytes) {
+		if (buffer.remaining() >= bytes)
+			return;
+
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2,
+				buffer.position() + bytes));
+		buffer.flip();
+		larger.put(buffer);
+		buffer = larger;
+	}
+}
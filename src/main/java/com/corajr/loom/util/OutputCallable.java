@@ -0,0 +1,15 @@
+package com.corajr.loom.util;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A callback that does nothing but send a message to an output device, such
+ * as a MIDI note or an OSC bundle. These are quick and must go out on time,
+ * so a {@link com.corajr.loom.time.CallbackExecutor} leaves them on the
+ * timing thread instead of queueing them behind slower callbacks.
+ * 
+ * @author corajr
+ * @see com.corajr.loom.time.Scheduler#setCallbackExecutor(com.corajr.loom.time.CallbackExecutor)
+ */
+public abstract class OutputCallable implements Callable<Void> {
+}
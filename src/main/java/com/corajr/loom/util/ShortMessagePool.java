@@ -0,0 +1,71 @@
+package com.corajr.loom.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * A pool of {@link ShortMessage}s, so that sending a note need not allocate a
+ * new message. Messages from the pool are only returned to it by code that
+ * knows they are no longer in use, such as
+ * {@link com.corajr.loom.wrappers.BatchingMidiBus} once it has sent them;
+ * messages that are never returned are simply garbage-collected.
+ * 
+ * @author corajr
+ */
+public final class ShortMessagePool {
+	/**
+	 * The most messages kept for reuse.
+	 */
+	public static final int CAPACITY = 256;
+
+	private static final ConcurrentLinkedQueue<Pooled> free = new ConcurrentLinkedQueue<Pooled>();
+	private static final AtomicInteger freeCount = new AtomicInteger();
+
+	/**
+	 * A message that may be returned to the pool.
+	 */
+	static final class Pooled extends ShortMessage {
+	}
+
+	private ShortMessagePool() {
+	}
+
+	/**
+	 * Takes a message from the pool (or creates one) and sets its contents.
+	 * 
+	 * @return the message
+	 * @throws InvalidMidiDataException
+	 *             if the contents are not a valid message
+	 */
+	public static ShortMessage obtain(int command, int channel, int data1,
+			int data2) throws InvalidMidiDataException {
+		Pooled message = free.poll();
+		if (message == null)
+			message = new Pooled();
+		else
+			freeCount.decrementAndGet();
+
+		message.setMessage(command, channel, data1, data2);
+		return message;
+	}
+
+	/**
+	 * Returns a message to the pool, if it came from there. The caller must
+	 * not use it again.
+	 * 
+	 * @param message
+	 *            the message
+	 */
+	public static void release(Object message) {
+		if (!(message instanceof Pooled))
+			return;
+		if (freeCount.incrementAndGet() > CAPACITY) {
+			freeCount.decrementAndGet();
+			return;
+		}
+		free.offer((Pooled) message);
+	}
+}
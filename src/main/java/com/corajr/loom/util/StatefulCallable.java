@@ -16,4 +16,15 @@ public abstract class StatefulCallable implements Callable<Void> {
 		lastValue.set(index);
 		return null;
 	}
+
+	/**
+	 * Checks whether calling this now would have no effect. Subclasses that
+	 * act only when the shared state changes can override this so that the
+	 * scheduler may skip over them.
+	 * 
+	 * @return true if calling this would do nothing
+	 */
+	public boolean isIdle() {
+		return false;
+	}
 }
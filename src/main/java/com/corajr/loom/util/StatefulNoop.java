@@ -10,4 +10,9 @@ public class StatefulNoop extends StatefulCallable {
 	public StatefulNoop(final AtomicInteger lastValue, final int index) {
 		super(lastValue, index);
 	}
+
+	@Override
+	public boolean isIdle() {
+		return lastValue.get() == index;
+	}
 }
@@ -0,0 +1,15 @@
+package com.corajr.loom.util;
+
+/**
+ * Marks a callback whose output carries its own timestamp (such as a
+ * timetagged OSC bundle). When the scheduler renders ahead, these callbacks are
+ * run as soon as they are rendered rather than at their deadline, leaving the
+ * receiver to schedule them precisely. Callbacks are marked once, when their
+ * mapping is set, so nothing is wrapped as they are collected.
+ * 
+ * @author corajr
+ * @see com.corajr.loom.time.Scheduler#setLookahead(long)
+ * @see TimetaggedCallable
+ */
+public interface Timetagged {
+}
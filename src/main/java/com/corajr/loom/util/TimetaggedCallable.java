@@ -0,0 +1,28 @@
+package com.corajr.loom.util;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Marks an existing callback as {@link Timetagged}. Wrap the callback once,
+ * when setting a pattern's mapping.
+ * 
+ * @author corajr
+ * @see com.corajr.loom.time.Scheduler#setLookahead(long)
+ */
+public class TimetaggedCallable implements Callable<Object>, Timetagged {
+	private final Callable<?> inner;
+
+	public TimetaggedCallable(Callable<?> inner) {
+		this.inner = inner;
+	}
+
+	@Override
+	public Object call() throws Exception {
+		return inner.call();
+	}
+
+	@Override
+	public String toString() {
+		return "TimetaggedCallable(" + inner.toString() + ")";
+	}
+}
@@ -0,0 +1,241 @@
+package com.corajr.loom.wrappers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import com.corajr.loom.time.TickListener;
+import com.corajr.loom.util.ShortMessagePool;
+
+/**
+ * Holds back the MIDI messages sent during each scheduler tick and sends them
+ * together when the tick ends: note-offs first, then other messages (such as
+ * program changes), then note-ons, with exact duplicates sent only once. A
+ * chord is therefore sent as one burst, rather than spread out between the
+ * callbacks that produce it, and a note that ends as another begins is
+ * released before it is struck again.
+ *
+ * Messages sent outside a tick, or from a thread other than the one running
+ * the tick, are passed straight through. Messages taken from the
+ * {@link ShortMessagePool} are returned to it once sent.
+ *
+ * What each batch has sent is kept in fixed tables, one entry per channel and
+ * note, stamped with the batch that wrote them so that nothing needs clearing
+ * between batches.
+ *
+ * @author corajr
+ * @see com.corajr.loom.time.Scheduler#addTickListener(TickListener)
+ */
+public class BatchingMidiBus implements IMidiBus, TickListener {
+	private static final int CHANNELS = 16;
+	private static final int NOTES = 128;
+
+	private static final class Batch {
+		int depth = 0;
+		final List<MidiMessage> pending = new ArrayList<MidiMessage>();
+		final List<MidiMessage> ordered = new ArrayList<MidiMessage>();
+		final List<MidiMessage> others = new ArrayList<MidiMessage>();
+		final List<MidiMessage> later = new ArrayList<MidiMessage>();
+
+		/**
+		 * Numbers each flush; table entries from earlier flushes are ignored.
+		 */
+		long generation = 0;
+
+		/**
+		 * For each channel and note, the generation in which it was struck.
+		 */
+		final long[] struck = new long[CHANNELS * NOTES];
+
+		/**
+		 * For each channel and note, the generation and key of the last
+		 * message sent for it, as generation &lt;&lt; 24 | key.
+		 */
+		final long[] lastByNote = new long[CHANNELS * NOTES];
+
+		/**
+		 * The keys of the other short messages sent in this flush.
+		 */
+		int[] sent = new int[8];
+		int sentCount = 0;
+
+		/**
+		 * Messages already returned to the pool, in case one was sent twice.
+		 */
+		final Map<MidiMessage, Boolean> released = new IdentityHashMap<MidiMessage, Boolean>();
+	}
+
+	private final IMidiBus target;
+
+	private final ThreadLocal<Batch> batches = new ThreadLocal<Batch>() {
+		@Override
+		protected Batch initialValue() {
+			return new Batch();
+		}
+	};
+
+	/**
+	 * @param target
+	 *            the bus to which batches are sent
+	 */
+	public BatchingMidiBus(IMidiBus target) {
+		this.target = target;
+	}
+
+	/**
+	 * @return the bus to which batches are sent
+	 */
+	public IMidiBus getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return 1 for a note-on, 0 for a note-off, -1 for anything else
+	 */
+	private static int noteState(MidiMessage message) {
+		if (!(message instanceof ShortMessage))
+			return -1;
+
+		ShortMessage msg = (ShortMessage) message;
+		switch (msg.getCommand()) {
+		case ShortMessage.NOTE_OFF:
+			return 0;
+		case ShortMessage.NOTE_ON:
+			return msg.getData2() == 0 ? 0 : 1;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Identifies the channel and note of a note message.
+	 */
+	private static int noteOf(MidiMessage message) {
+		ShortMessage msg = (ShortMessage) message;
+		return msg.getChannel() << 7 | msg.getData1();
+	}
+
+	@Override
+	public void sendMessage(MidiMessage message) {
+		Batch batch = batches.get();
+		if (batch.depth > 0) {
+			batch.pending.add(message);
+		} else {
+			target.sendMessage(message);
+			ShortMessagePool.release(message);
+		}
+	}
+
+	@Override
+	public void beforeTick() {
+		batches.get().depth++;
+	}
+
+	@Override
+	public void afterTick() {
+		Batch batch = batches.get();
+		if (batch.depth > 0 && --batch.depth == 0)
+			flush(batch);
+	}
+
+	private void flush(Batch batch) {
+		List<MidiMessage> pending = batch.pending;
+		if (pending.isEmpty())
+			return;
+
+		List<MidiMessage> ordered = batch.ordered;
+		List<MidiMessage> others = batch.others;
+		List<MidiMessage> later = batch.later;
+		try {
+			// note-offs, then other messages, then note-ons, each in the order
+			// sent; a note struck and then released within the tick keeps
+			// that order, so it cannot be left sounding
+			long generation = ++batch.generation;
+			for (MidiMessage message : pending) {
+				switch (noteState(message)) {
+				case 0:
+					if (batch.struck[noteOf(message)] == generation)
+						later.add(message);
+					else
+						ordered.add(message);
+					break;
+				case 1:
+					batch.struck[noteOf(message)] = generation;
+					later.add(message);
+					break;
+				default:
+					others.add(message);
+				}
+			}
+			ordered.addAll(others);
+			ordered.addAll(later);
+
+			for (MidiMessage message : ordered)
+				if (!isDuplicate(batch, message))
+					target.sendMessage(message);
+		} finally {
+			Map<MidiMessage, Boolean> released = batch.released;
+			for (MidiMessage message : pending)
+				if (released.put(message, Boolean.TRUE) == null)
+					ShortMessagePool.release(message);
+			released.clear();
+			pending.clear();
+			ordered.clear();
+			others.clear();
+			later.clear();
+			batch.sentCount = 0;
+		}
+	}
+
+	/**
+	 * Checks whether a message would repeat one already sent in this batch: a
+	 * note message that matches the last one sent for its note, or any other
+	 * short message that was sent before.
+	 */
+	private static boolean isDuplicate(Batch batch, MidiMessage message) {
+		if (!(message instanceof ShortMessage))
+			return false;
+
+		int key = keyOf((ShortMessage) message);
+		if (noteState(message) < 0)
+			return !addSent(batch, key);
+
+		long stamped = batch.generation << 24 | key;
+		int note = noteOf(message);
+		if (batch.lastByNote[note] == stamped)
+			return true;
+		batch.lastByNote[note] = stamped;
+		return false;
+	}
+
+	/**
+	 * Records the key of a message other than a note.
+	 *
+	 * @return false if it was already sent in this flush
+	 */
+	private static boolean addSent(Batch batch, int key) {
+		for (int i = 0; i < batch.sentCount; i++)
+			if (batch.sent[i] == key)
+				return false;
+
+		if (batch.sentCount == batch.sent.length)
+			batch.sent = Arrays.copyOf(batch.sent, batch.sentCount * 2);
+		batch.sent[batch.sentCount++] = key;
+		return true;
+	}
+
+	private static int keyOf(ShortMessage message) {
+		return message.getStatus() << 16 | message.getData1() << 8
+				| message.getData2();
+	}
+
+	@Override
+	public void dispose() {
+		target.dispose();
+	}
+}
@@ -0,0 +1,27 @@
+package com.corajr.loom.wrappers;
+
+import java.nio.ByteBuffer;
+
+import netP5.NetAddress;
+
+/**
+ * An OSC output that can take packets already encoded, e.g. by an
+ * {@link com.corajr.loom.util.OscEncoder}, so that bundles need not be built
+ * as {@link oscP5.OscBundle} objects first. Outputs that only accept oscP5's
+ * objects implement {@link IOscP5} alone.
+ * 
+ * @author corajr
+ */
+public interface IEncodedOscP5 extends IOscP5 {
+	/**
+	 * Sends a packet that has already been encoded. The buffer may be reused
+	 * by the caller once this returns, so implementations that keep it must
+	 * keep a copy.
+	 * 
+	 * @param packet
+	 *            the encoded packet, from its position to its limit
+	 * @param addr
+	 *            the destination
+	 */
+	void send(ByteBuffer packet, NetAddress addr);
+}
@@ -2,7 +2,19 @@ package com.corajr.loom.wrappers;
 
 import javax.sound.midi.MidiMessage;
 
+/**
+ * A destination for MIDI messages, such as a MidiBus or a recorder.
+ * 
+ * @author corajr
+ */
 public interface IMidiBus {
+	/**
+	 * Sends a message. The message may be reused by the caller once this
+	 * returns, so implementations that keep it must keep a copy.
+	 * 
+	 * @param message
+	 *            the message to send
+	 */
 	void sendMessage(MidiMessage message);
 
 	void dispose();
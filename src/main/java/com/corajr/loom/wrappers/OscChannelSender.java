@@ -0,0 +1,78 @@
+package com.corajr.loom.wrappers;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import netP5.NetAddress;
+import oscP5.OscPacket;
+
+/**
+ * Sends OSC packets over UDP through a {@link DatagramChannel}, writing
+ * encoded packets as they are, without oscP5. Nothing is received; sketches
+ * that need replies from the server should use oscP5 instead.
+ *
+ * @author corajr
+ * @see com.corajr.loom.Loom#setOscChannel(DatagramChannel)
+ */
+public class OscChannelSender implements IEncodedOscP5 {
+	private final DatagramChannel channel;
+
+	private NetAddress lastAddress = null;
+	private InetSocketAddress lastTarget = null;
+
+	/**
+	 * Opens a new channel on any free port.
+	 *
+	 * @throws IOException
+	 *             if the channel cannot be opened
+	 */
+	public OscChannelSender() throws IOException {
+		this(DatagramChannel.open());
+	}
+
+	/**
+	 * @param channel
+	 *            the channel to send from, which is closed on
+	 *            {@link #dispose()}
+	 */
+	public OscChannelSender(DatagramChannel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public void send(OscPacket packet, NetAddress addr) {
+		send(ByteBuffer.wrap(packet.getBytes()), addr);
+	}
+
+	@Override
+	public void send(ByteBuffer packet, NetAddress addr) {
+		try {
+			channel.send(packet, targetFor(addr));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Resolves the socket address for a destination, reusing the last one
+	 * when the destination is unchanged.
+	 */
+	private synchronized InetSocketAddress targetFor(NetAddress addr) {
+		if (addr != lastAddress) {
+			lastTarget = new InetSocketAddress(addr.inetaddress(), addr.port());
+			lastAddress = addr;
+		}
+		return lastTarget;
+	}
+
+	@Override
+	public void dispose() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
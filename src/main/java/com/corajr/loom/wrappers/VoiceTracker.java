@@ -0,0 +1,200 @@
+package com.corajr.loom.wrappers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import com.corajr.loom.util.ShortMessagePool;
+
+/**
+ * Keeps track of the notes sounding on each channel of a MIDI output, so that
+ * they can all be released at once (see {@link #allNotesOff()}) and so that
+ * no channel plays more than a set number of notes. When a note-on would
+ * exceed that number, the channel's oldest note is released first ("voice
+ * stealing").
+ *
+ * The notes are held in fixed arrays, oldest first, so tracking allocates
+ * nothing as messages pass through.
+ *
+ * @author corajr
+ */
+public class VoiceTracker implements IMidiBus {
+	private static final int CHANNELS = 16;
+	private static final int NOTES = 128;
+
+	/**
+	 * The number of notes each channel may play at once, unless set otherwise.
+	 */
+	public static final int DEFAULT_MAX_VOICES = 32;
+
+	private final IMidiBus target;
+
+	/**
+	 * For each channel, its sounding notes from oldest to newest, in
+	 * voices[channel * NOTES] to voices[channel * NOTES + counts[channel] - 1].
+	 */
+	private final byte[] voices = new byte[CHANNELS * NOTES];
+	private final int[] counts = new int[CHANNELS];
+
+	private int maxVoices;
+
+	/**
+	 * @param target
+	 *            the bus to which messages are sent
+	 */
+	public VoiceTracker(IMidiBus target) {
+		this(target, DEFAULT_MAX_VOICES);
+	}
+
+	/**
+	 * @param target
+	 *            the bus to which messages are sent
+	 * @param maxVoices
+	 *            the number of notes each channel may play at once
+	 */
+	public VoiceTracker(IMidiBus target, int maxVoices) {
+		this.target = target;
+		setMaxVoices(maxVoices);
+	}
+
+	/**
+	 * @return the bus to which messages are sent
+	 */
+	public IMidiBus getTarget() {
+		return target;
+	}
+
+	public synchronized int getMaxVoices() {
+		return maxVoices;
+	}
+
+	/**
+	 * Sets the number of notes each channel may play at once. Notes already
+	 * sounding beyond the new limit are left to end on their own.
+	 *
+	 * @param maxVoices
+	 *            between 1 and 128
+	 */
+	public synchronized void setMaxVoices(int maxVoices) {
+		if (maxVoices < 1 || maxVoices > NOTES)
+			throw new IllegalArgumentException(
+					"The number of voices must be between 1 and " + NOTES
+							+ ".");
+		this.maxVoices = maxVoices;
+	}
+
+	/**
+	 * @param channel
+	 *            the channel (0-15)
+	 * @return the number of notes sounding on the channel
+	 */
+	public synchronized int getVoiceCount(int channel) {
+		return counts[channel];
+	}
+
+	@Override
+	public void sendMessage(MidiMessage message) {
+		ShortMessage stolen = null;
+		if (message instanceof ShortMessage) {
+			ShortMessage msg = (ShortMessage) message;
+			int command = msg.getCommand();
+			if (command == ShortMessage.NOTE_ON && msg.getData2() > 0)
+				stolen = noteOn(msg.getChannel(), msg.getData1());
+			else if (command == ShortMessage.NOTE_ON
+					|| command == ShortMessage.NOTE_OFF)
+				noteOff(msg.getChannel(), msg.getData1());
+		}
+
+		if (stolen != null)
+			send(stolen);
+		target.sendMessage(message);
+	}
+
+	/**
+	 * Adds a note as the channel's newest voice.
+	 *
+	 * @return a note-off for the voice it replaces, if the channel is full
+	 */
+	private synchronized ShortMessage noteOn(int channel, int note) {
+		int base = channel * NOTES;
+		// a note struck again while sounding becomes the newest voice
+		if (remove(channel, note) < 0 && counts[channel] >= maxVoices) {
+			int oldest = voices[base];
+			removeAt(channel, 0);
+			voices[base + counts[channel]++] = (byte) note;
+			return noteOffFor(channel, oldest);
+		}
+
+		voices[base + counts[channel]++] = (byte) note;
+		return null;
+	}
+
+	private synchronized void noteOff(int channel, int note) {
+		remove(channel, note);
+	}
+
+	/**
+	 * @return the voice's former position, or -1 if it was not sounding
+	 */
+	private int remove(int channel, int note) {
+		int base = channel * NOTES;
+		for (int i = 0; i < counts[channel]; i++) {
+			if (voices[base + i] == note) {
+				removeAt(channel, i);
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void removeAt(int channel, int i) {
+		int base = channel * NOTES;
+		System.arraycopy(voices, base + i + 1, voices, base + i,
+				counts[channel] - i - 1);
+		counts[channel]--;
+	}
+
+	/**
+	 * Sends a note-off for every note still sounding, on every channel.
+	 */
+	public void allNotesOff() {
+		List<ShortMessage> offs = new ArrayList<ShortMessage>();
+		synchronized (this) {
+			for (int channel = 0; channel < CHANNELS; channel++) {
+				int base = channel * NOTES;
+				for (int i = 0; i < counts[channel]; i++) {
+					ShortMessage off = noteOffFor(channel, voices[base + i]);
+					if (off != null)
+						offs.add(off);
+				}
+				counts[channel] = 0;
+			}
+		}
+
+		for (ShortMessage off : offs)
+			send(off);
+	}
+
+	private static ShortMessage noteOffFor(int channel, int note) {
+		try {
+			return ShortMessagePool.obtain(ShortMessage.NOTE_OFF, channel,
+					note, 0);
+		} catch (InvalidMidiDataException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private void send(ShortMessage message) {
+		target.sendMessage(message);
+		ShortMessagePool.release(message);
+	}
+
+	@Override
+	public void dispose() {
+		target.dispose();
+	}
+}
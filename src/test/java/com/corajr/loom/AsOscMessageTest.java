@@ -4,6 +4,9 @@ import static org.junit.Assert.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import netP5.NetAddress;
@@ -17,9 +20,12 @@ import com.corajr.loom.Loom;
 import com.corajr.loom.Pattern;
 import com.corajr.loom.time.NonRealTimeScheduler;
 import com.corajr.loom.time.RealTimeScheduler;
+import com.corajr.loom.wrappers.IOscP5;
 
+import oscP5.OscBundle;
 import oscP5.OscMessage;
 import oscP5.OscP5;
+import oscP5.OscPacket;
 
 public class AsOscMessageTest {
 	private OscP5 oscP5;
@@ -94,6 +100,47 @@ public class AsOscMessageTest {
 		waitForEvents(4, 200);
 	}
 
+	@Test
+	public void receiveThroughChannel() throws Exception {
+		loomOscP5.dispose();
+		loom.setOscChannel(DatagramChannel.open());
+		pattern.extend("1101");
+
+		Pattern messagePat = new Pattern(loom);
+		messagePat.asOscMessage("/test", 123);
+
+		pattern.asOscBundle(myRemoteLocation, messagePat);
+
+		scheduler.setElapsedMillis(1001);
+		waitForEvents(4, 200);
+	}
+
+	@Test
+	public void sendsBundlesToOscP5AsObjects() {
+		final List<OscPacket> packets = new ArrayList<OscPacket>();
+		loomOscP5.dispose();
+		loom.oscP5Wrapper.set(new IOscP5() {
+			@Override
+			public void send(OscPacket packet, NetAddress addr) {
+				packets.add(packet);
+			}
+
+			@Override
+			public void dispose() {
+			}
+		});
+		pattern.extend("1101");
+
+		Pattern messagePat = new Pattern(loom);
+		messagePat.asOscMessage("/test", 123);
+
+		pattern.asOscBundle(myRemoteLocation, messagePat);
+
+		scheduler.setElapsedMillis(1001);
+		assertThat(packets.size(), is(equalTo(4)));
+		assertThat(packets.get(0), is(instanceOf(OscBundle.class)));
+	}
+
 	@Test
 	public void receiveRT() throws InterruptedException {
 		loom = new Loom(null, new RealTimeScheduler());
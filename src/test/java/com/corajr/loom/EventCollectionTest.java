@@ -15,8 +15,10 @@ import com.corajr.loom.EventCollection;
 import com.corajr.loom.LEvent;
 import com.corajr.loom.time.Interval;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 public class EventCollectionTest {
 
@@ -52,6 +54,47 @@ public class EventCollectionTest {
 		events.add(e1); // should tell the user to create a new pattern
 	}
 
+	@Test
+	public void bulkAddIsAllOrNothing() {
+		LEvent first = new LEvent(new Interval(0, 1), 1.0);
+		LEvent second = new LEvent(new Interval(2, 3), 1.0);
+		LEvent overlapping = new LEvent(new Interval(0.5, 1.5), 1.0);
+
+		try {
+			events.addAll(Arrays.asList(second, overlapping, first));
+			fail("Overlap was not reported!");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), containsString(overlapping.toString()));
+		}
+		assertThat(events.isEmpty(), is(true));
+
+		events.addAll(Arrays.asList(second, first));
+		assertThat(new ArrayList<LEvent>(events.values()),
+				is(equalTo(Arrays.asList(first, second))));
+	}
+
+	@Test
+	public void bulkAddChecksExistingEvents() {
+		events.add(new LEvent(new Interval(0, 1), 1.0));
+
+		thrown.expect(IllegalStateException.class);
+		events.addAll(Arrays.asList(new LEvent(new Interval(2, 3), 1.0),
+				new LEvent(new Interval(0.5, 0.75), 1.0)));
+	}
+
+	@Test(timeout = 5000)
+	public void builderHandlesManyEvents() {
+		EventCollection.Builder builder = new EventCollection.Builder();
+		int n = 50000;
+		for (int i = n - 1; i >= 0; i--)
+			builder.add(new LEvent(new Interval(new BigFraction(i),
+					new BigFraction(i + 1)), 1.0));
+
+		EventCollection built = builder.build();
+		assertThat(built.size(), is(equalTo(n)));
+		assertThat(built.getTotalInterval(), is(equalTo(new Interval(0, n))));
+	}
+
 	@Test
 	public void initializeFromSingleZero() {
 		String sample = "0";
@@ -122,6 +165,29 @@ public class EventCollectionTest {
 		assertThat(results.size(), is(equalTo(2)));
 	}
 
+	@Test
+	public void getForIntervalMatchesContainedBy() {
+		events = new EventCollection();
+		events.add(new LEvent(new Interval(0, 0.25), 0.0));
+		events.add(new LEvent(new Interval(0.25, 3), 0.5));
+		events.add(new LEvent(new Interval(3, 3.125), 1.0));
+		events.add(new LEvent(new Interval(4, 5), 0.25));
+
+		for (int i = -8; i < 48; i++) {
+			Interval query = new Interval(new BigFraction(i, 8),
+					new BigFraction(i + 1, 8));
+
+			List<LEvent> expected = new ArrayList<LEvent>();
+			for (LEvent e : events.values()) {
+				if (e.containedBy(query))
+					expected.add(e);
+			}
+
+			assertThat(new ArrayList<LEvent>(events.getForInterval(query)),
+					is(equalTo(expected)));
+		}
+	}
+
 	@Test
 	public void getTotalInterval() {
 		events = new EventCollection();
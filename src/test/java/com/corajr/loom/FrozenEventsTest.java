@@ -0,0 +1,58 @@
+package com.corajr.loom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
+
+public class FrozenEventsTest {
+	private EventCollection events;
+	private FrozenEvents frozen;
+
+	@Before
+	public void setUp() throws Exception {
+		events = EventCollection.fromString("1021");
+		events.addWithOffset(new BigFraction(3, 2), Arrays.asList(
+				new LEvent(new Interval(0, 1.0 / 3), 0.5), new LEvent(
+						new Interval(1.0 / 3, 1), 1.0)));
+		frozen = events.freeze();
+	}
+
+	@Test
+	public void queriesMatchCollection() {
+		for (int i = -3; i < 40; i++) {
+			Interval query = new Interval(new BigFraction(i, 14),
+					new BigFraction(i + 1, 14));
+			assertThat(new ArrayList<LEvent>(frozen.getForInterval(query)),
+					is(equalTo(new ArrayList<LEvent>(events
+							.getForInterval(query)))));
+
+			Rational time = Rational.valueOf(i, 14);
+			assertThat(frozen.getNextStartAfter(time),
+					is(equalTo(events.getNextStartAfter(time))));
+		}
+
+		assertThat(frozen.getTotalInterval(),
+				is(equalTo(events.getTotalInterval())));
+	}
+
+	@Test
+	public void thawsIntoEqualCollection() {
+		assertThat(frozen.size(), is(equalTo(events.size())));
+		assertThat(frozen.thaw(), is(equalTo(events)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOverlappingEvents() {
+		new FrozenEvents(Arrays.asList(new LEvent(new Interval(0, 1), 1.0),
+				new LEvent(new Interval(0.5, 1.5), 1.0)));
+	}
+}
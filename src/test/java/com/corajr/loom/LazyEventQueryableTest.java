@@ -0,0 +1,150 @@
+package com.corajr.loom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.time.Rational;
+import com.corajr.loom.transforms.LsysRewriter;
+
+public class LazyEventQueryableTest {
+	private EventCollection events;
+
+	@Before
+	public void setUp() throws Exception {
+		events = EventCollection.fromString("1011");
+	}
+
+	/**
+	 * Checks that two sources give the same events everywhere in a range.
+	 */
+	private static void assertSameEvents(SeekableEventQueryable expected,
+			SeekableEventQueryable actual, double end) {
+		for (double t = -0.5; t < end; t += 0.13) {
+			Interval query = new Interval(t, t + 0.2);
+			assertThat(toList(actual.getForInterval(query)),
+					is(equalTo(toList(expected.getForInterval(query)))));
+		}
+
+		Rational time = Rational.valueOf(-1);
+		Rational next;
+		while ((next = expected.getNextStartAfter(time)) != null) {
+			assertThat(actual.getNextStartAfter(time), is(equalTo(next)));
+			time = next;
+		}
+		assertThat(actual.getNextStartAfter(time), is(nullValue()));
+	}
+
+	private static List<LEvent> toList(Collection<LEvent> events) {
+		return new ArrayList<LEvent>(events);
+	}
+
+	@Test
+	public void repeaterMatchesCopies() {
+		EventCollection copies = EventCollection.fromString("1011");
+		copies.addAfterwards(events.values());
+		copies.addAfterwards(events.values());
+
+		EventRepeater repeater = new EventRepeater(events, 3);
+		assertSameEvents(copies, repeater, 4);
+		assertThat(repeater.getTotalInterval(),
+				is(equalTo(copies.getTotalInterval())));
+	}
+
+	@Test
+	public void repeatsForever() {
+		EventRepeater repeater = new EventRepeater(events,
+				EventRepeater.FOREVER);
+		assertThat(repeater.getTotalInterval(), is(nullValue()));
+
+		Interval far = new Interval(Rational.valueOf(10000000003L, 10),
+				Rational.valueOf(10000000004L, 10));
+		Collection<LEvent> found = repeater.getForInterval(far);
+		assertThat(found.size(), is(equalTo(1)));
+		LEvent e = found.iterator().next();
+		assertThat(e.getValue(), is(equalTo(0.0)));
+		assertThat(e.getInterval().getRationalStart(),
+				is(equalTo(Rational.valueOf(4000000001L, 4))));
+	}
+
+	@Test
+	public void sequenceMatchesAddAfterwards() {
+		EventCollection other = EventCollection.fromString("01");
+		EventCollection joined = EventCollection.fromString("1011");
+		joined.addAfterwards(other.values());
+
+		assertSameEvents(joined, new EventSequence(events, other), 3);
+	}
+
+	@Test
+	public void rewriteProxyMatchesRewrite() {
+		LsysRewriter lsys = new LsysRewriter("A->AB", "B->A");
+		lsys.generations = 4;
+		EventCollection axiom = lsys.makeAxiom("AB");
+
+		assertSameEvents(lsys.apply(axiom), new EventRewriteProxy(axiom, lsys),
+				3);
+	}
+
+	@Test
+	public void repeatedQueriesAreCachedUntilChanged() {
+		EventRepeater repeater = new EventRepeater(events, 2);
+		Interval query = new Interval(0, 0.5);
+
+		Collection<LEvent> first = repeater.getForInterval(query);
+		assertThat(repeater.getForInterval(query), is(sameInstance(first)));
+
+		// changes elsewhere leave the cache alone
+		new Pattern(null).extend("0101").speed(2);
+		assertThat(repeater.getForInterval(query), is(sameInstance(first)));
+
+		events.put(BigFraction.ZERO, new LEvent(new Interval(0, 0.25), 0.5));
+		assertThat(repeater.getForInterval(query), is(not(sameInstance(first))));
+	}
+
+	private static int countOnsets(Pattern pattern,
+			NonRealTimeScheduler scheduler) {
+		final AtomicInteger onsets = new AtomicInteger();
+		pattern.onOnset(new Callable<Void>() {
+			@Override
+			public Void call() {
+				onsets.incrementAndGet();
+				return null;
+			}
+		});
+
+		scheduler.play();
+		scheduler.setElapsedMillis(10000);
+		return onsets.get();
+	}
+
+	@Test
+	public void repeatedPatternPlaysLikeCopies() {
+		NonRealTimeScheduler scheduler = new NonRealTimeScheduler();
+		Loom loom = new Loom(null, scheduler);
+		Pattern repeated = new Pattern(loom, events)
+				.repeated(EventRepeater.FOREVER);
+		int lazyOnsets = countOnsets(repeated, scheduler);
+
+		EventCollection copies = EventCollection.fromString("1011");
+		for (int i = 0; i < 11; i++)
+			copies.addAfterwards(events.values());
+		scheduler = new NonRealTimeScheduler();
+		loom = new Loom(null, scheduler);
+		int eagerOnsets = countOnsets(new Pattern(loom, copies), scheduler);
+
+		assertThat(lazyOnsets, is(greaterThan(0)));
+		assertThat(lazyOnsets, is(equalTo(eagerOnsets)));
+	}
+}
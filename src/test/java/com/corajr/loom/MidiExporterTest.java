@@ -0,0 +1,119 @@
+package com.corajr.loom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.util.MidiTools;
+
+public class MidiExporterTest {
+	private Loom loom;
+	private final TestDataMockPApplet testApp = new TestDataMockPApplet();
+	private NonRealTimeScheduler scheduler;
+	private Pattern pattern;
+	private File midiFile;
+
+	@Before
+	public void setUp() throws Exception {
+		scheduler = new NonRealTimeScheduler();
+		loom = new Loom(testApp, scheduler);
+		midiFile = File.createTempFile("export", ".mid");
+		loom.recordMidi(midiFile.getAbsolutePath());
+
+		pattern = new Pattern(loom);
+		pattern.extend("0242");
+		pattern.loop();
+		pattern.asMidiNote(60, 64, 67);
+		pattern.asMidiMessage(pattern);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		midiFile.delete();
+	}
+
+	private static List<String> describe(List<MidiEvent> events) {
+		List<String> result = new ArrayList<String>();
+		for (MidiEvent event : events)
+			if (event.getMessage() instanceof ShortMessage)
+				result.add(event.getTick() + ":"
+						+ Arrays.toString(event.getMessage().getMessage()));
+		return result;
+	}
+
+	private static List<MidiEvent> eventsOf(Track track) {
+		List<MidiEvent> events = new ArrayList<MidiEvent>();
+		for (int i = 0; i < track.size(); i++)
+			events.add(track.get(i));
+		return events;
+	}
+
+	@Test
+	public void matchesRecording() throws Exception {
+		scheduler.setElapsedMillis(4001);
+		loom.dispose();
+		List<String> recorded = describe(MidiTools.readFile(midiFile));
+
+		Sequence exported = new MidiExporter(loom).export(new Interval(
+				BigFraction.ZERO, new BigFraction(4001, 1000)));
+		assertThat(exported.getTracks().length, is(equalTo(1)));
+		assertThat(describe(eventsOf(exported.getTracks()[0])),
+				is(equalTo(recorded)));
+		assertThat(recorded.size(), is(equalTo(33)));
+	}
+
+	@Test
+	public void matchesRecordingWhenOnsetsSpanTwoTicks() throws Exception {
+		scheduler = new NonRealTimeScheduler();
+		loom = new Loom(testApp, scheduler);
+		loom.recordMidi(midiFile.getAbsolutePath());
+
+		// sixteenths fall halfway between milliseconds, so each boundary is
+		// seen by two ticks, with a note-off and a note-on in each
+		pattern = new Pattern(loom);
+		pattern.extend("1212121212121212");
+		pattern.loop();
+		pattern.asMidiNote(60, 64);
+		pattern.asMidiMessage(pattern);
+
+		scheduler.setElapsedMillis(1001);
+		loom.dispose();
+		List<String> recorded = describe(MidiTools.readFile(midiFile));
+
+		Sequence exported = new MidiExporter(loom).export(new Interval(
+				BigFraction.ZERO, new BigFraction(1001, 1000)));
+		assertThat(describe(eventsOf(exported.getTracks()[0])),
+				is(equalTo(recorded)));
+		assertThat(recorded.size(), is(equalTo(33)));
+	}
+
+	@Test
+	public void exportsOneTrackPerRoot() throws Exception {
+		Pattern other = new Pattern(loom);
+		other.extend("1010");
+		other.asMidiNote(0, 36);
+		other.asMidiMessage(other);
+		new Pattern(loom).extend("1111"); // no MIDI, so no track
+
+		MidiExporter exporter = new MidiExporter(loom);
+		exporter.write(new Interval(0, 2), midiFile);
+
+		Sequence sequence = MidiSystem.getSequence(midiFile);
+		assertThat(sequence.getTracks().length, is(equalTo(2)));
+		assertThat(describe(eventsOf(sequence.getTracks()[1])).size(),
+				is(equalTo(8)));
+	}
+}
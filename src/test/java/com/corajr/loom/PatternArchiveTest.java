@@ -0,0 +1,123 @@
+package com.corajr.loom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.time.Interval;
+
+public class PatternArchiveTest {
+	private File file;
+	private EventCollection events;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("loom", ".pat");
+		events = EventCollection.fromString("1021");
+		events.addWithOffset(new BigFraction(3, 2), Arrays.asList(
+				new LEvent(new Interval(0, 1.0 / 3), 0.5), new LEvent(
+						new Interval(1.0 / 3, 1), 1.0)));
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void eventsRoundTrip() throws Exception {
+		new PatternArchive.Writer().add("a", events)
+				.add("b", new EventCollection()).write(file);
+
+		PatternArchive archive = PatternArchive.open(file);
+		assertThat(new ArrayList<String>(archive.getNames()),
+				is(equalTo(Arrays.asList("a", "b"))));
+
+		MappedEvents mapped = archive.getEvents("a");
+		assertThat(mapped.size(), is(equalTo(events.size())));
+		assertThat(mapped.getTotalInterval(),
+				is(equalTo(events.getTotalInterval())));
+		for (int i = -3; i < 40; i++) {
+			Interval query = new Interval(new BigFraction(i, 14),
+					new BigFraction(i + 1, 14));
+			assertThat(new ArrayList<LEvent>(mapped.getForInterval(query)),
+					is(equalTo(new ArrayList<LEvent>(events
+							.getForInterval(query)))));
+		}
+		assertThat(archive.getEvents("b").size(), is(equalTo(0)));
+	}
+
+	@Test
+	public void namesAreUtf8() throws Exception {
+		// both differ between UTF-8 and the modified UTF-8 of writeUTF
+		String nul = "a\u0000b";
+		String clef = "\ud834\udd1e";
+		new PatternArchive.Writer().add(nul, events).add(clef, events)
+				.write(file);
+
+		PatternArchive archive = PatternArchive.open(file);
+		assertThat(new ArrayList<String>(archive.getNames()),
+				is(equalTo(Arrays.asList(nul, clef))));
+		assertThat(archive.getEvents(clef).size(), is(equalTo(events.size())));
+	}
+
+	@Test
+	public void patternTreeRoundTrip() throws Exception {
+		Pattern root = new Pattern(null);
+		Pattern child = new Pattern(null, events);
+		child.setTimeScale(new BigFraction(1, 3));
+		child.setValueScale(2.0);
+		child.loop();
+		root.addChild(child);
+		root.addChild(new Pattern(null, EventCollection.fromString("01")));
+		root.setTimeOffset(new BigFraction(1, 7));
+
+		new PatternArchive.Writer().add("tree", root).write(file);
+		Pattern copy = PatternArchive.open(file).getPattern(null, "tree");
+
+		assertThat(copy.children.size(), is(equalTo(2)));
+		assertThat(copy.getTimeOffset(), is(equalTo(new BigFraction(1, 7))));
+		Pattern copiedChild = copy.getChild(0);
+		assertThat(copiedChild.getTimeScale(),
+				is(equalTo(new BigFraction(1, 3))));
+		assertThat(copiedChild.getValueScale(), is(equalTo(2.0)));
+		assertThat(copiedChild.getLoopInterval(),
+				is(equalTo(child.getLoopInterval())));
+		assertThat(copiedChild.isLooping, is(true));
+
+		for (int i = 0; i < 30; i++) {
+			Interval now = new Interval(new BigFraction(i, 5), new BigFraction(
+					i + 1, 5));
+			assertThat(copiedChild.getValueFor(now),
+					is(equalTo(child.getValueFor(now))));
+		}
+	}
+
+	@Test
+	public void oversizedArchivesAreNotWritten() throws Exception {
+		PatternArchive.Writer writer = new PatternArchive.Writer().add("a",
+				events).add("b", events);
+		writer.maxSize = 64;
+
+		try {
+			writer.write(file);
+			fail("Expected an IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertThat(file.exists(), is(false));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void continuousPatternsCannotBeArchived() {
+		new PatternArchive.Writer().add("f", new Pattern(null, 0.5));
+	}
+}
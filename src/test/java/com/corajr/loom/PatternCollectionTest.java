@@ -4,6 +4,8 @@ import static org.junit.Assert.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -11,6 +13,7 @@ import org.junit.Test;
 import com.corajr.loom.Loom;
 import com.corajr.loom.Pattern;
 import com.corajr.loom.PatternCollection;
+import com.corajr.loom.util.StatefulNoop;
 
 public class PatternCollectionTest {
 	private PatternCollection patterns;
@@ -38,9 +41,68 @@ public class PatternCollectionTest {
 		patterns.add(pattern);
 		patterns.add(pattern2);
 
-		PatternCollection activePatterns = patterns
+		List<Pattern> activePatterns = patterns
 				.getPatternsWithActiveMappings();
 		assertThat(activePatterns.size(), is(equalTo(1)));
 	}
 
+	@Test
+	public void activeMappingsAreCachedUntilTreeChanges() {
+		Pattern pattern = new Pattern(null);
+		pattern.extend("1111");
+		patterns.add(pattern);
+
+		List<Pattern> activePatterns = patterns
+				.getPatternsWithActiveMappings();
+		assertThat(activePatterns.size(), is(equalTo(0)));
+		assertThat(patterns.getPatternsWithActiveMappings(),
+				is(sameInstance(activePatterns)));
+
+		pattern.asCallable(new StatefulNoop(null));
+		assertThat(patterns.getPatternsWithActiveMappings(),
+				contains(pattern));
+
+		pattern.clear();
+		assertThat(patterns.getPatternsWithActiveMappings().size(),
+				is(equalTo(0)));
+	}
+
+	@Test
+	public void activeMappingsAreCachedAcrossOtherChanges() {
+		Pattern pattern = new Pattern(null);
+		pattern.extend("1111");
+		pattern.asCallable(new StatefulNoop(null));
+		patterns.add(pattern);
+
+		List<Pattern> activePatterns = patterns
+				.getPatternsWithActiveMappings();
+		assertThat(activePatterns, contains(pattern));
+
+		// events, timing and other collections do not affect the active set
+		pattern.extend("0101");
+		pattern.speed(2.0);
+		new PatternCollection().add(new Pattern(null));
+		assertThat(patterns.getPatternsWithActiveMappings(),
+				is(sameInstance(activePatterns)));
+	}
+
+	@Test
+	public void childMappingsInvalidateTheirAncestors() {
+		Pattern parent = new Pattern(null);
+		Pattern child = new Pattern(null);
+		child.extend("1111");
+		parent.addChild(child);
+		patterns.add(parent);
+
+		assertThat(patterns.getPatternsWithActiveMappings().size(),
+				is(equalTo(0)));
+
+		child.asCallable(new StatefulNoop(null));
+		assertThat(patterns.getPatternsWithActiveMappings(), contains(parent));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void activeMappingsCannotBeModified() {
+		patterns.getPatternsWithActiveMappings().add(new Pattern(null));
+	}
 }
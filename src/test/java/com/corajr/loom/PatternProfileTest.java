@@ -0,0 +1,174 @@
+package com.corajr.loom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.util.StatefulNoop;
+
+public class PatternProfileTest {
+	private Loom loom;
+	private Pattern parent;
+	private Pattern child;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws Exception {
+		loom = new Loom(null, new NonRealTimeScheduler());
+		parent = new Pattern(loom);
+		child = new Pattern(loom);
+		child.extend("0101");
+		child.asCallable(new StatefulNoop(null));
+		parent.addChild(child);
+	}
+
+	@Test
+	public void countsAccumulateUntilReset() {
+		PatternProfile profile = new PatternProfile();
+		profile.mappingsCollected(1500, 2);
+		profile.mappingsCollected(500, 1);
+		profile.eventsScanned(4);
+		profile.valueComputed(250);
+
+		assertThat(profile.getCalls(), is(equalTo(2L)));
+		assertThat(profile.getNanos(), is(equalTo(2000L)));
+		assertThat(profile.getCallables(), is(equalTo(3L)));
+		assertThat(profile.getEventsScanned(), is(equalTo(4L)));
+		assertThat(profile.getValueCalls(), is(equalTo(1L)));
+		assertThat(profile.toString(), containsString("time=2.0us"));
+
+		profile.reset();
+		assertThat(profile.getCalls(), is(equalTo(0L)));
+		assertThat(profile.getValueNanos(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void reportNeedsProfiling() {
+		assumeFalse(PatternProfile.ENABLED);
+		assertThat(parent.getProfile(), is(nullValue()));
+
+		thrown.expect(IllegalStateException.class);
+		parent.getProfileReport();
+	}
+
+	/**
+	 * Runs even when profiling is off, by loading the library again in a
+	 * separate class loader with the property set, since
+	 * {@link PatternProfile#ENABLED} is fixed when the class is loaded.
+	 */
+	@Test
+	public void reportFollowsTree() throws Throwable {
+		if (PatternProfile.ENABLED)
+			checkReportFollowsTree();
+		else
+			runProfiled("checkReportFollowsTree");
+	}
+
+	public static void checkReportFollowsTree() throws Exception {
+		PatternProfileTest test = new PatternProfileTest();
+		test.setUp();
+		Pattern parent = test.parent;
+		Pattern child = test.child;
+
+		parent.resetProfile();
+		parent.getActiveMappingsFor(new Interval(0, 1));
+
+		assertThat(parent.getProfile().getCalls(), is(equalTo(1L)));
+		assertThat(parent.getProfile().getCallables(), is(equalTo(4L)));
+		assertThat(child.getConcretePattern().getProfile().getEventsScanned(),
+				is(equalTo(4L)));
+
+		String report = parent.getProfileReport();
+		assertThat(report, startsWith("Pattern@"));
+		assertThat(report, containsString("\n\t\tConcretePattern("));
+		assertThat(report, containsString("callables=4"));
+	}
+
+	/**
+	 * Loads the library's classes (and this test's) again from the same place
+	 * as the given loader, leaving every other class to it. Unlike a loader
+	 * built from <code>java.class.path</code>, this works however the tests
+	 * are launched.
+	 */
+	private static final class ReloadingClassLoader extends ClassLoader {
+		private static final String PACKAGE = "com.corajr.loom.";
+
+		ReloadingClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected synchronized Class<?> loadClass(String name, boolean resolve)
+				throws ClassNotFoundException {
+			if (!name.startsWith(PACKAGE))
+				return super.loadClass(name, resolve);
+
+			Class<?> loaded = findLoadedClass(name);
+			if (loaded == null) {
+				byte[] bytes = readClass(name);
+				loaded = defineClass(name, bytes, 0, bytes.length);
+			}
+			if (resolve)
+				resolveClass(loaded);
+			return loaded;
+		}
+
+		private byte[] readClass(String name) throws ClassNotFoundException {
+			InputStream in = getParent().getResourceAsStream(
+					name.replace('.', '/') + ".class");
+			if (in == null)
+				throw new ClassNotFoundException(name);
+
+			try {
+				try {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					byte[] buffer = new byte[4096];
+					int read;
+					while ((read = in.read(buffer)) > 0)
+						out.write(buffer, 0, read);
+					return out.toByteArray();
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				throw new ClassNotFoundException(name, e);
+			}
+		}
+	}
+
+	/**
+	 * Calls a static method of this class with the classes loaded afresh
+	 * while <code>loom.profile</code> is set.
+	 */
+	private static void runProfiled(String methodName) throws Throwable {
+		String previous = System.setProperty("loom.profile", "true");
+		ClassLoader loader = new ReloadingClassLoader(
+				PatternProfileTest.class.getClassLoader());
+		try {
+			Class<?> isolated = loader.loadClass(PatternProfileTest.class
+					.getName());
+			isolated.getMethod(methodName).invoke(null);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		} finally {
+			if (previous == null)
+				System.clearProperty("loom.profile");
+			else
+				System.setProperty("loom.profile", previous);
+		}
+	}
+}
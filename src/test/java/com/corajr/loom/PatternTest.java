@@ -5,6 +5,9 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
 import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.junit.After;
 import org.junit.Before;
@@ -15,6 +18,7 @@ import org.junit.rules.ExpectedException;
 import com.corajr.loom.Loom;
 import com.corajr.loom.Pattern;
 import com.corajr.loom.mappings.TestMockPApplet;
+import com.corajr.loom.time.Interval;
 import com.corajr.loom.time.NonRealTimeScheduler;
 import com.corajr.loom.util.StatefulNoop;
 
@@ -49,6 +53,21 @@ public class PatternTest {
 		assertThat(pattern.hasActiveMappings(), is(equalTo(true)));
 	}
 
+	@Test
+	public void addActiveMappingsAppendsToBuffer() {
+		StatefulNoop noop = new StatefulNoop(null);
+		pattern.asCallable(noop);
+
+		List<Callable<?>> buffer = new ArrayList<Callable<?>>();
+		buffer.add(null);
+		pattern.addActiveMappingsFor(new Interval(0, 0.5), buffer);
+
+		assertThat(buffer.size(), is(equalTo(2)));
+		assertThat((Object) buffer.get(1), is(sameInstance((Object) noop)));
+		assertThat(pattern.getActiveMappingsFor(new Interval(0, 0.5)).size(),
+				is(equalTo(1)));
+	}
+
 	@Test
 	public void asInt() {
 		pattern.asInt(0, 100);
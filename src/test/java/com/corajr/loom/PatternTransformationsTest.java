@@ -3,11 +3,13 @@ package com.corajr.loom;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 
 import java.util.Arrays;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.math3.fraction.BigFraction;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -17,7 +19,9 @@ import org.junit.rules.ExpectedException;
 import com.corajr.loom.ConcretePattern;
 import com.corajr.loom.Loom;
 import com.corajr.loom.Pattern;
+import com.corajr.loom.time.Interval;
 import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.time.TimeTransform;
 import com.corajr.loom.transforms.Transforms;
 import com.corajr.loom.util.CallableOnChange;
 
@@ -447,4 +451,115 @@ public class PatternTransformationsTest {
 		assertThat(noteOns.get(), is(equalTo(5)));
 		assertThat(noteOffs.get(), is(equalTo(4)));
 	}
+
+	@Test
+	public void compiledTransformMatchesEachLevel() {
+		Pattern outer = new Pattern(loom);
+		outer.speed(1.5);
+		outer.shift(0.125);
+		outer.setLoopInterval(new Interval(0, 2));
+		outer.loop();
+
+		Pattern middle = new Pattern(loom);
+		outer.addChild(middle);
+		middle.speed(2);
+		middle.shift(0.3);
+
+		Pattern reversed = new Pattern(loom);
+		middle.addChild(reversed);
+		reversed.reverse();
+		reversed.shift(0.25);
+		reversed.useParentOffset = false;
+
+		pattern.loop();
+		pattern.speed(0.75);
+		reversed.addChild(pattern);
+
+		for (int i = 0; i < 4000; i += 7) {
+			scheduler.setElapsedMillis(i);
+			Interval expected = loom.getCurrentInterval();
+			expected = outer.transform(expected, middle.useParentOffset);
+			expected = middle.transform(expected, reversed.useParentOffset);
+			expected = reversed.transform(expected, pattern.useParentOffset);
+			expected = pattern.transform(expected, true);
+
+			assertThat(pattern.getCurrentInterval(), is(equalTo(expected)));
+		}
+	}
+
+	@Test
+	public void compiledTransformCombinesScalesAndOffsets() {
+		Pattern outer = new Pattern(loom);
+		outer.speed(2).shift(0.5);
+		Pattern middle = new Pattern(loom);
+		outer.addChild(middle);
+		middle.speed(3).shift(0.25);
+		middle.addChild(pattern);
+		pattern.speed(0.5).loop();
+
+		assertThat(pattern.getTimeTransform(true).getStepCount(),
+				is(equalTo(1)));
+	}
+
+	@Test
+	public void compiledTransformFollowsChanges() {
+		pattern.loop();
+		scheduler.setElapsedMillis(250);
+		assertThat(pattern.asInt(), is(equalTo(1)));
+
+		pattern.setTimeScale(new BigFraction(2));
+		assertThat(pattern.asInt(), is(equalTo(2)));
+
+		pattern.setTimeOffset(new BigFraction(1, 4));
+		assertThat(pattern.asInt(), is(equalTo(3)));
+
+		pattern.setLoopInterval(new Interval(0, 0.5));
+		assertThat(pattern.asInt(), is(equalTo(1)));
+	}
+
+	@Test
+	public void compiledTransformSurvivesUnrelatedChanges() {
+		pattern.loop();
+		TimeTransform transform = pattern.getTimeTransform(true);
+
+		pattern.extend("0123");
+		pattern.setValueOffset(1.0);
+		new Pattern(loom).speed(2);
+
+		assertThat(pattern.getTimeTransform(true),
+				is(sameInstance(transform)));
+	}
+
+	@Test
+	public void compiledTransformFollowsAncestorsAndMatches() {
+		Pattern parent = new Pattern(loom);
+		Pattern child = new Pattern(null);
+		parent.addChild(child);
+		Pattern follower = new Pattern(loom);
+		follower.setTimeMatch(child);
+
+		scheduler.setElapsedMillis(100);
+		child.getCurrentInterval();
+		follower.getCurrentInterval();
+
+		parent.speed(2);
+		assertThat(child.getCurrentInterval(),
+				is(equalTo(parent.getCurrentInterval())));
+
+		child.speed(3);
+		assertThat(follower.getCurrentInterval(),
+				is(equalTo(follower.transform(loom.getCurrentInterval()))));
+	}
+
+	@Test
+	public void childWithoutLoomUsesRootTime() {
+		Pattern parent = new Pattern(loom);
+		parent.speed(2);
+		Pattern child = new Pattern(null);
+		parent.addChild(child);
+
+		scheduler.setElapsedMillis(100);
+		assertThat(child.getCurrentInterval(),
+				is(equalTo(parent.getCurrentInterval())));
+	}
 }
@@ -0,0 +1,98 @@
+package com.corajr.loom.mappings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.Loom;
+import com.corajr.loom.Pattern;
+import com.corajr.loom.TestDataMockPApplet;
+import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.wrappers.IMidiBus;
+
+public class MidiMessageMappingTest {
+	private final List<String> sent = new ArrayList<String>();
+	private NonRealTimeScheduler scheduler;
+	private Loom loom;
+
+	@Before
+	public void setUp() {
+		scheduler = new NonRealTimeScheduler();
+		loom = new Loom(new TestDataMockPApplet(), scheduler);
+		loom.midiBusWrapper.set(new IMidiBus() {
+			@Override
+			public void sendMessage(MidiMessage message) {
+				ShortMessage msg = (ShortMessage) message;
+				sent.add(Integer.toHexString(msg.getStatus()) + " "
+						+ msg.getData1());
+			}
+
+			@Override
+			public void dispose() {
+			}
+		});
+	}
+
+	@Test
+	public void sendsEachLoopedOnsetOnce() {
+		Pattern pattern = new Pattern(loom);
+		pattern.extend("1");
+		pattern.loop();
+		pattern.asMidiNote(60);
+		pattern.asMidiMessage(pattern);
+
+		loom.play();
+		scheduler.setElapsedMillis(2500);
+
+		assertThat(sent, is(equalTo(Arrays.asList("90 60", "80 60", "90 60",
+				"80 60", "90 60"))));
+	}
+
+	@Test
+	public void stopReleasesSoundingNotes() {
+		Pattern pattern = new Pattern(loom);
+		pattern.extend("12");
+		pattern.asMidiNote(60, 64);
+		pattern.asMidiMessage(pattern);
+
+		loom.play();
+		scheduler.setElapsedMillis(700);
+		assertThat(sent, is(equalTo(Arrays.asList("90 60", "80 60", "90 64"))));
+
+		loom.stop();
+		assertThat(sent.get(sent.size() - 1), is(equalTo("80 64")));
+		assertThat(sent.size(), is(equalTo(4)));
+
+		loom.stop();
+		assertThat(sent.size(), is(equalTo(4)));
+	}
+
+	@Test
+	public void pauseAndClearReleaseSoundingNotes() {
+		Pattern pattern = new Pattern(loom);
+		pattern.extend("12");
+		pattern.asMidiNote(60, 64);
+		pattern.asMidiMessage(pattern);
+
+		loom.play();
+		scheduler.setElapsedMillis(200);
+		loom.pause();
+		assertThat(sent, is(equalTo(Arrays.asList("90 60", "80 60"))));
+
+		loom.play();
+		scheduler.setElapsedMillis(700);
+		pattern.clear();
+		// the note released by pause() still ends as scheduled
+		assertThat(sent, is(equalTo(Arrays.asList("90 60", "80 60", "80 60",
+				"90 64", "80 64"))));
+	}
+}
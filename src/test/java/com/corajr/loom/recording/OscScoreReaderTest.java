@@ -0,0 +1,81 @@
+package com.corajr.loom.recording;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import oscP5.OscBundle;
+import oscP5.OscMessage;
+
+public class OscScoreReaderTest {
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("score", ".osc");
+
+		OscScoreWriter writer = new OscScoreWriter(file);
+		for (int i = 0; i < 100; i++) {
+			TaggedOscBundle bundle = new TaggedOscBundle(new OscBundle());
+			OscMessage message = new OscMessage("/hit");
+			message.add(i);
+			bundle.add(message);
+			bundle.setTimetag((long) i << 29); // i / 8.0
+			writer.append(bundle);
+		}
+		writer.close();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private List<Double> readTimestamps(OscScoreReader reader)
+			throws Exception {
+		List<Double> timestamps = new ArrayList<Double>();
+		try {
+			for (OscBundle bundle : reader)
+				timestamps.add(OscScore.timestampOf(bundle));
+		} finally {
+			reader.close();
+		}
+		return timestamps;
+	}
+
+	@Test
+	public void readsInWrittenOrder() throws Exception {
+		List<Double> timestamps = readTimestamps(new OscScoreReader(file));
+		assertThat(timestamps.size(), is(equalTo(100)));
+		for (int i = 0; i < 100; i++)
+			assertThat(timestamps.get(i), is(equalTo(i / 8.0)));
+
+		assertThat(OscScore.fromFile(file).size(), is(equalTo(100)));
+	}
+
+	@Test
+	public void readsAcrossWindows() throws Exception {
+		List<Double> timestamps = readTimestamps(new OscScoreReader(file, 50));
+		assertThat(timestamps,
+				is(equalTo(readTimestamps(new OscScoreReader(file)))));
+	}
+
+	@Test
+	public void stopsAtTruncatedPacket() throws Exception {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 3);
+		raf.close();
+
+		List<Double> timestamps = readTimestamps(new OscScoreReader(file));
+		assertThat(timestamps.size(), is(equalTo(99)));
+		assertThat(timestamps.get(98), is(equalTo(98 / 8.0)));
+	}
+}
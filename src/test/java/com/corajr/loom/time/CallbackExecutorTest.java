@@ -0,0 +1,150 @@
+package com.corajr.loom.time;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.Loom;
+import com.corajr.loom.Pattern;
+import com.corajr.loom.util.OutputCallable;
+
+public class CallbackExecutorTest {
+	private NonRealTimeScheduler scheduler;
+	private CallbackExecutor executor;
+
+	@Before
+	public void setUp() throws Exception {
+		scheduler = new NonRealTimeScheduler();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (executor != null) {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	private static Callable<Void> append(final List<Integer> list, final int i) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() {
+				list.add(i);
+				return null;
+			}
+		};
+	}
+
+	@Test
+	public void keepsEachPatternInOrder() throws InterruptedException {
+		executor = new CallbackExecutor(CallbackExecutor.Threads.PLATFORM, 4,
+				10000);
+		executor.attach(scheduler);
+
+		Object a = new Object(), b = new Object();
+		List<Integer> fromA = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		List<Integer> fromB = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			executor.execute(a, append(fromA, i));
+			executor.execute(b, append(fromB, i));
+			expected.add(i);
+		}
+
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+		assertThat(fromA, is(equalTo(expected)));
+		assertThat(fromB, is(equalTo(expected)));
+		assertThat(executor.getQueueDepth(), is(equalTo(0)));
+	}
+
+	@Test
+	public void rejectsWhenFull() throws InterruptedException {
+		executor = new CallbackExecutor(CallbackExecutor.Threads.PLATFORM, 1, 2);
+		executor.attach(scheduler);
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Object key = new Object();
+		executor.execute(key, new Callable<Void>() {
+			@Override
+			public Void call() throws InterruptedException {
+				started.countDown();
+				release.await();
+				return null;
+			}
+		});
+		started.await();
+
+		List<Integer> ran = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		assertThat(executor.execute(key, append(ran, 1)), is(true));
+		assertThat(executor.execute(key, append(ran, 2)), is(true));
+		assertThat(executor.execute(key, append(ran, 3)), is(false));
+		assertThat(executor.getRejectedCount(), is(equalTo(1L)));
+		assertThat(executor.getQueueDepth(), is(equalTo(2)));
+
+		release.countDown();
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		assertThat(ran, is(equalTo(Arrays.asList(1, 2))));
+	}
+
+	@Test
+	public void outputStaysOnTimingThread() throws InterruptedException {
+		Loom loom = new Loom(null, scheduler);
+		executor = new CallbackExecutor(CallbackExecutor.Threads.PLATFORM, 1);
+		loom.setCallbackExecutor(executor);
+
+		final List<Thread> userThreads = new ArrayList<Thread>();
+		final List<Thread> outputThreads = new ArrayList<Thread>();
+		Pattern user = new Pattern(loom, 1.0);
+		user.asCallable(new Callable<Void>() {
+			@Override
+			public Void call() {
+				userThreads.add(Thread.currentThread());
+				return null;
+			}
+		});
+		Pattern output = new Pattern(loom, 1.0);
+		output.asCallable(new OutputCallable() {
+			@Override
+			public Void call() {
+				outputThreads.add(Thread.currentThread());
+				return null;
+			}
+		});
+
+		loom.play();
+		scheduler.updateFor(new Interval(0, 0.001));
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+
+		assertThat(outputThreads, is(equalTo(Collections
+				.singletonList(Thread.currentThread()))));
+		assertThat(userThreads.size(), is(equalTo(1)));
+		assertThat(userThreads.get(0), is(not(Thread.currentThread())));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void belongsToOneScheduler() {
+		executor = new CallbackExecutor(CallbackExecutor.Threads.PLATFORM, 1);
+		scheduler.setCallbackExecutor(executor);
+		new NonRealTimeScheduler().setCallbackExecutor(executor);
+	}
+}
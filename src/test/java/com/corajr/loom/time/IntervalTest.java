@@ -102,4 +102,19 @@ public class IntervalTest {
 		zeroToOneAndAHalf.modulo(interval);
 	}
 
+	@Test(timeout = 1000)
+	public void moduloFarFromLoopTakesConstantTime() {
+		Interval loop = new Interval(Rational.ZERO, Rational.valueOf(1, 64));
+		Rational expectedStart = Rational.valueOf(1, 1000);
+
+		for (long cycles = 1; cycles <= 1000000000000L; cycles *= 1000) {
+			Rational start = Rational.valueOf(cycles).add(expectedStart);
+			Interval far = new Interval(start, start.add(expectedStart));
+			Interval wrapped = far.modulo(loop);
+			assertThat(wrapped.getRationalStart(), is(equalTo(expectedStart)));
+			assertThat(Interval.modulo(far.getRationalStart(),
+					far.getRationalEnd(), loop), is(equalTo(wrapped)));
+		}
+	}
+
 }
@@ -2,8 +2,16 @@ package com.corajr.loom.time;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.empty;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -57,4 +65,176 @@ public class NonRealTimeSchedulerTest {
 		assertThat(totalCount.get(), is(equalTo(4)));
 	}
 
+	private List<String> renderLog(int variant, boolean fastForward) {
+		NonRealTimeScheduler scheduler = new NonRealTimeScheduler();
+		scheduler.setFastForward(fastForward);
+		final Loom loom = new Loom(null, scheduler);
+		final List<String> log = new ArrayList<String>();
+
+		Pattern pattern = new Pattern(loom);
+		switch (variant) {
+		case 0:
+			pattern.extend("10001000");
+			pattern.loop();
+			pattern.onOnset(logger(loom, log, "on"));
+			break;
+		case 1:
+			pattern.extend("1101");
+			pattern.loop();
+			pattern.speed(1.5);
+			pattern.onOnset(logger(loom, log, "on"));
+			pattern.onRelease(logger(loom, log, "off"));
+			break;
+		case 2:
+			pattern.extend(0, 1, 0, 0, 1);
+			pattern.repeat(2);
+			pattern.shift(0.125);
+			pattern.asStatefulCallable(CallableOnChange
+					.fromCallables(logger(loom, log, "held")));
+			break;
+		default:
+			pattern.extend("0001");
+			pattern.loop();
+			pattern.asCallable(logger(loom, log, "tick"));
+		}
+
+		loom.play();
+		scheduler.setElapsedMillis(1500);
+		scheduler.setElapsedMillis(3001);
+		return log;
+	}
+
+	private Callable<Void> logger(final Loom loom, final List<String> log,
+			final String name) {
+		return new Callable<Void>() {
+			public Void call() {
+				log.add(name + "@" + loom.getNow());
+				return null;
+			}
+		};
+	}
+
+	@Test
+	public void fastForwardMatchesSteppingEveryMillisecond() {
+		for (int variant = 0; variant < 4; variant++) {
+			List<String> stepped = renderLog(variant, false);
+
+			assertThat(stepped, is(not(empty())));
+			assertThat(renderLog(variant, true), is(equalTo(stepped)));
+		}
+	}
+
+	private byte[][] record(boolean parallel) throws Exception {
+		File oscFile = File.createTempFile("render", ".osc");
+		File midiFile = File.createTempFile("render", ".mid");
+
+		NonRealTimeScheduler scheduler = new NonRealTimeScheduler();
+		Loom loom = new Loom(null, scheduler);
+		loom.record(oscFile, midiFile);
+
+		Pattern melody = new Pattern(loom);
+		melody.extend("0242");
+		melody.loop();
+		melody.asMidiNote(60, 64, 67);
+		melody.asMidiMessage(melody);
+
+		Pattern bass = new Pattern(loom);
+		bass.extend("10301");
+		bass.loop();
+		bass.speed(0.5);
+		bass.asMidiNote(36, 43, 48);
+		bass.asMidiMessage(bass);
+
+		Pattern hits = new Pattern(loom);
+		hits.extend("1101");
+		Pattern message = new Pattern(loom);
+		message.asOscMessage("/hit", 1);
+		hits.asOscBundle(null, message);
+
+		if (parallel) {
+			ForkJoinPool pool = new ForkJoinPool(3);
+			scheduler.render(1500, pool);
+			scheduler.render(4001, pool);
+			pool.shutdown();
+		} else {
+			scheduler.setElapsedMillis(1500);
+			scheduler.setElapsedMillis(4001);
+		}
+		loom.dispose();
+
+		byte[][] result = new byte[][] {
+				Files.readAllBytes(oscFile.toPath()),
+				Files.readAllBytes(midiFile.toPath()) };
+		oscFile.delete();
+		midiFile.delete();
+		return result;
+	}
+
+	@Test
+	public void parallelRenderMatchesSerial() throws Exception {
+		byte[][] serial = record(false);
+		byte[][] parallel = record(true);
+
+		assertThat(serial[0].length, is(not(equalTo(0))));
+		assertThat(serial[1].length, is(greaterThan(100)));
+		assertThat(parallel[0], is(equalTo(serial[0])));
+		assertThat(parallel[1], is(equalTo(serial[1])));
+	}
+
+	@Test
+	public void metricsCountTicksAndCallbacks() {
+		testPattern.loop();
+		testPattern.asCallable(new Callable<Void>() {
+			public Void call() {
+				return null;
+			}
+		});
+
+		scheduler.setFastForward(false);
+		scheduler.setElapsedMillis(0);
+
+		HistogramMetrics metrics = new HistogramMetrics();
+		loom.addMetrics(metrics);
+		scheduler.setElapsedMillis(100);
+		loom.removeMetrics(metrics);
+		scheduler.setElapsedMillis(200);
+
+		assertThat(metrics.getTickDuration().getSnapshot().getCount(),
+				is(equalTo(100L)));
+		assertThat(metrics.getCallbacksPerTick().getSnapshot().getMax(),
+				is(equalTo(1L)));
+		assertThat(metrics.getCallbackDuration().getSnapshot().getCount(),
+				is(equalTo(100L)));
+	}
+
+	@Test
+	public void callbacksCanWaitOnUpdatesFromOtherThreads() throws Exception {
+		final AtomicInteger otherCount = new AtomicInteger();
+		final Pattern other = new Pattern(loom);
+		other.extend("1");
+		other.onOnset(new Callable<Void>() {
+			public Void call() {
+				otherCount.incrementAndGet();
+				return null;
+			}
+		});
+
+		final Interval start = new Interval(0, 0.001);
+		testPattern.onOnset(new Callable<Void>() {
+			public Void call() throws InterruptedException {
+				Thread update = new Thread() {
+					@Override
+					public void run() {
+						scheduler.updateFor(start);
+					}
+				};
+				update.start();
+				update.join(2000);
+				return null;
+			}
+		});
+
+		scheduler.updateFor(new Interval(0.5, 0.501));
+		assertThat(otherCount.get(), is(equalTo(1)));
+	}
 }
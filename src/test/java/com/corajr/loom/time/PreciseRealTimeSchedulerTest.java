@@ -0,0 +1,305 @@
+package com.corajr.loom.time;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.Loom;
+import com.corajr.loom.Pattern;
+import com.corajr.loom.util.CallableOnChange;
+import com.corajr.loom.util.StatefulCallable;
+import com.corajr.loom.util.TimetaggedCallable;
+import com.corajr.loom.wrappers.IOscP5;
+
+import netP5.NetAddress;
+import oscP5.OscPacket;
+
+public class PreciseRealTimeSchedulerTest {
+
+	private Loom loom;
+	private PreciseRealTimeScheduler scheduler;
+	private Pattern testPattern;
+
+	/**
+	 * The average error allowed in the spacing of callbacks, in milliseconds.
+	 * This is loose so that a loaded machine does not fail the tests; the
+	 * scheduler's own ticks are checked exactly.
+	 */
+	final double epsilon = 20.0;
+
+	/**
+	 * The longest to wait for callbacks that should arrive within a second.
+	 */
+	static final long TIMEOUT_MILLIS = 5000;
+
+	@Before
+	public void setUp() throws Exception {
+		scheduler = new PreciseRealTimeScheduler();
+		loom = new Loom(null, scheduler);
+		testPattern = new Pattern(loom);
+		testPattern.extend(0, 1, 0, 1, 0, 1, 0, 1, 0, 1);
+		testPattern.loop();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		loom.stop();
+	}
+
+	public void preparePattern(final ConcurrentLinkedQueue<Long> queue,
+			Pattern pattern) {
+		preparePattern(queue, new ConcurrentLinkedQueue<Long>(), pattern);
+	}
+
+	/**
+	 * Records the system time and the scheduler's time of each callback.
+	 */
+	public void preparePattern(final ConcurrentLinkedQueue<Long> queue,
+			final ConcurrentLinkedQueue<Long> seen, Pattern pattern) {
+		StatefulCallable[] ops = CallableOnChange
+				.fromCallables(new Callable<Void>() {
+					@Override
+					public Void call() {
+						queue.add(System.nanoTime());
+						seen.add(scheduler.getElapsedMillis());
+						return null;
+					}
+				});
+
+		pattern.asStatefulCallable(ops);
+	}
+
+	/**
+	 * Waits until a queue holds at least the given number of entries.
+	 */
+	static void waitFor(Collection<?> queue, int count) {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (queue.size() < count && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	static void assertSpacing(Collection<Long> nanos, long millis,
+			double epsilon) {
+		List<Long> times = new ArrayList<Long>(nanos);
+		long totalError = 0;
+		for (int i = 0; i < times.size() - 1; i++)
+			totalError += times.get(i + 1) - times.get(i) - millis * 1000000L;
+
+		double avgError = totalError / (times.size() - 1);
+		assertThat(avgError / 1e6, is(closeTo(0, epsilon)));
+	}
+
+	@Test
+	public void testRelativeTiming() {
+		final ConcurrentLinkedQueue<Long> queue = new ConcurrentLinkedQueue<Long>();
+		final ConcurrentLinkedQueue<Long> seen = new ConcurrentLinkedQueue<Long>();
+		preparePattern(queue, seen, testPattern);
+
+		loom.play();
+		waitFor(seen, 5);
+		loom.stop();
+
+		// each callback runs in the tick of its event, or later if the timing
+		// thread woke late
+		List<Long> ticks = new ArrayList<Long>(seen);
+		assertThat(ticks.size(), is(greaterThanOrEqualTo(5)));
+		for (int i = 0; i < 5; i++)
+			assertThat(ticks.get(i), is(both(greaterThanOrEqualTo(100L + 200 * i))
+					.and(lessThan(150L + 200 * i))));
+
+		assertSpacing(new ArrayList<Long>(queue).subList(0, 5), 200, epsilon);
+	}
+
+	@Test
+	public void skipsIdleTicks() {
+		final ConcurrentLinkedQueue<Long> queue = new ConcurrentLinkedQueue<Long>();
+		preparePattern(queue, testPattern);
+
+		loom.play();
+		try {
+			Thread.sleep(500);
+		} catch (InterruptedException e) {
+		}
+		loom.stop();
+
+		long wakeUps = scheduler.getStatistics().getCount();
+		assertThat(wakeUps, is(greaterThan(0L)));
+		assertThat(wakeUps, is(lessThan(250L)));
+	}
+
+	@Test
+	public void pauseAndResume() {
+		final ConcurrentLinkedQueue<Long> queue = new ConcurrentLinkedQueue<Long>();
+		preparePattern(queue, testPattern);
+
+		long playing = 0;
+		try {
+			long start = System.nanoTime();
+			loom.play();
+			Thread.sleep(150);
+			loom.pause();
+			playing += System.nanoTime() - start;
+			long paused = scheduler.getElapsedMillis();
+			Thread.sleep(100);
+			assertThat(scheduler.getElapsedMillis(), is(equalTo(paused)));
+
+			start = System.nanoTime();
+			loom.play();
+			Thread.sleep(100);
+			playing += System.nanoTime() - start;
+		} catch (InterruptedException e) {
+		}
+
+		// the time spent paused is not counted
+		assertThat(scheduler.getElapsedMillis(),
+				is(both(greaterThan(200L)).and(
+						lessThanOrEqualTo(playing / 1000000L + 1))));
+	}
+
+	@Test
+	public void lookaheadKeepsDeadlines() {
+		final ConcurrentLinkedQueue<Long> queue = new ConcurrentLinkedQueue<Long>();
+		final ConcurrentLinkedQueue<Long> seen = new ConcurrentLinkedQueue<Long>();
+		testPattern.asStatefulCallable(CallableOnChange
+				.fromCallables(new Callable<Void>() {
+					@Override
+					public Void call() {
+						queue.add(System.nanoTime());
+						seen.add(scheduler.getElapsedMillis());
+						return null;
+					}
+				}));
+
+		loom.setLookahead(100);
+		loom.play();
+		waitFor(seen, 5);
+		loom.stop();
+
+		// rendered ahead, each callback keeps the exact tick of its event
+		assertThat(new ArrayList<Long>(seen).subList(0, 5),
+				contains(100L, 300L, 500L, 700L, 900L));
+		assertSpacing(new ArrayList<Long>(queue).subList(0, 5), 200, epsilon);
+	}
+
+	@Test
+	public void lookaheadTicksAreBatched() {
+		final ConcurrentLinkedQueue<String> events = new ConcurrentLinkedQueue<String>();
+		final ConcurrentLinkedQueue<Long> calls = new ConcurrentLinkedQueue<Long>();
+		Pattern other = new Pattern(loom);
+		other.extend(0, 1, 0, 1, 0, 1, 0, 1, 0, 1);
+		other.loop();
+		for (Pattern pattern : Arrays.asList(testPattern, other)) {
+			pattern.asStatefulCallable(CallableOnChange
+					.fromCallables(new Callable<Void>() {
+						@Override
+						public Void call() {
+							events.add("x");
+							calls.add(scheduler.getElapsedMillis());
+							return null;
+						}
+					}));
+		}
+		scheduler.addTickListener(new TickListener() {
+			@Override
+			public void beforeTick() {
+				events.add("(");
+			}
+
+			@Override
+			public void afterTick() {
+				events.add(")");
+			}
+		});
+
+		loom.setLookahead(100);
+		loom.play();
+		waitFor(calls, 6);
+		loom.stop();
+
+		// both callbacks of each tick are dispatched as one group (the
+		// silent events between them make empty groups)
+		StringBuilder sb = new StringBuilder();
+		for (String event : events)
+			sb.append(event);
+		assertThat(sb.toString().replace("()", ""),
+				startsWith("(xx)(xx)(xx)"));
+	}
+
+	@Test
+	public void timetaggedCallbacksRunEarly() {
+		final long startNanos = System.nanoTime();
+		final ConcurrentLinkedQueue<long[]> seen = new ConcurrentLinkedQueue<long[]>();
+		testPattern.asCallable(new TimetaggedCallable(new Callable<Void>() {
+			@Override
+			public Void call() {
+				long actual = (System.nanoTime() - startNanos) / 1000000L;
+				seen.add(new long[] { scheduler.getElapsedMillis(), actual });
+				return null;
+			}
+		}));
+
+		loom.setLookahead(200);
+		loom.play();
+		waitFor(seen, 300);
+		loom.stop();
+
+		// callbacks are dispatched in the order of their ticks (two events
+		// meeting at a boundary share one)
+		List<long[]> dispatched = new ArrayList<long[]>(seen);
+		assertThat(dispatched.size(), is(greaterThanOrEqualTo(300)));
+		for (int i = 1; i < dispatched.size(); i++)
+			assertThat(dispatched.get(i)[0],
+					is(greaterThanOrEqualTo(dispatched.get(i - 1)[0])));
+
+		// the first window is rendered immediately; after that, callbacks
+		// should run about one lookahead before their time (allowing for a
+		// timing thread that wakes late on a loaded machine)
+		for (long[] times : dispatched)
+			if (times[0] > 250)
+				assertThat(times[0] - times[1], is(greaterThan(50L)));
+	}
+
+	@Test
+	public void lookaheadSendsEveryOscBundle() {
+		final ConcurrentLinkedQueue<Long> seen = new ConcurrentLinkedQueue<Long>();
+		loom.oscP5Wrapper.set(new IOscP5() {
+			@Override
+			public void send(OscPacket packet, NetAddress addr) {
+				seen.add(scheduler.getElapsedMillis());
+			}
+
+			@Override
+			public void dispose() {
+			}
+		});
+
+		Pattern pattern = new Pattern(loom);
+		pattern.extend("1111");
+		pattern.loop();
+		Pattern message = new Pattern(loom);
+		message.asOscMessage("/test", 1);
+		pattern.asOscBundle(new NetAddress("127.0.0.1", 12001), message);
+
+		loom.setLookahead(100);
+		loom.play();
+		waitFor(seen, 8);
+		loom.stop();
+
+		// each onset is sent ahead of time, none skipped (the bundle's own
+		// pattern and its parent each collect it, so it may be sent twice)
+		List<Long> onsets = new ArrayList<Long>(new LinkedHashSet<Long>(seen));
+		assertThat(onsets.subList(0, 4), contains(0L, 250L, 500L, 750L));
+	}
+}
@@ -0,0 +1,84 @@
+package com.corajr.loom.time;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class RationalTest {
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Test
+	public void reducesToLowestTerms() {
+		assertThat(Rational.valueOf(2, 4), is(equalTo(Rational.valueOf(1, 2))));
+		assertThat(Rational.valueOf(3, -6),
+				is(equalTo(Rational.valueOf(-1, 2))));
+	}
+
+	@Test
+	public void arithmeticMatchesBigFraction() {
+		Rational a = Rational.valueOf(3, 7);
+		Rational b = Rational.valueOf(-5, 12);
+		BigFraction fa = new BigFraction(3, 7);
+		BigFraction fb = new BigFraction(-5, 12);
+
+		assertThat(a.add(b).toBigFraction(), is(equalTo(fa.add(fb))));
+		assertThat(a.subtract(b).toBigFraction(),
+				is(equalTo(fa.subtract(fb))));
+		assertThat(a.multiply(b).toBigFraction(),
+				is(equalTo(fa.multiply(fb))));
+		assertThat(a.divide(b).toBigFraction(), is(equalTo(fa.divide(fb))));
+	}
+
+	@Test
+	public void overflowFallsBackToBigFraction() {
+		Rational huge = Rational.valueOf(Long.MAX_VALUE - 1, 5);
+		Rational sum = huge.add(huge);
+
+		assertThat(sum.isBig(), is(true));
+		assertThat(sum.toBigFraction(), is(equalTo(huge.toBigFraction()
+				.multiply(2))));
+
+		Rational back = sum.subtract(huge);
+		assertThat(back.isBig(), is(false));
+		assertThat(back, is(equalTo(huge)));
+	}
+
+	@Test
+	public void compareTo() {
+		assertThat(Rational.valueOf(1, 3).compareTo(Rational.valueOf(1, 2)),
+				is(lessThan(0)));
+		assertThat(Rational.valueOf(2, 4).compareTo(Rational.valueOf(1, 2)),
+				is(equalTo(0)));
+		assertThat(
+				Rational.valueOf(Long.MAX_VALUE - 1, Long.MAX_VALUE)
+						.compareTo(Rational.valueOf(Long.MAX_VALUE - 2,
+								Long.MAX_VALUE - 1)), is(greaterThan(0)));
+	}
+
+	@Test
+	public void floor() {
+		assertThat(Rational.valueOf(7, 2).floor(),
+				is(equalTo(Rational.valueOf(3))));
+		assertThat(Rational.valueOf(-7, 2).floor(),
+				is(equalTo(Rational.valueOf(-4))));
+		assertThat(Rational.valueOf(-4).floor(),
+				is(equalTo(Rational.valueOf(-4))));
+	}
+
+	@Test
+	public void toStringMatchesInterval() {
+		assertThat(Rational.valueOf(1, 4).toString(), is(equalTo("1/4")));
+		assertThat(Rational.valueOf(2).toString(), is(equalTo("2")));
+	}
+
+	@Test
+	public void divisionByZero() {
+		thrown.expect(ArithmeticException.class);
+		Rational.ONE.divide(Rational.ZERO);
+	}
+}
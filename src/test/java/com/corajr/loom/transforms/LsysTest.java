@@ -6,11 +6,15 @@ import static org.hamcrest.Matchers.*;
 
 import java.util.*;
 
+import org.apache.commons.math3.fraction.BigFraction;
+
 import org.junit.Test;
 
 import com.corajr.loom.*;
 import com.corajr.loom.mappings.TurtleDraw;
 import com.corajr.loom.mappings.TurtleDrawCommand;
+import com.corajr.loom.time.Interval;
+import com.corajr.loom.time.Rational;
 import com.corajr.loom.transforms.LsysRewriter;
 
 public class LsysTest {
@@ -96,6 +100,65 @@ public class LsysTest {
 		lsys.apply(axiom);
 	}
 
+	@Test
+	public void cachedGenerationsMatchFreshRewriter() {
+		LsysRewriter cached = new LsysRewriter("X->X+YF", "Y->FX-Y");
+		EventCollection axiom = cached.makeAxiom("FX");
+
+		for (int i : new int[] { 6, 2, 8 }) {
+			LsysRewriter fresh = new LsysRewriter("X->X+YF", "Y->FX-Y");
+			fresh.generations = i;
+			cached.generations = i;
+
+			EventCollection expected = fresh.apply(axiom);
+			assertThat(cached.apply(axiom), is(equalTo(expected)));
+		}
+
+		// results are independent copies
+		EventCollection first = cached.apply(axiom);
+		first.clear();
+		assertThat(cached.apply(axiom).isEmpty(), is(false));
+	}
+
+	@Test
+	public void lazyExpansionMatchesApply() {
+		LsysRewriter lsys = new LsysRewriter("A->AB", "B->A");
+		lsys.generations = 8;
+		EventCollection axiom = lsys.makeAxiom("AB");
+
+		EventCollection eager = lsys.apply(axiom);
+		LsysExpansion lazy = lsys.expand(axiom);
+
+		Interval[] queries = { new Interval(0, 2), new Interval(0.3, 0.35),
+				new Interval(1.5, 1.501), new Interval(1.99, 3) };
+		for (Interval query : queries)
+			assertThat(new ArrayList<LEvent>(lazy.getForInterval(query)),
+					is(equalTo(new ArrayList<LEvent>(eager.getForInterval(query)))));
+
+		Rational time = Rational.ZERO;
+		Rational next;
+		while ((next = lazy.getNextStartAfter(time)) != null) {
+			assertThat(next, is(equalTo(eager.getNextStartAfter(time))));
+			time = next;
+		}
+		assertThat(eager.getNextStartAfter(time), is(nullValue()));
+	}
+
+	@Test(timeout = 1000)
+	public void lazyExpansionOnlyExpandsQueriedPart() {
+		LsysRewriter lsys = new LsysRewriter("A->AB", "B->A");
+		lsys.generations = 40;
+		LsysExpansion lazy = lsys.expand(lsys.makeAxiom("A"));
+
+		// the whole generation would have over 10^8 events
+		Interval query = new Interval(new BigFraction(1, 2), new BigFraction(
+				1000001, 2000000));
+		Collection<LEvent> events = lazy.getForInterval(query);
+		assertThat(events.size(), is(greaterThan(0)));
+		for (LEvent e : events)
+			assertThat(e.containedBy(query), is(true));
+	}
+
 	@Test
 	public void drawCommandAdd() {
 		LsysRewriter lsys = new LsysRewriter("X->X+YF", "Y->FX-Y");
@@ -108,4 +108,24 @@ public class CallableOnChangeTest {
 		assertThat(count2.get(), is(equalTo(2)));
 	}
 
+	@Test
+	public void timetaggedCallablesAreMarkedWithTheirNoop() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		StatefulCallable[] callables = CallableOnChange
+				.fromTimetaggedCallables(new Callable<Void>() {
+					public Void call() {
+						count.incrementAndGet();
+						return null;
+					}
+				});
+
+		assertThat(callables[0] instanceof Timetagged, is(true));
+		assertThat(callables[1] instanceof Timetagged, is(true));
+		assertThat(CallableOnChange.fromCallables(new CallableNoop())[1]
+				instanceof Timetagged, is(false));
+
+		callables[1].call();
+		callables[1].call();
+		assertThat(count.get(), is(equalTo(1)));
+	}
 }
@@ -0,0 +1,64 @@
+package com.corajr.loom.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void bucketsCoverEveryValue() {
+		long[] values = { 0, 1, 7, 8, 9, 15, 16, 1000, 123456789L,
+				Long.MAX_VALUE };
+		for (long value : values) {
+			int index = Histogram.indexOf(value);
+			assertThat(Histogram.lowestValueAt(index),
+					is(lessThanOrEqualTo(value)));
+			assertThat(Histogram.highestValueAt(index),
+					is(greaterThanOrEqualTo(value)));
+		}
+	}
+
+	@Test
+	public void percentilesAreWithinBucketPrecision() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1000L);
+
+		Histogram.Snapshot snapshot = histogram.getSnapshot();
+		assertThat(snapshot.getCount(), is(equalTo(1000L)));
+		assertThat(snapshot.getMax(), is(equalTo(1000000L)));
+		assertThat(snapshot.getMean(), is(equalTo(500500.0)));
+
+		long median = snapshot.getValueAtPercentile(50);
+		assertThat(median, is(greaterThanOrEqualTo(500000L)));
+		assertThat(median, is(lessThanOrEqualTo(500000L
+				+ 500000L / Histogram.SUB_BUCKETS)));
+		assertThat(snapshot.getValueAtPercentile(100), is(equalTo(1000000L)));
+	}
+
+	@Test
+	public void recordsFromManyThreads() throws InterruptedException {
+		final Histogram histogram = new Histogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++)
+						histogram.record(i);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		assertThat(histogram.getSnapshot().getCount(), is(equalTo(40000L)));
+		assertThat(histogram.getSnapshot().getMax(), is(equalTo(9999L)));
+	}
+}
@@ -0,0 +1,67 @@
+package com.corajr.loom.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import oscP5.OscBundle;
+import oscP5.OscMessage;
+
+public class OscEncoderTest {
+	private static final Object[] ARGUMENTS = { 1, 2.5f, 0.25, "", "abc",
+			"abcd", 'x', true, false, new byte[] { 1, 2, 3 }, new byte[4],
+			new int[] { 1, 2 }, new float[] { 0.5f }, new char[] { 'a', 'b' },
+			new String[] { "a", "bcdef" }, null, 7L, new Object[] { 1 } };
+
+	private OscEncoder encoder;
+
+	@Before
+	public void setUp() {
+		encoder = new OscEncoder(8);
+	}
+
+	private static byte[] bytesOf(ByteBuffer packet) {
+		byte[] bytes = new byte[packet.remaining()];
+		packet.get(bytes);
+		return bytes;
+	}
+
+	@Test
+	public void messagesMatchOscP5() {
+		for (Object argument : ARGUMENTS) {
+			OscMessage message = new OscMessage("/light");
+			if (argument != null && !(argument instanceof Long))
+				message.add(new Object[] { argument });
+
+			encoder.clear().addMessage(OscEncoder.addressOf("/light"),
+					argument);
+			assertThat(bytesOf(encoder.getPacket()),
+					is(equalTo(message.getBytes())));
+		}
+	}
+
+	@Test
+	public void bundlesMatchOscP5() {
+		OscBundle bundle = new OscBundle();
+		bundle.setTimetag(1234567L);
+		encoder.beginBundle(OscEncoder.timetagFor(1234567L));
+		for (Object argument : ARGUMENTS) {
+			if (argument == null || argument instanceof Long)
+				continue;
+			bundle.add(new OscMessage("/p", new Object[] { argument }));
+			encoder.addMessage(OscEncoder.addressOf("/p"), argument);
+		}
+		encoder.addMessage(new OscMessage("/q", new Object[] { 3 }));
+		bundle.add(new OscMessage("/q", new Object[] { 3 }));
+
+		assertThat(bytesOf(encoder.getPacket()), is(equalTo(bundle.getBytes())));
+
+		encoder.beginBundle(OscEncoder.IMMEDIATELY);
+		assertThat(bytesOf(encoder.getPacket()),
+				is(equalTo(new OscBundle().getBytes())));
+	}
+}
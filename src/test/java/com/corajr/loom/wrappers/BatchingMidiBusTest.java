@@ -0,0 +1,149 @@
+package com.corajr.loom.wrappers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.corajr.loom.Loom;
+import com.corajr.loom.Pattern;
+import com.corajr.loom.TestDataMockPApplet;
+import com.corajr.loom.time.NonRealTimeScheduler;
+import com.corajr.loom.util.CallableOnChange;
+import com.corajr.loom.util.ShortMessagePool;
+
+public class BatchingMidiBusTest {
+	private final List<String> sent = new ArrayList<String>();
+	private BatchingMidiBus bus;
+
+	@Before
+	public void setUp() {
+		bus = new BatchingMidiBus(new IMidiBus() {
+			@Override
+			public void sendMessage(MidiMessage message) {
+				ShortMessage msg = (ShortMessage) message;
+				sent.add(Integer.toHexString(msg.getStatus()) + " "
+						+ msg.getData1() + " " + msg.getData2());
+			}
+
+			@Override
+			public void dispose() {
+			}
+		});
+	}
+
+	private void send(int command, int data1, int data2) throws Exception {
+		bus.sendMessage(ShortMessagePool.obtain(command, 0, data1, data2));
+	}
+
+	@Test
+	public void sendsNoteOffsFirstWithoutDuplicates() throws Exception {
+		bus.beforeTick();
+		send(ShortMessage.NOTE_ON, 60, 100);
+		send(ShortMessage.NOTE_OFF, 64, 0);
+		send(ShortMessage.NOTE_ON, 60, 100);
+		send(ShortMessage.PROGRAM_CHANGE, 5, 0);
+		send(ShortMessage.NOTE_ON, 67, 0);
+		assertThat(sent.size(), is(equalTo(0)));
+		bus.afterTick();
+
+		assertThat(sent, is(equalTo(Arrays.asList("80 64 0", "90 67 0",
+				"c0 5 0", "90 60 100"))));
+	}
+
+	@Test
+	public void keepsShortNotesInOrder() throws Exception {
+		bus.beforeTick();
+		send(ShortMessage.NOTE_OFF, 60, 0);
+		send(ShortMessage.NOTE_ON, 60, 100);
+		send(ShortMessage.NOTE_OFF, 60, 0);
+		send(ShortMessage.NOTE_ON, 60, 100);
+		bus.afterTick();
+
+		assertThat(sent, is(equalTo(Arrays.asList("80 60 0", "90 60 100",
+				"80 60 0", "90 60 100"))));
+	}
+
+	@Test
+	public void forgetsEachTickOnceSent() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			bus.beforeTick();
+			send(ShortMessage.NOTE_ON, 60, 100);
+			send(ShortMessage.CONTROL_CHANGE, 7, 64);
+			send(ShortMessage.CONTROL_CHANGE, 7, 64);
+			bus.afterTick();
+		}
+
+		assertThat(sent, is(equalTo(Arrays.asList("b0 7 64", "90 60 100",
+				"b0 7 64", "90 60 100"))));
+	}
+
+	@Test
+	public void passesThroughOutsideTicks() throws Exception {
+		send(ShortMessage.NOTE_ON, 60, 100);
+		assertThat(sent, is(equalTo(Arrays.asList("90 60 100"))));
+	}
+
+	@Test
+	public void batchesEachSchedulerTick() {
+		NonRealTimeScheduler scheduler = new NonRealTimeScheduler();
+		Loom loom = new Loom(new TestDataMockPApplet(), scheduler);
+		loom.midiBusWrapper.set(bus);
+		scheduler.addTickListener(bus);
+
+		int[] notes = { 60, 64 };
+		for (int note : notes) {
+			Pattern pattern = new Pattern(loom);
+			pattern.extend("10");
+			pattern.asMidiNote(note);
+			pattern.asMidiMessage(pattern);
+		}
+
+		loom.play();
+		scheduler.setElapsedMillis(1001);
+
+		assertThat(sent, is(equalTo(Arrays.asList("90 60 127", "90 64 127",
+				"80 60 0", "80 64 0", "90 60 127", "90 64 127", "80 60 0",
+				"80 64 0"))));
+	}
+
+	@Test
+	public void batchesEachRenderedTick() {
+		NonRealTimeScheduler scheduler = new NonRealTimeScheduler();
+		Loom loom = new Loom(new TestDataMockPApplet(), scheduler);
+		scheduler.addTickListener(bus);
+
+		Pattern pattern = new Pattern(loom);
+		pattern.extend("0101");
+		pattern.asStatefulCallable(CallableOnChange
+				.fromCallables(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						send(ShortMessage.NOTE_ON, 60, 100);
+						send(ShortMessage.NOTE_OFF, 64, 0);
+						return null;
+					}
+				}));
+
+		loom.play();
+		ForkJoinPool pool = new ForkJoinPool(1);
+		try {
+			scheduler.render(1001, pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertThat(sent, is(equalTo(Arrays.asList("80 64 0", "90 60 100",
+				"80 64 0", "90 60 100"))));
+	}
+}
@@ -0,0 +1,74 @@
+package com.corajr.loom.wrappers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class VoiceTrackerTest {
+	private final List<String> sent = new ArrayList<String>();
+	private VoiceTracker tracker;
+
+	@Before
+	public void setUp() {
+		tracker = new VoiceTracker(new IMidiBus() {
+			@Override
+			public void sendMessage(MidiMessage message) {
+				ShortMessage msg = (ShortMessage) message;
+				sent.add(Integer.toHexString(msg.getStatus()) + " "
+						+ msg.getData1());
+			}
+
+			@Override
+			public void dispose() {
+			}
+		}, 2);
+	}
+
+	private void send(int command, int channel, int data1, int data2)
+			throws Exception {
+		tracker.sendMessage(new ShortMessage(command, channel, data1, data2));
+	}
+
+	@Test
+	public void stealsOldestVoice() throws Exception {
+		send(ShortMessage.NOTE_ON, 0, 60, 100);
+		send(ShortMessage.NOTE_ON, 0, 64, 100);
+		send(ShortMessage.NOTE_ON, 1, 48, 100);
+		send(ShortMessage.NOTE_ON, 0, 60, 100);
+		send(ShortMessage.NOTE_ON, 0, 67, 100);
+
+		assertThat(sent, is(equalTo(Arrays.asList("90 60", "90 64", "91 48",
+				"90 60", "80 64", "90 67"))));
+		assertThat(tracker.getVoiceCount(0), is(equalTo(2)));
+		assertThat(tracker.getVoiceCount(1), is(equalTo(1)));
+	}
+
+	@Test
+	public void allNotesOffReleasesSoundingNotes() throws Exception {
+		send(ShortMessage.NOTE_ON, 0, 60, 100);
+		send(ShortMessage.NOTE_ON, 0, 64, 100);
+		send(ShortMessage.NOTE_ON, 0, 64, 0);
+		send(ShortMessage.NOTE_ON, 2, 36, 100);
+		sent.clear();
+
+		tracker.allNotesOff();
+		assertThat(sent, is(equalTo(Arrays.asList("80 60", "82 36"))));
+
+		tracker.allNotesOff();
+		assertThat(sent.size(), is(equalTo(2)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void voicesMustBePositive() {
+		tracker.setMaxVoices(0);
+	}
+}